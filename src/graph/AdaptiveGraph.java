@@ -0,0 +1,505 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A mutable weighted directed graph that changes layout as it grows.
+ *
+ * <p>Small graphs are stored compactly in flat arrays: one array of vertex
+ * labels and three parallel int arrays describing the edges, all of which
+ * are scanned linearly. Once the graph holds more than
+ * {@link #COMPACT_VERTEX_LIMIT} vertices or more than
+ * {@link #COMPACT_EDGE_LIMIT} edges (which also bounds the degree of any
+ * vertex), it switches for good to hashed adjacency maps keyed by label,
+ * where every operation costs O(1) or O(degree).
+ *
+ * <p>This is the implementation returned by {@link Graph#empty()}.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class AdaptiveGraph<L> implements Graph<L> {
+
+    /** Largest number of vertices kept in the compact array layout. */
+    public static final int COMPACT_VERTEX_LIMIT = 16;
+
+    /** Largest number of edges kept in the compact array layout. */
+    public static final int COMPACT_EDGE_LIMIT = 32;
+
+    private static final boolean ASSERTIONS = AdaptiveGraph.class.desiredAssertionStatus();
+
+    // Compact layout, used while hashed == false
+    private Object[] labels = new Object[4];
+    private int vertexCount = 0;
+    private int[] edgeSources = new int[4];
+    private int[] edgeTargets = new int[4];
+    private int[] edgeWeights = new int[4];
+    private int edgeCount = 0;
+
+    // Hashed layout, used once hashed == true
+    private boolean hashed = false;
+    private Map<L, Map<L, Integer>> outgoing;
+    private Map<L, Map<L, Integer>> incoming;
+
+    // Abstraction function:
+    //   if !hashed: AF = the graph with vertices labels[0..vertexCount) and, for each
+    //     i < edgeCount, an edge from labels[edgeSources[i]] to labels[edgeTargets[i]]
+    //     with weight edgeWeights[i]
+    //   if hashed: AF = the graph with vertices outgoing.keySet() and an edge from s to t
+    //     with weight w for every outgoing.get(s).get(t) == w
+    // Representation invariant:
+    //   if !hashed: labels[0..vertexCount) are non-null and distinct, every edge endpoint
+    //     is in [0, vertexCount), weights are positive, no two edges share both endpoints,
+    //     vertexCount <= COMPACT_VERTEX_LIMIT and edgeCount <= COMPACT_EDGE_LIMIT
+    //   if hashed: outgoing and incoming are non-null, all weights are positive,
+    //     incoming.get(t).get(s) == outgoing.get(s).get(t) for every edge, incoming has
+    //     no empty rows, and every key of incoming is a key of outgoing
+    // Safety from rep exposure:
+    //   vertices(), sources() and targets() return unmodifiable views or fresh copies;
+    //   labels are immutable
+
+    /**
+     * Create an empty graph in the compact layout.
+     */
+    public AdaptiveGraph() {
+        checkRep();
+    }
+
+    /**
+     * Create a graph from a forward compressed-sparse-row description, in one
+     * pass and without per-edge checks; used by {@link GraphBuilder#build()}.
+     * Picks the compact layout if the graph is small enough, and otherwise
+     * builds hash maps presized for every row.
+     *
+     * @param labels distinct vertex labels, indexed by id; not modified
+     * @param offsets n+1 row boundaries into targets and weights
+     * @param targets target ids, distinct within each row
+     * @param weights positive edge weights
+     */
+    AdaptiveGraph(Object[] labels, int[] offsets, int[] targets, int[] weights) {
+        int n = labels.length;
+        int m = offsets[n];
+        if (n <= COMPACT_VERTEX_LIMIT && m <= COMPACT_EDGE_LIMIT) {
+            this.labels = Arrays.copyOf(labels, Math.max(4, n));
+            vertexCount = n;
+            edgeSources = new int[Math.max(4, m)];
+            edgeTargets = Arrays.copyOf(targets, Math.max(4, m));
+            edgeWeights = Arrays.copyOf(weights, Math.max(4, m));
+            for (int s = 0; s < n; s++) {
+                Arrays.fill(edgeSources, offsets[s], offsets[s + 1], s);
+            }
+            edgeCount = m;
+        } else {
+            int[] inDegree = new int[n];
+            for (int e = 0; e < m; e++) {
+                inDegree[targets[e]]++;
+            }
+            hashed = true;
+            this.labels = null;
+            edgeSources = edgeTargets = edgeWeights = null;
+            outgoing = new HashMap<>(capacity(n));
+            incoming = new HashMap<>(capacity(n));
+            List<Map<L, Integer>> columns = new ArrayList<>(n);
+            for (int v = 0; v < n; v++) {
+                L label = label(labels, v);
+                int degree = offsets[v + 1] - offsets[v];
+                outgoing.put(label, degree == 0 ? Collections.emptyMap() : new HashMap<>(capacity(degree)));
+                Map<L, Integer> column = null;
+                if (inDegree[v] > 0) {
+                    column = new HashMap<>(capacity(inDegree[v]));
+                    incoming.put(label, column);
+                }
+                columns.add(column);
+            }
+            for (int s = 0; s < n; s++) {
+                L source = label(labels, s);
+                Map<L, Integer> row = outgoing.get(source);
+                for (int e = offsets[s]; e < offsets[s + 1]; e++) {
+                    Integer weight = weights[e];
+                    row.put(label(labels, targets[e]), weight);
+                    columns.get(targets[e]).put(source, weight);
+                }
+            }
+        }
+        checkRep();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <L> L label(Object[] labels, int id) {
+        return (L) labels[id];
+    }
+
+    // Initial HashMap capacity that holds size entries without resizing.
+    private static int capacity(int size) {
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+
+    private void checkRep() {
+        if (!ASSERTIONS) {
+            return;
+        }
+        if (!hashed) {
+            assert vertexCount <= COMPACT_VERTEX_LIMIT : "too many vertices for compact layout";
+            assert edgeCount <= COMPACT_EDGE_LIMIT : "too many edges for compact layout";
+            for (int i = 0; i < vertexCount; i++) {
+                assert labels[i] != null : "vertex labels must be non-null";
+                for (int j = i + 1; j < vertexCount; j++) {
+                    assert !labels[i].equals(labels[j]) : "duplicate vertex label";
+                }
+            }
+            for (int i = 0; i < edgeCount; i++) {
+                assert edgeSources[i] >= 0 && edgeSources[i] < vertexCount : "dangling edge source";
+                assert edgeTargets[i] >= 0 && edgeTargets[i] < vertexCount : "dangling edge target";
+                assert edgeWeights[i] > 0 : "edge weights must be positive";
+            }
+        } else {
+            assert outgoing != null && incoming != null : "adjacency maps must be non-null";
+            for (Map.Entry<L, Map<L, Integer>> row : outgoing.entrySet()) {
+                for (Map.Entry<L, Integer> edge : row.getValue().entrySet()) {
+                    assert edge.getValue() > 0 : "edge weights must be positive";
+                    Map<L, Integer> column = incoming.get(edge.getKey());
+                    assert column != null && edge.getValue().equals(column.get(row.getKey()))
+                            : "edge missing from the inbound index";
+                }
+            }
+            for (Map.Entry<L, Map<L, Integer>> column : incoming.entrySet()) {
+                assert !column.getValue().isEmpty() : "empty inbound rows should be dropped";
+                assert outgoing.containsKey(column.getKey()) : "inbound index names an unknown vertex";
+            }
+        }
+    }
+
+    // Checks the rep after a mutation that touched only the given vertices: all of it in
+    // the compact layout, which is small, and their rows, in O(degree), in the hashed one.
+    @SafeVarargs
+    private final void checkRep(L... touched) {
+        if (!ASSERTIONS) {
+            return;
+        }
+        if (!hashed) {
+            checkRep();
+            return;
+        }
+        for (L vertex : touched) {
+            Map<L, Integer> row = outgoing.get(vertex);
+            Map<L, Integer> column = incoming.get(vertex);
+            if (row == null) {
+                assert column == null : "inbound index names an unknown vertex";
+                continue;
+            }
+            for (Map.Entry<L, Integer> edge : row.entrySet()) {
+                assert edge.getValue() > 0 : "edge weights must be positive";
+                Map<L, Integer> targetColumn = incoming.get(edge.getKey());
+                assert targetColumn != null && edge.getValue().equals(targetColumn.get(vertex))
+                        : "edge missing from the inbound index";
+            }
+            if (column != null) {
+                assert !column.isEmpty() : "empty inbound rows should be dropped";
+                for (Map.Entry<L, Integer> edge : column.entrySet()) {
+                    Map<L, Integer> sourceRow = outgoing.get(edge.getKey());
+                    assert sourceRow != null && edge.getValue().equals(sourceRow.get(vertex))
+                            : "inbound index names a missing edge";
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if this graph has switched to the hashed layout
+     */
+    boolean isHashed() {
+        return hashed;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        if (vertex == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        if (hashed) {
+            if (outgoing.containsKey(vertex)) {
+                return false;
+            }
+            outgoing.put(vertex, Collections.emptyMap());
+        } else {
+            if (indexOf(vertex) >= 0) {
+                return false;
+            }
+            if (vertexCount == COMPACT_VERTEX_LIMIT) {
+                switchToHashed();
+                return add(vertex);
+            }
+            appendVertex(vertex);
+        }
+        checkRep(vertex);
+        return true;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        int previous = hashed ? setHashed(source, target, weight) : setCompact(source, target, weight);
+        checkRep(source, target);
+        return previous;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        boolean removed = hashed ? removeHashed(vertex) : removeCompact(vertex);
+        checkRep(vertex);
+        return removed;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        if (hashed) {
+            return Collections.unmodifiableSet(outgoing.keySet());
+        }
+        Set<L> vertices = new LinkedHashSet<>();
+        for (int i = 0; i < vertexCount; i++) {
+            vertices.add(label(i));
+        }
+        return Collections.unmodifiableSet(vertices);
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        if (hashed) {
+            return Collections.unmodifiableMap(incoming.getOrDefault(target, Collections.emptyMap()));
+        }
+        Map<L, Integer> sources = new HashMap<>();
+        int t = indexOf(target);
+        for (int i = 0; t >= 0 && i < edgeCount; i++) {
+            if (edgeTargets[i] == t) {
+                sources.put(label(edgeSources[i]), edgeWeights[i]);
+            }
+        }
+        return sources;
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        if (hashed) {
+            return Collections.unmodifiableMap(outgoing.getOrDefault(source, Collections.emptyMap()));
+        }
+        Map<L, Integer> targets = new HashMap<>();
+        int s = indexOf(source);
+        for (int i = 0; s >= 0 && i < edgeCount; i++) {
+            if (edgeSources[i] == s) {
+                targets.put(label(edgeTargets[i]), edgeWeights[i]);
+            }
+        }
+        return targets;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (L vertex : vertices()) {
+            sb.append(vertex).append(" -> ").append(targets(vertex)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    // Compact layout helpers
+
+    @SuppressWarnings("unchecked")
+    private L label(int index) {
+        return (L) labels[index];
+    }
+
+    // Returns the index of the vertex in labels, or -1 if absent.
+    private int indexOf(Object vertex) {
+        for (int i = 0; i < vertexCount; i++) {
+            if (labels[i].equals(vertex)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the index of the vertex in labels, appending it if absent; -1 if there is no room.
+    private int indexOrAppend(L vertex) {
+        int index = indexOf(vertex);
+        if (index >= 0) {
+            return index;
+        }
+        if (vertexCount == COMPACT_VERTEX_LIMIT) {
+            return -1;
+        }
+        appendVertex(vertex);
+        return vertexCount - 1;
+    }
+
+    private void appendVertex(L vertex) {
+        if (vertexCount == labels.length) {
+            labels = Arrays.copyOf(labels, Math.min(labels.length * 2, COMPACT_VERTEX_LIMIT));
+        }
+        labels[vertexCount++] = vertex;
+    }
+
+    // Returns the index of the edge from s to t in the edge arrays, or -1 if absent.
+    private int edgeIndex(int s, int t) {
+        for (int i = 0; i < edgeCount; i++) {
+            if (edgeSources[i] == s && edgeTargets[i] == t) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int setCompact(L source, L target, int weight) {
+        if (weight == 0) {
+            // no vertices are created when removing an edge
+            int s = indexOf(source);
+            int t = indexOf(target);
+            int e = s < 0 || t < 0 ? -1 : edgeIndex(s, t);
+            if (e < 0) {
+                return 0;
+            }
+            int previous = edgeWeights[e];
+            removeEdgeAt(e);
+            return previous;
+        }
+        int s = indexOrAppend(source);
+        int t = s < 0 ? -1 : indexOrAppend(target);
+        int e = t < 0 ? -1 : edgeIndex(s, t);
+        if (e >= 0) {
+            int previous = edgeWeights[e];
+            edgeWeights[e] = weight;
+            return previous;
+        }
+        if (t < 0 || edgeCount == COMPACT_EDGE_LIMIT) {
+            switchToHashed();
+            return setHashed(source, target, weight);
+        }
+        if (edgeCount == edgeSources.length) {
+            int capacity = Math.min(edgeSources.length * 2, COMPACT_EDGE_LIMIT);
+            edgeSources = Arrays.copyOf(edgeSources, capacity);
+            edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+            edgeWeights = Arrays.copyOf(edgeWeights, capacity);
+        }
+        edgeSources[edgeCount] = s;
+        edgeTargets[edgeCount] = t;
+        edgeWeights[edgeCount] = weight;
+        edgeCount++;
+        return 0;
+    }
+
+    // Removes edge e by moving the last edge into its slot.
+    private void removeEdgeAt(int e) {
+        edgeCount--;
+        edgeSources[e] = edgeSources[edgeCount];
+        edgeTargets[e] = edgeTargets[edgeCount];
+        edgeWeights[e] = edgeWeights[edgeCount];
+    }
+
+    private boolean removeCompact(L vertex) {
+        int v = indexOf(vertex);
+        if (v < 0) {
+            return false;
+        }
+        for (int i = edgeCount - 1; i >= 0; i--) {
+            if (edgeSources[i] == v || edgeTargets[i] == v) {
+                removeEdgeAt(i);
+            }
+        }
+        // move the last vertex into the freed slot and renumber its edges
+        int last = vertexCount - 1;
+        labels[v] = labels[last];
+        labels[last] = null;
+        vertexCount--;
+        for (int i = 0; i < edgeCount; i++) {
+            if (edgeSources[i] == last) {
+                edgeSources[i] = v;
+            }
+            if (edgeTargets[i] == last) {
+                edgeTargets[i] = v;
+            }
+        }
+        return true;
+    }
+
+    // Moves the whole graph into the hashed layout and releases the compact arrays.
+    private void switchToHashed() {
+        outgoing = new HashMap<>();
+        incoming = new HashMap<>();
+        hashed = true;
+        for (int i = 0; i < vertexCount; i++) {
+            outgoing.put(label(i), Collections.emptyMap());
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            setHashed(label(edgeSources[i]), label(edgeTargets[i]), edgeWeights[i]);
+        }
+        labels = null;
+        edgeSources = edgeTargets = edgeWeights = null;
+        vertexCount = edgeCount = 0;
+    }
+
+    // Hashed layout helpers
+
+    private int setHashed(L source, L target, int weight) {
+        if (weight == 0) {
+            Map<L, Integer> row = outgoing.get(source);
+            Integer previous = row == null ? null : row.remove(target);
+            if (previous == null) {
+                return 0;
+            }
+            unindex(target, source);
+            return previous;
+        }
+        outgoing.putIfAbsent(target, Collections.emptyMap());
+        Integer previous = row(source).put(target, weight);
+        incoming.computeIfAbsent(target, t -> new HashMap<>()).put(source, weight);
+        return previous == null ? 0 : previous;
+    }
+
+    // Returns the modifiable outbound row of the vertex, creating the vertex or row if needed.
+    private Map<L, Integer> row(L source) {
+        Map<L, Integer> row = outgoing.get(source);
+        if (!(row instanceof HashMap)) {
+            row = new HashMap<>();
+            outgoing.put(source, row);
+        }
+        return row;
+    }
+
+    // Removes incoming.get(target).get(source), dropping the row once it becomes empty.
+    private void unindex(L target, L source) {
+        Map<L, Integer> column = incoming.get(target);
+        if (column != null && column.remove(source) != null && column.isEmpty()) {
+            incoming.remove(target);
+        }
+    }
+
+    private boolean removeHashed(L vertex) {
+        Map<L, Integer> row = outgoing.remove(vertex);
+        if (row == null) {
+            return false;
+        }
+        for (L target : row.keySet()) {
+            unindex(target, vertex);
+        }
+        Map<L, Integer> column = incoming.remove(vertex);
+        if (column != null) {
+            for (L source : column.keySet()) {
+                Map<L, Integer> sourceRow = outgoing.get(source);
+                if (sourceRow != null) {
+                    sourceRow.remove(vertex);
+                }
+            }
+        }
+        return true;
+    }
+}
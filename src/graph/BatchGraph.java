@@ -0,0 +1,36 @@
+package graph;
+
+import java.util.List;
+
+/**
+ * A {@link Graph} that can apply a list of mutations as one atomic step.
+ *
+ * <p>{@link #applyAll(List)} checks the representation invariant once, after
+ * the last mutation, instead of after every one, so a batch of k mutations
+ * costs one invariant check rather than k.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public interface BatchGraph<L> extends Graph<L> {
+
+    /**
+     * Apply mutations in order, as if by calling the corresponding mutators one
+     * after another, and check the representation invariant once at the end.
+     * Either every mutation takes effect or, if one of them is rejected or the
+     * final check fails, none does: the graph is rolled back to its state before
+     * the call and the failure is rethrown.
+     *
+     * @param mutations mutations to apply
+     * @throws IllegalArgumentException if a mutation is rejected by the graph
+     */
+    public void applyAll(List<? extends Mutation<L>> mutations);
+
+    /**
+     * @return a new, empty batch of mutations that {@link GraphBatch#commit()
+     *         commits} to this graph
+     */
+    public default GraphBatch<L> batch() {
+        return new GraphBatch<>(this);
+    }
+
+}
@@ -0,0 +1,281 @@
+package graph;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A thread-safe front end that applies the mutations of many threads to a
+ * single-threaded {@link CountingGraph} by flat combining.
+ *
+ * <p>Instead of every writer taking a lock in turn, each thread publishes its
+ * request in a slot of its own and then tries to become the combiner. The one
+ * thread that gets the lock applies every published request, its own and
+ * everyone else's, in one pass over the slots, while the others wait for
+ * their results without touching the lock. Under heavy contention on a few
+ * hot edges this turns a convoy of lock handoffs, each moving the graph's
+ * cache lines to another core, into batches applied by one core.
+ *
+ * <p>Reads take the same lock, help apply pending requests, and return
+ * unmodifiable copies, so they never see a half-applied mutation. The wrapped
+ * graph must not be used directly afterwards.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class CombiningGraph<L> implements CountingGraph<L> {
+
+    private static final int ADD = 1;
+    private static final int SET = 2;
+    private static final int MERGE = 3;
+    private static final int REMOVE = 4;
+
+    /** Passes over the slots a combiner makes before handing the lock back. */
+    private static final int COMBINE_PASSES = 3;
+    /** Number of combining rounds between sweeps for idle slots. */
+    private static final int SWEEP_INTERVAL = 1024;
+    /** Slots that have been idle for this many rounds are unlinked by a sweep. */
+    private static final int IDLE_ROUNDS = 4096;
+    /** Rounds a waiting thread spins before it starts yielding. */
+    private static final int SPINS = 64;
+
+    /**
+     * The publication slot of one thread. The request fields are written by the
+     * owner before it sets pending, and the result fields by the combiner before
+     * it clears pending; the volatile accesses to pending order the two.
+     */
+    private static final class Slot<L> {
+        volatile boolean pending;
+        volatile boolean linked;
+        volatile Slot<L> next;
+        long lastRound;
+
+        int kind;
+        L source;
+        L target;
+        int value;
+        IntBinaryOperator op;
+
+        int result;
+        Throwable failure;
+    }
+
+    private final CountingGraph<L> graph;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicReference<Slot<L>> slots = new AtomicReference<>();
+    private final ThreadLocal<Slot<L>> mySlot = ThreadLocal.withInitial(Slot::new);
+    private long round;
+
+    // Abstraction function:
+    //   AF = the graph represented by graph, with every pending slot request still to be
+    //     applied
+    // Representation invariant:
+    //   graph != null; every slot reachable from slots has linked == true; a slot whose
+    //     linked flag is false is not reachable from slots
+    // Safety from rep exposure:
+    //   graph and the slots are never handed out; reads return unmodifiable copies
+    // Thread safety argument:
+    //   graph is only touched while holding lock; a slot's request is handed from owner
+    //     to combiner, and its result back, through the volatile pending flag;
+    //   slots are only pushed onto the head of the list (by compare-and-set) and only
+    //     unlinked, by the lock holder, from behind the head, so the two never conflict
+
+    /**
+     * Wrap a graph.
+     *
+     * @param graph graph to apply mutations to, not shared with other code
+     */
+    public CombiningGraph(CountingGraph<L> graph) {
+        if (graph == null) {
+            throw new IllegalArgumentException("Graph cannot be null");
+        }
+        this.graph = graph;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        return submit(ADD, vertex, null, 0, null) != 0;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        return submit(SET, source, target, weight, null);
+    }
+
+    @Override
+    public int merge(L source, L target, int value, IntBinaryOperator op) {
+        return submit(MERGE, source, target, value, op);
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        return submit(REMOVE, vertex, null, 0, null) != 0;
+    }
+
+    // Publishes a request in the calling thread's slot and waits until it is applied.
+    private int submit(int kind, L source, L target, int value, IntBinaryOperator op) {
+        Slot<L> slot = mySlot.get();
+        slot.kind = kind;
+        slot.source = source;
+        slot.target = target;
+        slot.value = value;
+        slot.op = op;
+        slot.failure = null;
+        slot.pending = true;
+        for (int spins = 0; slot.pending; spins++) {
+            if (!slot.linked) {
+                link(slot);
+            }
+            if (lock.tryLock()) {
+                try {
+                    // a sweep may have unlinked the slot just before it was published
+                    if (slot.pending) {
+                        apply(slot);
+                    }
+                    combine();
+                } finally {
+                    lock.unlock();
+                }
+            } else if (spins >= SPINS) {
+                Thread.yield();
+            }
+        }
+        slot.source = null;
+        slot.target = null;
+        slot.op = null;
+        Throwable failure = slot.failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return slot.result;
+    }
+
+    private void link(Slot<L> slot) {
+        slot.linked = true;
+        Slot<L> head;
+        do {
+            head = slots.get();
+            slot.next = head;
+        } while (!slots.compareAndSet(head, slot));
+    }
+
+    // Applies every pending request. Must be called with lock held.
+    private void combine() {
+        round++;
+        for (int pass = 0; pass < COMBINE_PASSES; pass++) {
+            boolean applied = false;
+            for (Slot<L> slot = slots.get(); slot != null; slot = slot.next) {
+                if (slot.pending) {
+                    apply(slot);
+                    applied = true;
+                }
+            }
+            if (!applied) {
+                break;
+            }
+        }
+        if (round % SWEEP_INTERVAL == 0) {
+            sweep();
+        }
+    }
+
+    // Unlinks idle slots, other than the head, so that threads that stopped writing
+    // no longer cost the combiner anything. Must be called with lock held.
+    private void sweep() {
+        Slot<L> previous = slots.get();
+        if (previous == null) {
+            return;
+        }
+        Slot<L> next;
+        for (Slot<L> slot = previous.next; slot != null; slot = next) {
+            // read next first: once unlinked, the owner may relink the slot at any time
+            next = slot.next;
+            if (!slot.pending && round - slot.lastRound > IDLE_ROUNDS) {
+                previous.next = next;
+                slot.linked = false;
+            } else {
+                previous = slot;
+            }
+        }
+    }
+
+    // Applies one request and hands its result back. Must be called with lock held.
+    private void apply(Slot<L> slot) {
+        slot.lastRound = round;
+        try {
+            switch (slot.kind) {
+            case ADD:
+                slot.result = graph.add(slot.source) ? 1 : 0;
+                break;
+            case SET:
+                slot.result = graph.set(slot.source, slot.target, slot.value);
+                break;
+            case MERGE:
+                slot.result = graph.merge(slot.source, slot.target, slot.value, slot.op);
+                break;
+            case REMOVE:
+                slot.result = graph.remove(slot.source) ? 1 : 0;
+                break;
+            default:
+                throw new AssertionError("unknown request kind " + slot.kind);
+            }
+        } catch (RuntimeException | Error e) {
+            // rethrown by the owner, which may be a different thread
+            slot.failure = e;
+        }
+        slot.pending = false;
+    }
+
+    // Locks the graph for a read, applying pending requests first so that
+    // readers help rather than delay writers.
+    private void lockForRead() {
+        lock.lock();
+        combine();
+    }
+
+    @Override
+    public Set<L> vertices() {
+        lockForRead();
+        try {
+            return Collections.unmodifiableSet(new HashSet<>(graph.vertices()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        lockForRead();
+        try {
+            return Collections.unmodifiableMap(new HashMap<>(graph.sources(target)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        lockForRead();
+        try {
+            return Collections.unmodifiableMap(new HashMap<>(graph.targets(source)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lockForRead();
+        try {
+            return graph.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
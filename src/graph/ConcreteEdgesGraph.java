@@ -1,38 +1,159 @@
 package graph;
 
-import java.util.*;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.IntBinaryOperator;
 
 /**
  * Represents a mutable directed graph where each vertex is a String.
  */
-public class ConcreteEdgesGraph implements Graph<String> {
+public class ConcreteEdgesGraph implements CountingGraph<String>, BatchGraph<String>, TraversableGraph<String> {
     
     private final Set<String> vertices = new HashSet<>(); // Stores unique vertices in the graph
-    private final List<Edge> edges = new ArrayList<>();   // List of directed edges in the graph
+    private final Set<String> vertexView = Collections.unmodifiableSet(vertices); // Handed out by vertices()
+    // Edge table indexed by source, then target: doubles as the hash index on (source, target)
+    private final Map<String, Map<String, Edge>> outgoing = new HashMap<>();
+    // Secondary index of the same edges by target, then source
+    private final Map<String, Map<String, Edge>> incoming = new HashMap<>();
+    // True while applyAll() runs a batch, whose invariant is checked once at the end
+    private boolean checksDeferred = false;
+    // How much of the invariant to check after each mutation
+    private final InvariantChecker invariants;
 
     // Abstraction function and Representation invariant for ConcreteEdgesGraph:
-    // AF(vertices, edges) = a directed graph where each element in 'vertices' represents a node,
-    //    and each Edge in 'edges' signifies a directed link with weight between two nodes.
-    // RI: vertices and edges are both non-null, edges contain only valid entries, each edge's
-    //    source and target exist in vertices, and no two edges share identical source-target pairs.
+    // AF(vertices, outgoing, incoming) = a directed graph where each element in 'vertices'
+    //    represents a node, and each Edge in 'outgoing' signifies a directed link with weight
+    //    between two nodes.
+    // RI: vertices, outgoing and incoming are non-null, each edge's source and target exist in
+    //    vertices, outgoing.get(s).get(t) is an edge from s to t, incoming holds exactly the same
+    //    edges keyed the other way round, and no inner map is empty.
 
-    private void checkRep() {
+    /**
+     * Creates an empty graph that checks its whole representation invariant after
+     * every mutation.
+     */
+    public ConcreteEdgesGraph() {
+        this(InvariantChecker.full());
+    }
+
+    /**
+     * Creates an empty graph with the given invariant-checking policy.
+     * @param invariants decides which checks run after each mutation and records their cost;
+     *        must not be shared with another graph
+     */
+    public ConcreteEdgesGraph(InvariantChecker invariants) {
+        if (invariants == null) {
+            throw new IllegalArgumentException("Invariant checker cannot be null");
+        }
+        this.invariants = invariants;
+    }
+
+    /**
+     * Returns the invariant-checking policy of this graph, which also reports the cost
+     * of the checks run so far.
+     * @return the invariant checker of this graph
+     */
+    public InvariantChecker invariantChecker() {
+        return invariants;
+    }
+
+    // Checks the invariant after a mutation that touched the rows of source and target
+    // (target may be null), as far as the invariant checker asks for.
+    private void checkRep(String source, String target) {
+        if (checksDeferred) {
+            return;
+        }
+        invariants.afterMutation(this::checkAll, () -> {
+            checkVertex(source);
+            if (target != null && !target.equals(source)) {
+                checkVertex(target);
+            }
+        });
+    }
+
+    // Checks the whole representation invariant.
+    private void checkAll() {
         assert vertices != null : "Vertices set should not be null";
-        assert edges != null : "Edges list should not be null";
+        assert outgoing != null && incoming != null : "Edge indexes should not be null";
 
-        // Validate each edge: non-null and its vertices exist in the vertex set
-        for (Edge edge : edges) {
-            assert edge != null : "Edge should not be null";
-            assert vertices.contains(edge.getSource()) : "Edge source must exist in vertices";
-            assert vertices.contains(edge.getTarget()) : "Edge target must exist in vertices";
+        // Validate each edge: non-null, its vertices exist, and both indexes agree on it
+        int edgeCount = 0;
+        for (Map.Entry<String, Map<String, Edge>> row : outgoing.entrySet()) {
+            assert !row.getValue().isEmpty() : "Empty rows should be dropped from the index";
+            for (Map.Entry<String, Edge> cell : row.getValue().entrySet()) {
+                checkEdge(row.getKey(), cell.getKey(), cell.getValue());
+                edgeCount++;
+            }
         }
 
-        // Ensure uniqueness of each edge based on its source-target pairing
-        Set<String> edgePairs = new HashSet<>();
-        for (Edge edge : edges) {
-            String edgePair = edge.getSource() + "->" + edge.getTarget();
-            assert edgePairs.add(edgePair) : "Duplicate edges with same source-target are not allowed";
+        // The target index must not hold anything the source index does not
+        int indexedByTarget = 0;
+        for (Map<String, Edge> column : incoming.values()) {
+            assert !column.isEmpty() : "Empty columns should be dropped from the index";
+            indexedByTarget += column.size();
         }
+        assert edgeCount == indexedByTarget : "Source and target indexes disagree";
+    }
+
+    // Checks one edge of the source index against the vertices and the target index.
+    private void checkEdge(String source, String target, Edge edge) {
+        assert edge != null : "Edge should not be null";
+        assert edge.getSource().equals(source) : "Edge indexed under the wrong source";
+        assert edge.getTarget().equals(target) : "Edge indexed under the wrong target";
+        assert vertices.contains(source) : "Edge source must exist in vertices";
+        assert vertices.contains(target) : "Edge target must exist in vertices";
+        Map<String, Edge> column = incoming.get(target);
+        assert column != null && column.get(source) == edge : "Edge missing from the target index";
+    }
+
+    // Checks the part of the invariant about the edges into and out of one vertex.
+    private void checkVertex(String vertex) {
+        Map<String, Edge> row = outgoing.get(vertex);
+        if (row != null) {
+            assert !row.isEmpty() : "Empty rows should be dropped from the index";
+            for (Map.Entry<String, Edge> cell : row.entrySet()) {
+                checkEdge(vertex, cell.getKey(), cell.getValue());
+            }
+        }
+        Map<String, Edge> column = incoming.get(vertex);
+        if (column != null) {
+            assert !column.isEmpty() : "Empty columns should be dropped from the index";
+            for (Map.Entry<String, Edge> cell : column.entrySet()) {
+                Map<String, Edge> sourceRow = outgoing.get(cell.getKey());
+                assert sourceRow != null && sourceRow.get(vertex) == cell.getValue()
+                        : "Edge missing from the source index";
+            }
+        }
+    }
+
+    // Checks that a removed vertex, whose rows were out and in, left no trace behind.
+    private void checkRemoved(String vertex, Map<String, Edge> out, Map<String, Edge> in) {
+        if (checksDeferred) {
+            return;
+        }
+        invariants.afterMutation(this::checkAll, () -> {
+            assert !vertices.contains(vertex) : "Removed vertex should be gone";
+            assert !outgoing.containsKey(vertex) && !incoming.containsKey(vertex)
+                    : "Removed vertex should have no rows";
+            for (String target : out == null ? Collections.<String>emptySet() : out.keySet()) {
+                Map<String, Edge> column = incoming.get(target);
+                assert column == null || (!column.isEmpty() && !column.containsKey(vertex))
+                        : "Removed edge left in the target index";
+            }
+            for (String source : in == null ? Collections.<String>emptySet() : in.keySet()) {
+                Map<String, Edge> row = outgoing.get(source);
+                assert row == null || (!row.isEmpty() && !row.containsKey(vertex))
+                        : "Removed edge left in the source index";
+            }
+        });
     }
 
     /**
@@ -43,7 +164,7 @@ public class ConcreteEdgesGraph implements Graph<String> {
     @Override
     public boolean add(String vertex) {
         boolean added = vertices.add(vertex);
-        checkRep();  // Verify representation invariant after modification
+        checkRep(vertex, null);  // Verify representation invariant after modification
         return added;
     }
     
@@ -57,29 +178,56 @@ public class ConcreteEdgesGraph implements Graph<String> {
      */
     @Override
     public int set(String source, String target, int weight) {
-        int previousWeight = 0;
-        
-        // Locate and remove existing edge with the same source and target
-        for (Iterator<Edge> it = edges.iterator(); it.hasNext();) {
-            Edge edge = it.next();
-            if (edge.getSource().equals(source) && edge.getTarget().equals(target)) {
-                previousWeight = edge.getWeight();
-                it.remove();
-                break;
-            }
+        // Validate before touching the vertex set, so a rejected call leaves the graph unchanged
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
         }
-
-        // Add new edge if weight is positive
-        if (weight > 0) {
-            edges.add(new Edge(source, target, weight));
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
         }
 
         // Ensure both source and target vertices are in the set
-        add(source);
-        add(target);
-        
-        checkRep();  // Check representation invariant
-        return previousWeight;
+        vertices.add(source);
+        vertices.add(target);
+
+        // Replace or drop the existing edge with the same source and target
+        Edge previous = weight > 0
+                ? putEdge(new Edge(source, target, weight))
+                : removeEdge(source, target);
+
+        checkRep(source, target);  // Check representation invariant
+        return previous == null ? 0 : previous.getWeight();
+    }
+
+    /**
+     * Combines the weight of an edge with a value in a single lookup, creating or
+     * removing the edge as needed.
+     * @param source the source vertex
+     * @param target the target vertex
+     * @param value the value to combine with the existing weight, or the weight of a new edge
+     * @param op function from the existing weight and value to the new weight
+     * @return the new weight of the edge, or 0 if the edge does not exist afterwards
+     */
+    @Override
+    public int merge(String source, String target, int value, IntBinaryOperator op) {
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
+        }
+        Map<String, Edge> row = outgoing.get(source);
+        Edge existing = row == null ? null : row.get(target);
+        int weight = existing == null ? value : op.applyAsInt(existing.getWeight(), value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        if (weight > 0) {
+            vertices.add(source);
+            vertices.add(target);
+            putEdge(new Edge(source, target, weight));
+        } else if (existing != null) {
+            removeEdge(source, target);
+        }
+        checkRep(source, target);
+        return weight;
     }
 
     /**
@@ -91,56 +239,109 @@ public class ConcreteEdgesGraph implements Graph<String> {
     public boolean remove(String vertex) {
         boolean removed = vertices.remove(vertex);
         
-        // Remove all edges involving the specified vertex
-        edges.removeIf(edge -> edge.getSource().equals(vertex) || edge.getTarget().equals(vertex));
+        // Remove all edges involving the specified vertex, touching only its own rows
+        Map<String, Edge> out = outgoing.remove(vertex);
+        if (out != null) {
+            for (String target : out.keySet()) {
+                unindex(incoming, target, vertex);
+            }
+        }
+        Map<String, Edge> in = incoming.remove(vertex);
+        if (in != null) {
+            for (String source : in.keySet()) {
+                unindex(outgoing, source, vertex);
+            }
+        }
         
-        checkRep();
+        checkRemoved(vertex, out, in);
         return removed;
     }
 
+    /**
+     * Applies a list of mutations atomically, checking the whole representation
+     * invariant once at the end (unless checks are off) instead of after every mutation.
+     * @param mutations the mutations to apply, in order
+     */
+    @Override
+    public void applyAll(List<? extends Mutation<String>> mutations) {
+        checksDeferred = true;
+        try {
+            Mutation.applyAll(this, mutations, () -> invariants.afterBatch(this::checkAll));
+        } finally {
+            checksDeferred = false;
+        }
+    }
+
     /**
      * Retrieves all vertices in the graph.
-     * @return a read-only set of all vertices
+     * @return a live, read-only view of the set of all vertices
      */
     @Override
     public Set<String> vertices() {
-        return Collections.unmodifiableSet(vertices);
+        return vertexView;
     }
 
     /**
      * Returns a mapping of sources and their respective edge weights for a specified target.
      * @param target the target vertex
-     * @return a map of source vertices and their edge weights to the target
+     * @return a live, read-only view mapping source vertices to their edge weights to the target
      */
     @Override
     public Map<String, Integer> sources(String target) {
-        Map<String, Integer> sources = new HashMap<>();
-        
-        for (Edge edge : edges) {
-            if (edge.getTarget().equals(target)) {
-                sources.put(edge.getSource(), edge.getWeight());
-            }
-        }
-        
-        return sources;
+        return new Adjacency(incoming, target, false);
     }
 
     /**
      * Returns a mapping of targets and their respective edge weights for a specified source.
      * @param source the source vertex
-     * @return a map of target vertices and their edge weights from the source
+     * @return a live, read-only view mapping target vertices to their edge weights from the source
      */
     @Override
     public Map<String, Integer> targets(String source) {
-        Map<String, Integer> targets = new HashMap<>();
-        
-        for (Edge edge : edges) {
-            if (edge.getSource().equals(source)) {
-                targets.put(edge.getTarget(), edge.getWeight());
+        return new Adjacency(outgoing, source, true);
+    }
+
+    /**
+     * Visits the edges leaving a vertex straight from the outgoing index.
+     * @param source the source vertex
+     * @param visitor called with the target and weight of each edge
+     */
+    @Override
+    public void forEachTarget(String source, EdgeVisitor<? super String> visitor) {
+        Map<String, Edge> row = outgoing.get(source);
+        if (row != null) {
+            for (Edge edge : row.values()) {
+                visitor.visit(edge.getTarget(), edge.getWeight());
             }
         }
-        
-        return targets;
+    }
+
+    /**
+     * Visits the edges entering a vertex straight from the incoming index.
+     * @param target the target vertex
+     * @param visitor called with the source and weight of each edge
+     */
+    @Override
+    public void forEachSource(String target, EdgeVisitor<? super String> visitor) {
+        Map<String, Edge> column = incoming.get(target);
+        if (column != null) {
+            for (Edge edge : column.values()) {
+                visitor.visit(edge.getSource(), edge.getWeight());
+            }
+        }
+    }
+
+    /**
+     * Looks up the weight of an edge without boxing it.
+     * @param source the source vertex
+     * @param target the target vertex
+     * @return the weight of the edge, or 0 if there is no such edge
+     */
+    @Override
+    public int weight(String source, String target) {
+        Map<String, Edge> row = outgoing.get(source);
+        Edge edge = row == null ? null : row.get(target);
+        return edge == null ? 0 : edge.getWeight();
     }
 
     /**
@@ -151,11 +352,156 @@ public class ConcreteEdgesGraph implements Graph<String> {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Vertices: ").append(vertices).append("\nEdges:\n");
-        for (Edge edge : edges) {
-            sb.append(edge.toString()).append("\n");
+        for (Map<String, Edge> row : outgoing.values()) {
+            for (Edge edge : row.values()) {
+                sb.append(edge.toString()).append("\n");
+            }
         }
         return sb.toString();
     }
+
+    /**
+     * Live, read-only view of one row of an edge index, mapping the other endpoint of each
+     * edge to its weight. The row is looked up on every access, since rows come and go as
+     * edges are added and removed, so the view never goes stale and copies nothing. Its
+     * entries are the ones each Edge keeps for its endpoints, so iterating allocates nothing
+     * per edge.
+     */
+    private static final class Adjacency extends AbstractMap<String, Integer> {
+        private final Map<String, Map<String, Edge>> index;
+        private final String key;
+        private final boolean outbound;
+
+        Adjacency(Map<String, Map<String, Edge>> index, String key, boolean outbound) {
+            this.index = index;
+            this.key = key;
+            this.outbound = outbound;
+        }
+
+        private Map<String, Edge> row() {
+            Map<String, Edge> row = index.get(key);
+            return row == null ? Collections.emptyMap() : row;
+        }
+
+        // The entry of edge keyed by its endpoint in the row.
+        private Map.Entry<String, Integer> entry(Edge edge) {
+            return outbound ? edge.targetEntry() : edge.sourceEntry();
+        }
+
+        @Override
+        public int size() {
+            return row().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return row().isEmpty();
+        }
+
+        @Override
+        public boolean containsKey(Object vertex) {
+            return row().containsKey(vertex);
+        }
+
+        @Override
+        public Integer get(Object vertex) {
+            Edge edge = row().get(vertex);
+            return edge == null ? null : entry(edge).getValue();
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super String, ? super Integer> action) {
+            for (Edge edge : row().values()) {
+                Map.Entry<String, Integer> entry = entry(edge);
+                action.accept(entry.getKey(), entry.getValue());
+            }
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return new AbstractSet<String>() {
+                @Override
+                public int size() {
+                    return row().size();
+                }
+
+                @Override
+                public boolean contains(Object vertex) {
+                    return row().containsKey(vertex);
+                }
+
+                @Override
+                public Iterator<String> iterator() {
+                    Iterator<String> keys = row().keySet().iterator();
+                    return new Iterator<String>() {
+                        @Override
+                        public boolean hasNext() {
+                            return keys.hasNext();
+                        }
+
+                        @Override
+                        public String next() {
+                            return keys.next();
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public Set<Map.Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Integer>>() {
+                @Override
+                public int size() {
+                    return row().size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Integer>> iterator() {
+                    Iterator<Edge> edges = row().values().iterator();
+                    return new Iterator<Map.Entry<String, Integer>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return edges.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, Integer> next() {
+                            return entry(edges.next());
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    // Stores an edge in both indexes; returns the edge it replaced, or null.
+    private Edge putEdge(Edge edge) {
+        incoming.computeIfAbsent(edge.getTarget(), t -> new HashMap<>()).put(edge.getSource(), edge);
+        return outgoing.computeIfAbsent(edge.getSource(), s -> new HashMap<>()).put(edge.getTarget(), edge);
+    }
+
+    // Drops the edge from source to target from both indexes; returns it, or null if absent.
+    private Edge removeEdge(String source, String target) {
+        Edge removed = unindex(outgoing, source, target);
+        if (removed != null) {
+            unindex(incoming, target, source);
+        }
+        return removed;
+    }
+
+    // Removes index.get(outer).get(inner), dropping the inner map once it becomes empty.
+    private static Edge unindex(Map<String, Map<String, Edge>> index, String outer, String inner) {
+        Map<String, Edge> row = index.get(outer);
+        if (row == null) {
+            return null;
+        }
+        Edge removed = row.remove(inner);
+        if (row.isEmpty()) {
+            index.remove(outer);
+        }
+        return removed;
+    }
 }
 
 /**
@@ -166,10 +512,15 @@ class Edge {
     private final String source; // Source vertex of the edge
     private final String target; // Target vertex of the edge
     private final int weight;    // Weight of the edge
+    // Read-only entries target -> weight and source -> weight, handed out by the graph's
+    // views; made on first use and then reused, so iterating a view allocates nothing
+    private Map.Entry<String, Integer> targetEntry;
+    private Map.Entry<String, Integer> sourceEntry;
 
     // Abstraction function and Representation invariant for Edge:
     // AF(source, target, weight) = an edge directed from 'source' to 'target' with a given 'weight'.
-    // RI: source and target are non-null, weight must be non-negative
+    // RI: source and target are non-null, weight must be non-negative; targetEntry, if made,
+    //    maps target to weight and sourceEntry, if made, maps source to weight
 
     public Edge(String source, String target, int weight) {
         if (source == null || target == null) {
@@ -204,6 +555,27 @@ class Edge {
         return weight;
     }
 
+    /**
+     * @return a read-only entry mapping the target of the edge to its weight
+     */
+    public Map.Entry<String, Integer> targetEntry() {
+        if (targetEntry == null) {
+            // a race makes at most a second, equal entry: both fields of the entry are final
+            targetEntry = new AbstractMap.SimpleImmutableEntry<>(target, weight);
+        }
+        return targetEntry;
+    }
+
+    /**
+     * @return a read-only entry mapping the source of the edge to its weight
+     */
+    public Map.Entry<String, Integer> sourceEntry() {
+        if (sourceEntry == null) {
+            sourceEntry = new AbstractMap.SimpleImmutableEntry<>(source, weight);
+        }
+        return sourceEntry;
+    }
+
     /**
      * Provides a string representation of the edge in "source -> target (weight)" format.
      * @return string representation of the edge
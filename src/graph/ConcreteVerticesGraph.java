@@ -1,45 +1,138 @@
 package graph;
 
-import java.util.ArrayList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.IntBinaryOperator;
 
-public class ConcreteVerticesGraph implements Graph<String> {
+public class ConcreteVerticesGraph implements CountingGraph<String>, BatchGraph<String>, TraversableGraph<String> {
     
-    // List of vertices representing the graph structure.
-    private final List<Vertex> vertices = new ArrayList<>();
+    // Vertices of the graph indexed by label, in insertion order.
+    private final Map<String, Vertex> vertices = new LinkedHashMap<>();
     
-    // Constructor for creating an empty graph.
+    // Read-only view of the vertex labels, handed out by vertices().
+    private final Set<String> vertexView = Collections.unmodifiableSet(vertices.keySet());
+    
+    // True while applyAll() runs a batch, whose invariant is checked once at the end.
+    private boolean checksDeferred = false;
+    
+    // How much of the invariant to check after each mutation, and what it cost.
+    private final InvariantChecker invariants;
+    
+    // Constructor for creating an empty graph that checks its whole invariant after every mutation.
     public ConcreteVerticesGraph() {
-        checkRep();
+        this(InvariantChecker.full());
+    }
+    
+    // Constructor for creating an empty graph with the given invariant-checking policy,
+    // which must not be shared with another graph.
+    public ConcreteVerticesGraph(InvariantChecker invariants) {
+        if (invariants == null) {
+            throw new IllegalArgumentException("Invariant checker cannot be null");
+        }
+        this.invariants = invariants;
+        checkAll();
+    }
+    
+    // Returns the invariant-checking policy of this graph, which also reports the cost of
+    // the checks run so far.
+    public InvariantChecker invariantChecker() {
+        return invariants;
     }
     
     // Abstraction function and Representation invariant for ConcreteVerticesGraph:
-    // AF(vertices) = a directed graph where each Vertex in vertices represents a node
+    // AF(vertices) = a directed graph where each Vertex in vertices.values() represents a node
     //    in the graph, and each edge in Vertex's edges represents an edge in the graph.
-    // RI: vertices is not null, does not contain null elements,
-    //    and no two vertices have the same label.
+    // RI: vertices is not null, does not contain null elements, each vertex is keyed by
+    //    its own label, every edge's target is a vertex of the graph, and v has an edge to t
+    //    with weight w iff t records v as a source with weight w.
 
-    // Checks representation invariant to maintain graph integrity.
-    private void checkRep() {
-        assert vertices != null : "vertices list should not be null";
-        Set<String> labels = new HashSet<>();
-        for (Vertex v : vertices) {
+    // Checks the invariant after a mutation that touched the given vertices (the second
+    // may be null), as far as the invariant checker asks for.
+    private void checkRep(String source, String target) {
+        if (checksDeferred) {
+            return;
+        }
+        invariants.afterMutation(this::checkAll, () -> {
+            checkVertex(source);
+            if (target != null && !target.equals(source)) {
+                checkVertex(target);
+            }
+        });
+    }
+    
+    // Checks the whole representation invariant to maintain graph integrity.
+    private void checkAll() {
+        assert vertices != null : "vertices map should not be null";
+        for (Map.Entry<String, Vertex> entry : vertices.entrySet()) {
+            Vertex v = entry.getValue();
             assert v != null : "vertex should not be null";
-            assert labels.add(v.getLabel()) : "duplicate vertex label";
+            assert entry.getKey().equals(v.getLabel()) : "vertex indexed under the wrong label";
+            for (Map.Entry<String, Integer> edge : v.getEdges().entrySet()) {
+                assert edge.getValue() > 0 : "edge weights must be positive";
+                Vertex target = vertices.get(edge.getKey());
+                assert target != null : "edge target must be a vertex of the graph";
+                assert edge.getValue().equals(target.getSources().get(v.getLabel()))
+                        : "edge missing from its target's sources";
+            }
+            for (String source : v.getSources().keySet()) {
+                assert vertices.containsKey(source) : "edge source must be a vertex of the graph";
+            }
+        }
+    }
+    
+    // Checks the part of the invariant about one vertex and the edges into and out of it.
+    private void checkVertex(String label) {
+        Vertex v = vertices.get(label);
+        if (v == null) {
+            return;
+        }
+        assert label.equals(v.getLabel()) : "vertex indexed under the wrong label";
+        for (Map.Entry<String, Integer> edge : v.getEdges().entrySet()) {
+            assert edge.getValue() > 0 : "edge weights must be positive";
+            Vertex target = vertices.get(edge.getKey());
+            assert target != null : "edge target must be a vertex of the graph";
+            assert edge.getValue().equals(target.getSources().get(label)) : "edge missing from its target's sources";
+        }
+        for (Map.Entry<String, Integer> edge : v.getSources().entrySet()) {
+            Vertex source = vertices.get(edge.getKey());
+            assert source != null : "edge source must be a vertex of the graph";
+            assert edge.getValue().equals(source.getEdges().get(label)) : "source missing its edge";
+        }
+    }
+    
+    // Checks that a removed vertex is no longer referenced by its former neighbours.
+    private void checkRemoved(Vertex removed) {
+        if (checksDeferred) {
+            return;
         }
+        invariants.afterMutation(this::checkAll, () -> {
+            String label = removed.getLabel();
+            assert !vertices.containsKey(label) : "removed vertex should be gone";
+            for (String target : removed.getEdges().keySet()) {
+                Vertex t = vertices.get(target);
+                assert t == null || !t.getSources().containsKey(label) : "removed edge left in its target";
+            }
+            for (String source : removed.getSources().keySet()) {
+                Vertex v = vertices.get(source);
+                assert v == null || !v.getEdges().containsKey(label) : "removed edge left in its source";
+            }
+        });
     }
 
     @Override
     public boolean add(String vertex) {
         // Adds a vertex to the graph if it doesn't already exist.
-        if (findVertex(vertex) == null) {
-            vertices.add(new Vertex(vertex));
-            checkRep();
+        if (!vertices.containsKey(vertex)) {
+            vertices.put(vertex, new Vertex(vertex));
+            checkRep(vertex, null);
             return true;
         }
         return false;
@@ -52,88 +145,221 @@ public class ConcreteVerticesGraph implements Graph<String> {
         Vertex sourceVertex = findOrAddVertex(source);
         Integer previousWeight = sourceVertex.getEdges().get(target);
         sourceVertex.addEdge(target, weight);
-        checkRep();
+        if (weight > 0) {
+            findOrAddVertex(target).addSource(source, weight);
+        } else if (previousWeight != null) {
+            vertices.get(target).removeSource(source);
+        }
+        checkRep(source, target);
         return previousWeight == null ? 0 : previousWeight;
     }
     
+    @Override
+    public int merge(String source, String target, int value, IntBinaryOperator op) {
+        // Combines the weight of an edge with a value using a single lookup of each vertex.
+        // Returns the new weight of the edge, or 0 if it does not exist afterwards.
+        Vertex sourceVertex = vertices.get(source);
+        Integer existing = sourceVertex == null ? null : sourceVertex.getEdges().get(target);
+        int weight = existing == null ? value : op.applyAsInt(existing, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Edge weight cannot be negative");
+        }
+        if (weight > 0) {
+            if (sourceVertex == null) {
+                sourceVertex = findOrAddVertex(source);
+            }
+            sourceVertex.addEdge(target, weight);
+            findOrAddVertex(target).addSource(source, weight);
+        } else if (existing != null) {
+            sourceVertex.removeEdge(target);
+            vertices.get(target).removeSource(source);
+        }
+        checkRep(source, target);
+        return weight;
+    }
+    
     @Override
     public boolean remove(String vertex) {
-        // Removes the specified vertex and all its associated edges from the graph.
-        Vertex v = findVertex(vertex);
+        // Removes the specified vertex and all its associated edges from the graph,
+        // visiting only the vertices it is adjacent to.
+        Vertex v = vertices.remove(vertex);
         if (v != null) {
-            vertices.remove(v);
-            for (Vertex vert : vertices) {
-                vert.removeEdge(vertex);
+            for (String target : v.getEdges().keySet()) {
+                Vertex t = vertices.get(target);
+                if (t != null) {
+                    t.removeSource(vertex);
+                }
             }
-            checkRep();
+            for (String source : v.getSources().keySet()) {
+                Vertex s = vertices.get(source);
+                if (s != null) {
+                    s.removeEdge(vertex);
+                }
+            }
+            checkRemoved(v);
             return true;
         }
         return false;
     }
     
     @Override
-    public Set<String> vertices() {
-        // Returns a set of all vertex labels in the graph.
-        Set<String> vertexLabels = new HashSet<>();
-        for (Vertex v : vertices) {
-            vertexLabels.add(v.getLabel());
+    public void applyAll(List<? extends Mutation<String>> mutations) {
+        // Applies the mutations atomically, checking the whole invariant once at the end
+        // (unless checks are off); any failure rolls the graph back to its state before the call.
+        checksDeferred = true;
+        try {
+            Mutation.applyAll(this, mutations, () -> invariants.afterBatch(this::checkAll));
+        } finally {
+            checksDeferred = false;
         }
-        return Collections.unmodifiableSet(vertexLabels);
+    }
+    
+    @Override
+    public Set<String> vertices() {
+        // Returns a live, read-only view of all vertex labels in the graph.
+        return vertexView;
     }
     
     @Override
     public Map<String, Integer> sources(String target) {
-        // Finds and returns all vertices with edges pointing to the specified target vertex.
-        Map<String, Integer> sources = new HashMap<>();
-        for (Vertex v : vertices) {
-            if (v.getEdges().containsKey(target)) {
-                sources.put(v.getLabel(), v.getEdges().get(target));
-            }
-        }
-        return sources;
+        // Returns a live, read-only view of the vertices with edges pointing to the target vertex.
+        return new Neighbours(target, false);
     }
     
     @Override
     public Map<String, Integer> targets(String source) {
-        // Returns all edges and their weights originating from the specified source vertex.
-        Vertex v = findVertex(source);
-        return v == null ? Collections.emptyMap() : v.getEdges();
+        // Returns a live, read-only view of the edges and weights leaving the source vertex.
+        return new Neighbours(source, true);
+    }
+    
+    @Override
+    public void forEachTarget(String source, EdgeVisitor<? super String> visitor) {
+        // Visits the edges leaving the source vertex straight from its own map.
+        Vertex v = vertices.get(source);
+        if (v != null) {
+            v.forEachEdge(visitor);
+        }
+    }
+    
+    @Override
+    public void forEachSource(String target, EdgeVisitor<? super String> visitor) {
+        // Visits the edges entering the target vertex straight from its own map.
+        Vertex v = vertices.get(target);
+        if (v != null) {
+            v.forEachSource(visitor);
+        }
+    }
+    
+    @Override
+    public int weight(String source, String target) {
+        // Looks up the weight of an edge without boxing it; 0 if there is no such edge.
+        Vertex v = vertices.get(source);
+        return v == null ? 0 : v.weightTo(target);
+    }
+    
+    // Live, read-only view of one vertex's outbound or inbound edges. The vertex is looked up
+    // on every access, so the view follows the label through remove() and a later add(),
+    // instead of going stale with a Vertex object the graph no longer holds.
+    private final class Neighbours extends AbstractMap<String, Integer> {
+        private final String label;
+        private final boolean outbound;
+        
+        Neighbours(String label, boolean outbound) {
+            this.label = label;
+            this.outbound = outbound;
+        }
+        
+        private Map<String, Integer> row() {
+            Vertex v = vertices.get(label);
+            if (v == null) {
+                return Collections.emptyMap();
+            }
+            return outbound ? v.getEdges() : v.getSources();
+        }
+        
+        @Override
+        public int size() {
+            return row().size();
+        }
+        
+        @Override
+        public boolean isEmpty() {
+            return row().isEmpty();
+        }
+        
+        @Override
+        public boolean containsKey(Object vertex) {
+            return row().containsKey(vertex);
+        }
+        
+        @Override
+        public Integer get(Object vertex) {
+            return row().get(vertex);
+        }
+        
+        @Override
+        public void forEach(BiConsumer<? super String, ? super Integer> action) {
+            row().forEach(action);
+        }
+        
+        @Override
+        public Set<String> keySet() {
+            return new AbstractSet<String>() {
+                @Override
+                public int size() {
+                    return row().size();
+                }
+                
+                @Override
+                public boolean contains(Object vertex) {
+                    return row().containsKey(vertex);
+                }
+                
+                @Override
+                public Iterator<String> iterator() {
+                    return row().keySet().iterator();
+                }
+            };
+        }
+        
+        @Override
+        public Set<Map.Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Integer>>() {
+                @Override
+                public int size() {
+                    return row().size();
+                }
+                
+                @Override
+                public Iterator<Map.Entry<String, Integer>> iterator() {
+                    return row().entrySet().iterator();
+                }
+            };
+        }
     }
     
     @Override
     public String toString() {
         // Creates a string representation of the graph showing each vertex and its edges.
         StringBuilder sb = new StringBuilder();
-        for (Vertex v : vertices) {
+        for (Vertex v : vertices.values()) {
             sb.append(v.toString()).append("\n");
         }
         return sb.toString();
     }
     
-    // Searches for a vertex by label; returns the vertex if found, else null.
-    private Vertex findVertex(String label) {
-        for (Vertex v : vertices) {
-            if (v.getLabel().equals(label)) {
-                return v;
-            }
-        }
-        return null;
-    }
-    
     // Finds a vertex by label, or creates and adds a new one if it doesn't exist.
     private Vertex findOrAddVertex(String label) {
-        Vertex v = findVertex(label);
-        if (v == null) {
-            v = new Vertex(label);
-            vertices.add(v);
-        }
-        return v;
+        return vertices.computeIfAbsent(label, Vertex::new);
     }
 }
 
 class Vertex {
     private final String label;  // Unique identifier for this vertex.
     private final Map<String, Integer> edges = new HashMap<>();  // Edges with weights.
+    private final Map<String, Integer> sources = new HashMap<>();  // Inbound edges with weights.
+    private final Map<String, Integer> edgeView = Collections.unmodifiableMap(edges);  // Handed out by getEdges().
+    private final Map<String, Integer> sourceView = Collections.unmodifiableMap(sources);  // Handed out by getSources().
 
     // Constructor for creating a vertex with a specific label.
     public Vertex(String label) {
@@ -141,16 +367,17 @@ class Vertex {
     }
     
     // Abstraction function and Representation invariant for Vertex:
-    // AF(label, edges) = a node labeled 'label' with directed edges and weights in 'edges'.
-    // RI: label != null, edges != null, no edge weight is negative.
+    // AF(label, edges, sources) = a node labeled 'label' with directed edges and weights in
+    //    'edges', and inbound edges from the vertices and with the weights in 'sources'.
+    // RI: label != null, edges != null, sources != null, no edge weight is negative.
 
-    // Ensures representation invariant holds for the vertex.
+    // Ensures the constant-time part of the representation invariant holds for the vertex.
+    // The weights are checked by the owning graph, through its invariant checker, so that
+    // adding an edge to a vertex of high degree does not cost O(degree).
     private void checkRep() {
         assert label != null : "label should not be null";
         assert edges != null : "edges map should not be null";
-        for (int weight : edges.values()) {
-            assert weight >= 0 : "edge weights must be non-negative";
-        }
+        assert sources != null : "sources map should not be null";
     }
     
     public String getLabel() {
@@ -176,9 +403,49 @@ class Vertex {
         return edges.remove(target) != null;
     }
     
+    public boolean addSource(String source, int weight) {
+        // Records an inbound edge from the source vertex with the specified weight.
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Inbound edge weight must be positive");
+        }
+        sources.put(source, weight);
+        checkRep();
+        return true;
+    }
+    
+    public boolean removeSource(String source) {
+        // Forgets the inbound edge from the source vertex, if it exists.
+        return sources.remove(source) != null;
+    }
+    
+    public void forEachEdge(EdgeVisitor<? super String> visitor) {
+        // Visits each edge from this vertex with its target and weight.
+        for (Map.Entry<String, Integer> edge : edges.entrySet()) {
+            visitor.visit(edge.getKey(), edge.getValue());
+        }
+    }
+    
+    public void forEachSource(EdgeVisitor<? super String> visitor) {
+        // Visits each edge into this vertex with its source and weight.
+        for (Map.Entry<String, Integer> edge : sources.entrySet()) {
+            visitor.visit(edge.getKey(), edge.getValue());
+        }
+    }
+    
+    public int weightTo(String target) {
+        // Returns the weight of the edge to the target vertex, or 0 if there is none.
+        Integer weight = edges.get(target);
+        return weight == null ? 0 : weight;
+    }
+    
     public Map<String, Integer> getEdges() {
         // Returns an unmodifiable view of edges from this vertex.
-        return Collections.unmodifiableMap(edges);
+        return edgeView;
+    }
+    
+    public Map<String, Integer> getSources() {
+        // Returns an unmodifiable view of edges into this vertex.
+        return sourceView;
     }
     
     @Override
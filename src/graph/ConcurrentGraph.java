@@ -0,0 +1,417 @@
+package graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A thread-safe mutable weighted directed graph.
+ *
+ * <p>Each vertex owns two {@link ConcurrentHashMap}s of its out- and in-edges.
+ * Both maps of an edge hold the same {@link Cell}, an atomic int holding the
+ * weight, so changing the weight of an existing edge is a single
+ * compare-and-set seen by both endpoints at once and takes no lock. Creating
+ * or unlinking an edge takes one of a fixed set of locks chosen by the hash of
+ * the source vertex, so writers working on different sources rarely contend.
+ * Removing a vertex is rare and takes every lock. The same compare-and-set
+ * loop implements {@link #increment(Object, Object, int)} and
+ * {@link #merge(Object, Object, int, IntBinaryOperator)}, so counting
+ * threads never block each other on existing edges.
+ *
+ * <p>{@link #vertices()}, {@link #sources(Object)} and {@link #targets(Object)}
+ * return read-only live views that never lock. Like the views of
+ * {@link ConcurrentHashMap} they are weakly consistent: they never throw
+ * {@link java.util.ConcurrentModificationException}, and reflect some or all
+ * of the changes made while they are in use.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class ConcurrentGraph<L> implements CountingGraph<L> {
+
+    /**
+     * The weight of one edge, shared by the out-map of its source and the
+     * in-map of its target. A cell whose weight has dropped to 0 is dead: it is
+     * never revived, and whoever killed it unlinks it from both maps.
+     */
+    static final class Cell extends AtomicInteger {
+        private static final long serialVersionUID = 1L;
+
+        Cell(int weight) {
+            super(weight);
+        }
+    }
+
+    /**
+     * Adjacency of one vertex.
+     */
+    static final class Node<L> {
+        final ConcurrentHashMap<L, Cell> out = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<L, Cell> in = new ConcurrentHashMap<>();
+    }
+
+    private static final boolean ASSERTIONS = ConcurrentGraph.class.desiredAssertionStatus();
+
+    final ConcurrentHashMap<L, Node<L>> nodes = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes;
+
+    // Abstraction function:
+    //   AF = the graph with vertices nodes.keySet() and an edge from s to t with weight w
+    //     for every live cell nodes.get(s).out.get(t) with value w > 0
+    // Representation invariant:
+    //   when no write is in progress: for every s, t, nodes.get(s).out.get(t) is the same
+    //     object as nodes.get(t).in.get(s), and both maps only name vertices in nodes;
+    //   a cell only ever goes from positive to 0, and only a holder of the stripe lock of
+    //     the source creates, replaces or unlinks the cells of that source
+    // Safety from rep exposure:
+    //   nodes and cells are never handed out; vertices(), sources() and targets() return
+    //     read-only views that copy weights out of the cells
+    // Thread safety argument:
+    //   weight changes of existing edges are atomic compare-and-sets on the shared cell;
+    //   edge creation and unlinking for source s happen under stripe lock of s, so the
+    //     out- and in-maps of an edge agree once the lock is released; removing a vertex
+    //     holds every stripe lock, so no edge creation or unlinking overlaps it, and it
+    //     kills every cell it unlinks so that in-flight weight updates retry under a lock;
+    //   readers only use ConcurrentHashMap lookups and iteration
+
+    /**
+     * Make an empty graph with lock stripes sized for the available processors.
+     */
+    public ConcurrentGraph() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Make an empty graph.
+     *
+     * @param concurrency expected number of concurrently writing threads; rounded up
+     *        to a power of two lock stripes
+     */
+    public ConcurrentGraph(int concurrency) {
+        int count = Integer.highestOneBit(Math.max(1, concurrency) * 2 - 1);
+        stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    // Checks the rows a removal touched, in O(degree) rather than O(V + E), since it runs
+    // while every stripe is held; must be called with every stripe held.
+    private void checkRep(L removed, Node<L> node) {
+        if (!ASSERTIONS) {
+            return;
+        }
+        assert !nodes.containsKey(removed) : "removed vertex must be gone";
+        for (L target : node.out.keySet()) {
+            Node<L> neighbour = nodes.get(target);
+            assert neighbour == null || !neighbour.in.containsKey(removed) : "dangling in-edge to a removed vertex";
+        }
+        for (L source : node.in.keySet()) {
+            Node<L> neighbour = nodes.get(source);
+            assert neighbour == null || !neighbour.out.containsKey(removed) : "dangling out-edge to a removed vertex";
+        }
+    }
+
+    ReentrantLock stripe(Object source) {
+        int h = source.hashCode();
+        h ^= h >>> 16;
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        if (vertex == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        return nodes.putIfAbsent(vertex, new Node<>()) == null;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        // fast path: change the weight of a live edge without locking
+        Node<L> node = nodes.get(source);
+        Cell cell = node == null ? null : node.out.get(target);
+        while (cell != null) {
+            int previous = cell.get();
+            if (previous == 0) {
+                break;
+            }
+            if (cell.compareAndSet(previous, weight)) {
+                if (weight == 0) {
+                    unlink(source, target, cell);
+                }
+                return previous;
+            }
+        }
+        if (weight == 0) {
+            return 0;
+        }
+        // slow path: create the edge under the stripe lock of its source
+        ReentrantLock lock = stripe(source);
+        lock.lock();
+        try {
+            return insert(source, target, weight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int merge(L source, L target, int value, IntBinaryOperator op) {
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
+        }
+        // fast path: combine with the weight of a live edge without locking
+        Node<L> node = nodes.get(source);
+        Cell cell = node == null ? null : node.out.get(target);
+        int merged = cell == null ? -1 : combine(cell, value, op);
+        if (merged >= 0) {
+            if (merged == 0) {
+                unlink(source, target, cell);
+            }
+            return merged;
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        if (value == 0) {
+            return 0;
+        }
+        // slow path: create the edge under the stripe lock of its source
+        ReentrantLock lock = stripe(source);
+        lock.lock();
+        try {
+            Node<L> sourceNode = nodes.computeIfAbsent(source, k -> new Node<>());
+            Node<L> targetNode = nodes.computeIfAbsent(target, k -> new Node<>());
+            Cell existing = sourceNode.out.get(target);
+            merged = existing == null ? -1 : combine(existing, value, op);
+            if (merged == 0) {
+                unlink(source, target, existing);
+            }
+            if (merged >= 0) {
+                return merged;
+            }
+            Cell fresh = new Cell(value);
+            sourceNode.out.put(target, fresh);
+            targetNode.in.put(source, fresh);
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically replace the weight of a live cell by op(weight, value).
+     *
+     * @return the new weight, or -1 if the cell is dead
+     * @throws IllegalArgumentException if the new weight would be negative
+     */
+    private static int combine(Cell cell, int value, IntBinaryOperator op) {
+        while (true) {
+            int previous = cell.get();
+            if (previous == 0) {
+                return -1;
+            }
+            int next = op.applyAsInt(previous, value);
+            if (next < 0) {
+                throw new IllegalArgumentException("Weight must be non-negative");
+            }
+            if (cell.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Set the weight of an edge, creating its vertices if needed. Must be called
+     * with the stripe lock of source held.
+     *
+     * @return the previous weight of the edge, or 0 if there was none
+     */
+    int insert(L source, L target, int weight) {
+        Node<L> sourceNode = nodes.computeIfAbsent(source, k -> new Node<>());
+        Node<L> targetNode = nodes.computeIfAbsent(target, k -> new Node<>());
+        Cell existing = sourceNode.out.get(target);
+        while (existing != null) {
+            // another writer may have created the edge before we took the lock
+            int previous = existing.get();
+            if (previous == 0) {
+                break;
+            }
+            if (existing.compareAndSet(previous, weight)) {
+                return previous;
+            }
+        }
+        Cell fresh = new Cell(weight);
+        sourceNode.out.put(target, fresh);
+        targetNode.in.put(source, fresh);
+        return 0;
+    }
+
+    // Unlinks a dead cell from both of its maps, unless it has been replaced already.
+    void unlink(L source, L target, Cell cell) {
+        ReentrantLock lock = stripe(source);
+        lock.lock();
+        try {
+            Node<L> sourceNode = nodes.get(source);
+            if (sourceNode != null) {
+                sourceNode.out.remove(target, cell);
+            }
+            Node<L> targetNode = nodes.get(target);
+            if (targetNode != null) {
+                targetNode.in.remove(source, cell);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        if (vertex == null) {
+            return false;
+        }
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+        try {
+            Node<L> node = nodes.remove(vertex);
+            if (node == null) {
+                return false;
+            }
+            for (Map.Entry<L, Cell> edge : node.out.entrySet()) {
+                edge.getValue().set(0);
+                Node<L> target = nodes.get(edge.getKey());
+                if (target != null) {
+                    target.in.remove(vertex, edge.getValue());
+                }
+            }
+            for (Map.Entry<L, Cell> edge : node.in.entrySet()) {
+                edge.getValue().set(0);
+                Node<L> source = nodes.get(edge.getKey());
+                if (source != null) {
+                    source.out.remove(vertex, edge.getValue());
+                }
+            }
+            checkRep(vertex, node);
+            return true;
+        } finally {
+            for (ReentrantLock lock : stripes) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return Collections.unmodifiableSet(nodes.keySet());
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        Node<L> node = nodes.get(target);
+        return node == null ? Collections.emptyMap() : new Weights<>(node.in);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        Node<L> node = nodes.get(source);
+        return node == null ? Collections.emptyMap() : new Weights<>(node.out);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (L vertex : nodes.keySet()) {
+            sb.append(vertex).append(" -> ").append(targets(vertex)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Read-only, weakly consistent map view of a map of cells, hiding dead cells.
+     */
+    private static final class Weights<L> extends AbstractMap<L, Integer> {
+
+        private final ConcurrentHashMap<L, Cell> cells;
+
+        Weights(ConcurrentHashMap<L, Cell> cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            Cell cell = key == null ? null : cells.get(key);
+            int weight = cell == null ? 0 : cell.get();
+            return weight == 0 ? null : weight;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Map.Entry<L, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<L, Integer>>() {
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (Cell cell : cells.values()) {
+                        if (cell.get() > 0) {
+                            size++;
+                        }
+                    }
+                    return size;
+                }
+
+                @Override
+                public Iterator<Map.Entry<L, Integer>> iterator() {
+                    final Iterator<Map.Entry<L, Cell>> it = cells.entrySet().iterator();
+                    return new Iterator<Map.Entry<L, Integer>>() {
+                        private Map.Entry<L, Integer> next = advance();
+
+                        private Map.Entry<L, Integer> advance() {
+                            while (it.hasNext()) {
+                                Map.Entry<L, Cell> entry = it.next();
+                                int weight = entry.getValue().get();
+                                if (weight > 0) {
+                                    return new SimpleImmutableEntry<>(entry.getKey(), weight);
+                                }
+                            }
+                            return null;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        @Override
+                        public Map.Entry<L, Integer> next() {
+                            if (next == null) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<L, Integer> entry = next;
+                            next = advance();
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
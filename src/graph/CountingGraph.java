@@ -0,0 +1,48 @@
+package graph;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A {@link Graph} whose edge weights can be updated in place in a single step,
+ * for workloads such as counting adjacencies.
+ *
+ * <p>Compared with reading the weight through {@link #targets(Object)} and
+ * writing it back with {@link #set(Object, Object, int)}, these methods look
+ * the edge up once and never copy an adjacency map. Implementations that are
+ * safe for use by multiple threads perform each update atomically.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public interface CountingGraph<L> extends Graph<L> {
+
+    /**
+     * Add delta to the weight of an edge, creating the edge (and its vertices)
+     * if it does not exist, or removing it if its weight becomes zero.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @param delta amount to add to the weight; may be negative
+     * @return the new weight of the edge, or zero if there is no such edge
+     * @throws IllegalArgumentException if the new weight would be negative
+     */
+    public default int increment(L source, L target, int delta) {
+        return merge(source, target, delta, Integer::sum);
+    }
+
+    /**
+     * Combine the weight of an edge with a value. If the edge exists, its new
+     * weight is {@code op.applyAsInt(weight, value)}; otherwise it is value.
+     * The edge (and its vertices) are created if the new weight is positive,
+     * and the edge is removed if it is zero. op may be called more than once
+     * by thread-safe implementations and must not have side effects.
+     *
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @param value value to combine with the existing weight
+     * @param op function from the existing weight and value to the new weight
+     * @return the new weight of the edge, or zero if there is no such edge
+     * @throws IllegalArgumentException if the new weight would be negative
+     */
+    public int merge(L source, L target, int value, IntBinaryOperator op);
+
+}
@@ -0,0 +1,415 @@
+package graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * An immutable weighted directed graph in compressed sparse row (CSR) form.
+ *
+ * <p>Vertices are numbered 0..n-1 in the iteration order of the graph the
+ * snapshot was taken from. The edges leaving vertex i are stored at indices
+ * offsets[i]..offsets[i+1]-1 of the parallel arrays targets and weights,
+ * sorted by target id; a second, reverse CSR holds the same edges grouped by
+ * target to answer {@link #sources(Object)}. Lookups read flat int arrays
+ * instead of chasing hash entries and boxed weights.
+ *
+ * <p>The maps returned by {@link #sources(Object)} and {@link #targets(Object)}
+ * are read-only views over those arrays, and every mutator throws
+ * {@link UnsupportedOperationException}. Create one with
+ * {@link Graphs#freeze(Graph)} or {@link GraphBuilder#freeze()}.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public final class CsrGraph<L> implements Graph<L> {
+
+    private final Object[] labels;
+    private final Map<L, Integer> ids;
+    private final Set<L> vertices;
+
+    // forward CSR: edges grouped by source, sorted by target id
+    final int[] offsets;
+    final int[] targets;
+    final int[] weights;
+
+    // reverse CSR: the same edges grouped by target, sorted by source id
+    final int[] reverseOffsets;
+    final int[] sources;
+    final int[] reverseWeights;
+
+    // Abstraction function:
+    //   AF = the graph with vertices labels[0..n) and, for each source id s and each
+    //     offsets[s] <= e < offsets[s+1], an edge from labels[s] to labels[targets[e]]
+    //     with weight weights[e]
+    // Representation invariant:
+    //   n = labels.length, ids maps labels[i] to i, offsets and reverseOffsets have
+    //     n+1 non-decreasing entries starting at 0 and ending at the edge count,
+    //     each forward row is strictly increasing by target id, all weights are positive,
+    //     and the reverse CSR describes exactly the same set of edges
+    // Safety from rep exposure:
+    //   all fields are final and never handed out; vertices() and the row maps are
+    //     unmodifiable views, and labels are immutable
+
+    /**
+     * Copy the vertices and edges of a graph into a new CSR snapshot.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph to copy; not modified
+     * @return a snapshot of graph
+     */
+    static <L> CsrGraph<L> copyOf(Graph<L> graph) {
+        Set<L> source = graph.vertices();
+        int n = source.size();
+        Object[] labels = source.toArray();
+        Map<L, Integer> ids = indexOf(labels);
+
+        // each row packed as (target id << 32 | weight) and sorted by target
+        int[] offsets = new int[n + 1];
+        long[][] rows = new long[n][];
+        for (int i = 0; i < n; i++) {
+            @SuppressWarnings("unchecked")
+            Map<L, Integer> row = graph.targets((L) labels[i]);
+            long[] packed = new long[row.size()];
+            int k = 0;
+            for (Map.Entry<L, Integer> edge : row.entrySet()) {
+                packed[k++] = (long) ids.get(edge.getKey()) << 32 | edge.getValue();
+            }
+            Arrays.sort(packed);
+            rows[i] = packed;
+            offsets[i + 1] = offsets[i] + packed.length;
+        }
+        int m = offsets[n];
+        int[] targets = new int[m];
+        int[] weights = new int[m];
+        for (int i = 0; i < n; i++) {
+            int e = offsets[i];
+            for (long packed : rows[i]) {
+                targets[e] = (int) (packed >>> 32);
+                weights[e] = (int) packed;
+                e++;
+            }
+            rows[i] = null;
+        }
+        return new CsrGraph<>(labels, ids, offsets, targets, weights);
+    }
+
+    /**
+     * Make a snapshot from a forward CSR, deriving the reverse CSR.
+     *
+     * @param labels distinct vertex labels, indexed by id; owned by the new graph
+     * @param offsets n+1 row boundaries into targets and weights; owned by the new graph
+     * @param targets target ids, strictly increasing within each row; owned by the new graph
+     * @param weights positive edge weights; owned by the new graph
+     */
+    CsrGraph(Object[] labels, int[] offsets, int[] targets, int[] weights) {
+        this(labels, indexOf(labels), offsets, targets, weights);
+    }
+
+    private static <L> Map<L, Integer> indexOf(Object[] labels) {
+        Map<L, Integer> ids = new HashMap<>(Math.max(16, (int) (labels.length / 0.75f) + 1));
+        for (int i = 0; i < labels.length; i++) {
+            @SuppressWarnings("unchecked")
+            L label = (L) labels[i];
+            ids.put(label, i);
+        }
+        return ids;
+    }
+
+    private CsrGraph(Object[] labels, Map<L, Integer> ids, int[] offsets, int[] targets, int[] weights) {
+        int n = labels.length;
+        this.labels = labels;
+        this.ids = ids;
+        this.vertices = Collections.unmodifiableSet(ids.keySet());
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+
+        // reverse CSR by counting sort; scanning sources in id order keeps each row sorted
+        int m = offsets[n];
+        reverseOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            reverseOffsets[targets[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        sources = new int[m];
+        reverseWeights = new int[m];
+        int[] fill = Arrays.copyOf(reverseOffsets, n);
+        for (int s = 0; s < n; s++) {
+            for (int e = offsets[s]; e < offsets[s + 1]; e++) {
+                int slot = fill[targets[e]]++;
+                sources[slot] = s;
+                reverseWeights[slot] = weights[e];
+            }
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        int n = labels.length;
+        assert ids.size() == n : "vertex labels must be distinct";
+        assert offsets.length == n + 1 && reverseOffsets.length == n + 1 : "offset arrays must have n+1 entries";
+        assert offsets[0] == 0 && reverseOffsets[0] == 0 : "offsets must start at 0";
+        assert offsets[n] == targets.length && reverseOffsets[n] == sources.length : "offsets must end at the edge count";
+        assert targets.length == sources.length : "both CSRs must hold the same number of edges";
+        for (int s = 0; s < n; s++) {
+            for (int e = offsets[s]; e < offsets[s + 1]; e++) {
+                assert weights[e] > 0 : "edge weights must be positive";
+                assert e == offsets[s] || targets[e - 1] < targets[e] : "rows must be sorted by target";
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    L label(int id) {
+        return (L) labels[id];
+    }
+
+    /**
+     * @param vertex a label
+     * @return the id of the vertex in this snapshot, or -1 if it is not a vertex
+     */
+    int id(Object vertex) {
+        Integer id = ids.get(vertex);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the number of vertices in this snapshot
+     */
+    int vertexCount() {
+        return labels.length;
+    }
+
+    /**
+     * @return the number of edges in this snapshot
+     */
+    int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @return a spliterator over every edge of this snapshot, in source order,
+     *         that splits the edge arrays exactly in half
+     */
+    Spliterator<WeightedEdge<L>> edgeSpliterator() {
+        return new Edges(0, targets.length);
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; snapshots are immutable
+     */
+    @Override
+    public boolean add(L vertex) {
+        throw new UnsupportedOperationException("CSR snapshots are immutable");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; snapshots are immutable
+     */
+    @Override
+    public int set(L source, L target, int weight) {
+        throw new UnsupportedOperationException("CSR snapshots are immutable");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; snapshots are immutable
+     */
+    @Override
+    public boolean remove(L vertex) {
+        throw new UnsupportedOperationException("CSR snapshots are immutable");
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return vertices;
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        int t = id(target);
+        return t < 0 ? Collections.emptyMap()
+                : new Row(reverseOffsets[t], reverseOffsets[t + 1], sources, reverseWeights);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        int s = id(source);
+        return s < 0 ? Collections.emptyMap()
+                : new Row(offsets[s], offsets[s + 1], targets, weights);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < labels.length; s++) {
+            sb.append(labels[s]).append(" -> ").append(targets(label(s))).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Read-only map view of one CSR row: neighbours[from..to) are vertex ids in
+     * increasing order and rowWeights[from..to) the matching edge weights.
+     */
+    private final class Row extends AbstractMap<L, Integer> {
+
+        private final int from;
+        private final int to;
+        private final int[] neighbours;
+        private final int[] rowWeights;
+
+        Row(int from, int to, int[] neighbours, int[] rowWeights) {
+            this.from = from;
+            this.to = to;
+            this.neighbours = neighbours;
+            this.rowWeights = rowWeights;
+        }
+
+        // Returns the array index of the edge to the given label, or -1 if absent.
+        private int find(Object key) {
+            int id = id(key);
+            if (id < 0) {
+                return -1;
+            }
+            int e = Arrays.binarySearch(neighbours, from, to, id);
+            return e < 0 ? -1 : e;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return find(key) >= 0;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            int e = find(key);
+            return e < 0 ? null : rowWeights[e];
+        }
+
+        @Override
+        public Set<Map.Entry<L, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<L, Integer>>() {
+                @Override
+                public int size() {
+                    return to - from;
+                }
+
+                @Override
+                public Iterator<Map.Entry<L, Integer>> iterator() {
+                    return new Iterator<Map.Entry<L, Integer>>() {
+                        private int e = from;
+
+                        @Override
+                        public boolean hasNext() {
+                            return e < to;
+                        }
+
+                        @Override
+                        public Map.Entry<L, Integer> next() {
+                            if (e >= to) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<L, Integer> entry =
+                                    new SimpleImmutableEntry<>(label(neighbours[e]), rowWeights[e]);
+                            e++;
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * Spliterator over the forward CSR edges from..to-1. A split halves the
+     * index range, so both halves know their exact size even when a row is
+     * cut in two.
+     */
+    private final class Edges implements Spliterator<WeightedEdge<L>> {
+
+        private int edge;
+        private final int to;
+        private int source;
+
+        Edges(int from, int to) {
+            this.edge = from;
+            this.to = to;
+            this.source = sourceOf(from);
+        }
+
+        // largest s with offsets[s] <= e, which is the source of edge e if e < edgeCount()
+        private int sourceOf(int e) {
+            int lo = 0;
+            int hi = labels.length;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (offsets[mid] <= e) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        private WeightedEdge<L> edge(int e) {
+            while (offsets[source + 1] <= e) {
+                source++;
+            }
+            return new WeightedEdge<>(label(source), label(targets[e]), weights[e]);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super WeightedEdge<L>> action) {
+            if (edge >= to) {
+                return false;
+            }
+            action.accept(edge(edge++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super WeightedEdge<L>> action) {
+            while (edge < to) {
+                action.accept(edge(edge++));
+            }
+        }
+
+        @Override
+        public Spliterator<WeightedEdge<L>> trySplit() {
+            int mid = (edge + to) >>> 1;
+            if (mid <= edge) {
+                return null;
+            }
+            Edges prefix = new Edges(edge, mid);
+            edge = mid;
+            source = sourceOf(mid);
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - edge;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+}
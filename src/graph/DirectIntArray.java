@@ -0,0 +1,88 @@
+package graph;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable array of ints stored outside the Java heap in fixed-size pages of
+ * direct memory. Growing allocates new pages and never copies existing ones,
+ * and the total length may exceed the 2 GB limit of a single buffer.
+ * Newly allocated elements are zero.
+ */
+final class DirectIntArray {
+
+    private static final int PAGE_SHIFT = 14;
+    private static final int PAGE_INTS = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_INTS - 1;
+
+    private IntBuffer[] pages = new IntBuffer[0];
+    private int pageCount = 0;
+
+    // Abstraction function:
+    //   AF = the int array of length pageCount * PAGE_INTS whose element i is
+    //     pages[i >>> PAGE_SHIFT].get(i & PAGE_MASK)
+    // Representation invariant:
+    //   pages[0..pageCount) are direct buffers of PAGE_INTS ints; pages is null once released
+    // Safety from rep exposure:
+    //   pages are never handed out
+
+    /**
+     * @return number of ints that can be addressed without growing
+     */
+    long capacity() {
+        return (long) pageCount << PAGE_SHIFT;
+    }
+
+    /**
+     * @return number of bytes of direct memory held by this array
+     */
+    long bytes() {
+        return capacity() * Integer.BYTES;
+    }
+
+    /**
+     * Grow this array, if needed, so that indices 0..length-1 are addressable.
+     *
+     * @param length required length
+     */
+    void ensureCapacity(long length) {
+        long needed = (length + PAGE_MASK) >>> PAGE_SHIFT;
+        if (needed > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Array too large: " + length);
+        }
+        if (needed > pages.length) {
+            pages = Arrays.copyOf(pages, (int) Math.max(needed, pages.length * 2L));
+        }
+        while (pageCount < needed) {
+            pages[pageCount++] = ByteBuffer.allocateDirect(PAGE_INTS * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+    }
+
+    /**
+     * @param index 0 &lt;= index &lt; capacity()
+     * @return the element at index
+     */
+    int get(long index) {
+        return pages[(int) (index >>> PAGE_SHIFT)].get((int) index & PAGE_MASK);
+    }
+
+    /**
+     * @param index 0 &lt;= index &lt; capacity()
+     * @param value new value of the element at index
+     */
+    void set(long index, int value) {
+        pages[(int) (index >>> PAGE_SHIFT)].put((int) index & PAGE_MASK, value);
+    }
+
+    /**
+     * Drop every page. The memory is returned to the operating system when the
+     * garbage collector reclaims the buffers; the array must not be used again.
+     */
+    void release() {
+        pages = null;
+        pageCount = 0;
+    }
+}
@@ -0,0 +1,535 @@
+package graph;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A thread-safe graph of String labels whose mutations survive a crash.
+ *
+ * <p>Every successful {@link #add(String)}, {@link #set(String, String, int)}
+ * and {@link #remove(String)} is applied in memory and appended to a
+ * write-ahead log, and returns only once the log record is on disk. Writers
+ * that arrive while a sync is in progress queue behind it, and the next of
+ * them writes and syncs every record queued so far at once (group commit), so
+ * under concurrent writers one {@link FileChannel#force(boolean) fsync}
+ * covers many mutations.
+ *
+ * <p>Once the log has grown past a threshold, the writer that crossed it takes
+ * a checkpoint: it starts a new log, saves a snapshot of the graph with
+ * {@link GraphIO}, and deletes the old log and snapshot. {@link #open(Path)}
+ * rebuilds the graph from the latest complete checkpoint and replays the logs
+ * written after it; a record torn by a crash at the end of the last log is
+ * discarded.
+ *
+ * <h3>Directory layout</h3>
+ * <pre>
+ *   checkpoint-G.bin   graph after every record of the logs before wal-G.log, in GraphIO format
+ *   wal-G.log          log records, each { int length, int crc32, byte[length] payload },
+ *                      little-endian; a payload is a byte (0 add, 1 set, 2 remove) followed by
+ *                      the vertex, and for set the target and an int weight, with each label
+ *                      written as an int length and its UTF-8 bytes
+ * </pre>
+ * Reads return unmodifiable copies made under the graph's lock.
+ */
+public final class DurableGraph implements Graph<String>, AutoCloseable {
+
+    /** Log size, in bytes, past which a checkpoint is taken by default. */
+    public static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+    private static final byte ADD = 0;
+    private static final byte SET = 1;
+    private static final byte REMOVE = 2;
+
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final long checkpointBytes;
+
+    // guards graph, pending, appended and the log size; held briefly, except while a
+    // checkpoint syncs and rolls the log
+    private final Object lock = new Object();
+    private final Graph<String> graph;
+    private ByteBuffer pending = newBuffer(1 << 16);
+    private long appended = 0;
+    private long logBytes;
+
+    // held by the one thread writing and syncing the log; taken before lock, never after
+    private final ReentrantLock sync = new ReentrantLock();
+    private FileChannel log;
+    private long generation;
+    private ByteBuffer spare = newBuffer(1 << 16);
+    private volatile long durable = 0;
+    private long syncs = 0;
+    private IOException failure = null;
+    private boolean closed = false;
+
+    private final AtomicBoolean checkpointing = new AtomicBoolean(false);
+
+    // Abstraction function:
+    //   AF = graph, whose first `durable` mutations since opening are on disk in
+    //     checkpoint-generation.bin (if any) and the logs wal-G.log with G >= that generation
+    // Representation invariant:
+    //   durable <= appended; pending holds records appended - durable..appended in order, or
+    //     records being written by the holder of sync; log is the channel of wal-generation.log
+    // Safety from rep exposure:
+    //   graph and buffers are never handed out; reads return copies
+
+    private DurableGraph(Path directory, long checkpointBytes, Graph<String> graph,
+            long generation, FileChannel log) throws IOException {
+        this.directory = directory;
+        this.checkpointBytes = checkpointBytes;
+        this.graph = graph;
+        this.generation = generation;
+        this.log = log;
+        this.logBytes = log.size();
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Open a durable graph stored in a directory, recovering its state, with
+     * the default checkpoint threshold.
+     *
+     * @param directory directory of the graph's files; created if missing
+     * @return the recovered graph
+     * @throws IOException if the files cannot be read or a log is corrupt
+     *         before its end
+     */
+    public static DurableGraph open(Path directory) throws IOException {
+        return open(directory, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * Open a durable graph stored in a directory, recovering its state.
+     *
+     * @param directory directory of the graph's files; created if missing
+     * @param checkpointBytes log size, in bytes, past which a checkpoint is taken; positive
+     * @return the recovered graph
+     * @throws IOException if the files cannot be read or a log is corrupt
+     *         before its end
+     */
+    public static DurableGraph open(Path directory, long checkpointBytes) throws IOException {
+        if (checkpointBytes <= 0) {
+            throw new IllegalArgumentException("Checkpoint threshold must be positive");
+        }
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> checkpoints = new TreeMap<>();
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file); // a checkpoint that never completed
+                } else if (name.startsWith("checkpoint-") && name.endsWith(".bin")) {
+                    checkpoints.put(generationOf(name, "checkpoint-", ".bin"), file);
+                } else if (name.startsWith("wal-") && name.endsWith(".log")) {
+                    logs.put(generationOf(name, "wal-", ".log"), file);
+                }
+            }
+        }
+
+        long start = checkpoints.isEmpty() ? 0 : checkpoints.lastKey();
+        Graph<String> graph = checkpoints.isEmpty() ? Graph.empty() : GraphIO.load(checkpoints.lastEntry().getValue());
+        for (Path stale : checkpoints.headMap(start).values()) {
+            Files.delete(stale);
+        }
+        for (Path stale : logs.headMap(start).values()) {
+            Files.delete(stale);
+        }
+        Map<Long, Path> replay = logs.tailMap(start);
+        long generation = start;
+        for (Map.Entry<Long, Path> entry : replay.entrySet()) {
+            generation = entry.getKey();
+            boolean last = generation == logs.lastKey();
+            replay(entry.getValue(), graph, last);
+        }
+        FileChannel log = FileChannel.open(directory.resolve(logName(generation)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        log.position(log.size());
+        syncDirectory(directory);
+        return new DurableGraph(directory, checkpointBytes, graph, generation, log);
+    }
+
+    private static long generationOf(String name, String prefix, String suffix) throws IOException {
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected file " + name, e);
+        }
+    }
+
+    private static String logName(long generation) {
+        return "wal-" + generation + ".log";
+    }
+
+    private static String checkpointName(long generation) {
+        return "checkpoint-" + generation + ".bin";
+    }
+
+    // Apply the records of a log to graph. A bad record ends the last log, which is truncated
+    // there; in any other log it means the log is corrupt.
+    private static void replay(Path file, Graph<String> graph, boolean last) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = newBuffer(RECORD_HEADER_BYTES);
+            ByteBuffer payload = newBuffer(1 << 12);
+            while (position < size) {
+                header.clear();
+                boolean valid = readFully(channel, header, position);
+                int length = valid ? header.getInt(0) : -1;
+                valid = length > 0 && length <= size - position - RECORD_HEADER_BYTES;
+                if (valid) {
+                    if (payload.capacity() < length) {
+                        payload = newBuffer(Math.max(length, 2 * payload.capacity()));
+                    }
+                    payload.clear().limit(length);
+                    readFully(channel, payload, position + RECORD_HEADER_BYTES);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload.array(), 0, length);
+                    valid = (int) crc.getValue() == header.getInt(Integer.BYTES);
+                }
+                if (!valid) {
+                    if (!last) {
+                        throw new IOException("Corrupt record at offset " + position + " of " + file);
+                    }
+                    channel.truncate(position);
+                    channel.force(true);
+                    return;
+                }
+                payload.flip();
+                apply(graph, payload);
+                position += RECORD_HEADER_BYTES + length;
+            }
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void apply(Graph<String> graph, ByteBuffer payload) throws IOException {
+        byte op = payload.get();
+        String vertex = label(payload);
+        switch (op) {
+        case ADD:
+            graph.add(vertex);
+            break;
+        case SET:
+            graph.set(vertex, label(payload), payload.getInt());
+            break;
+        case REMOVE:
+            graph.remove(vertex);
+            break;
+        default:
+            throw new IOException("Unknown log record type " + op);
+        }
+    }
+
+    private static String label(ByteBuffer payload) {
+        int length = payload.getInt();
+        String label = new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return label;
+    }
+
+    // Best effort: makes renames and new files in the directory durable where the platform allows.
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on this platform
+        }
+    }
+
+    // Mutators
+
+    @Override
+    public boolean add(String vertex) {
+        long record;
+        boolean added;
+        synchronized (lock) {
+            checkOpen();
+            added = graph.add(vertex);
+            record = added ? append(ADD, vertex, null, 0) : 0;
+        }
+        awaitDurable(record);
+        return added;
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        long record;
+        int previous;
+        synchronized (lock) {
+            checkOpen();
+            boolean existed = graph.vertices().contains(source) && graph.vertices().contains(target);
+            previous = graph.set(source, target, weight);
+            record = previous != weight || (weight > 0 && !existed) ? append(SET, source, target, weight) : 0;
+        }
+        awaitDurable(record);
+        return previous;
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        long record;
+        boolean removed;
+        synchronized (lock) {
+            checkOpen();
+            removed = graph.remove(vertex);
+            record = removed ? append(REMOVE, vertex, null, 0) : 0;
+        }
+        awaitDurable(record);
+        return removed;
+    }
+
+    // Requires lock.
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Graph is closed");
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Log failed; mutations may not be durable", failure);
+        }
+    }
+
+    // Encodes a record into pending; requires lock. Returns its sequence number.
+    private long append(byte op, String vertex, String target, int weight) {
+        byte[] v = vertex.getBytes(StandardCharsets.UTF_8);
+        byte[] t = target == null ? null : target.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + Integer.BYTES + v.length + (t == null ? 0 : 2 * Integer.BYTES + t.length);
+        if (pending.remaining() < RECORD_HEADER_BYTES + length) {
+            ByteBuffer grown = newBuffer(Math.max(2 * pending.capacity(), pending.position() + RECORD_HEADER_BYTES + length));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        int start = pending.position() + RECORD_HEADER_BYTES;
+        pending.putInt(length).putInt(0).put(op).putInt(v.length).put(v);
+        if (t != null) {
+            pending.putInt(t.length).put(t).putInt(weight);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(pending.array(), start, length);
+        pending.putInt(start - Integer.BYTES, (int) crc.getValue());
+        logBytes += RECORD_HEADER_BYTES + length;
+        return ++appended;
+    }
+
+    /**
+     * Block until record is on disk, syncing it and everything appended before
+     * it unless another writer already has; then take a checkpoint if the log
+     * has grown past the threshold and no one else is taking one.
+     */
+    private void awaitDurable(long record) {
+        if (record > durable) {
+            sync.lock();
+            try {
+                if (record > durable) {
+                    flush(); // leader: syncs the records of every writer queued behind us too
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                sync.unlock();
+            }
+        }
+        boolean full;
+        synchronized (lock) {
+            full = logBytes >= checkpointBytes && !closed && failure == null;
+        }
+        if (full && checkpointing.compareAndSet(false, true)) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                checkpointing.set(false);
+            }
+        }
+    }
+
+    // Writes and syncs every record appended so far; requires sync.
+    private void flush() throws IOException {
+        ByteBuffer batch;
+        long upTo;
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+            batch = pending;
+            upTo = appended;
+            spare.clear();
+            pending = spare;
+            spare = batch;
+        }
+        batch.flip();
+        try {
+            while (batch.hasRemaining()) {
+                log.write(batch);
+            }
+            log.force(false);
+        } catch (IOException e) {
+            synchronized (lock) {
+                failure = e;
+            }
+            throw e;
+        }
+        syncs++;
+        durable = upTo;
+    }
+
+    /**
+     * Take a checkpoint now: start a new log, save a snapshot of the graph
+     * alongside it, and delete the previous snapshot and logs. Mutations may
+     * continue meanwhile; they go to the new log.
+     *
+     * @throws IOException if the snapshot cannot be written; the graph stays
+     *         usable and recoverable from the previous checkpoint and the logs
+     */
+    public void checkpoint() throws IOException {
+        CsrGraph<String> snapshot;
+        long next;
+        sync.lock();
+        try {
+            synchronized (lock) {
+                // writers wait for this sync, so that every record before the snapshot is in
+                // the old log and every record after it in the new one
+                checkOpen();
+                flush();
+                snapshot = Graphs.freeze(graph);
+                next = generation + 1;
+                FileChannel old = log;
+                log = FileChannel.open(directory.resolve(logName(next)),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                generation = next;
+                logBytes = 0;
+                old.close();
+            }
+            syncDirectory(directory);
+        } finally {
+            sync.unlock();
+        }
+
+        Path temporary = directory.resolve(checkpointName(next) + ".tmp");
+        GraphIO.save(snapshot, temporary);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(checkpointName(next)), StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(directory);
+        // everything older is covered by the new checkpoint
+        for (long g = next - 1; g >= 0; g--) {
+            boolean deleted = Files.deleteIfExists(directory.resolve(checkpointName(g)));
+            deleted |= Files.deleteIfExists(directory.resolve(logName(g)));
+            if (!deleted) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sync any records not yet on disk and close the log. Further mutations
+     * throw {@link IllegalStateException}; reads keep working.
+     *
+     * @throws IOException if the last records cannot be synced
+     */
+    @Override
+    public void close() throws IOException {
+        sync.lock();
+        try {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            try {
+                if (failure == null) {
+                    flush();
+                }
+            } finally {
+                log.close();
+            }
+        } finally {
+            sync.unlock();
+        }
+    }
+
+    /**
+     * @return number of fsyncs of the log so far, for observing group commit
+     */
+    long syncs() {
+        sync.lock();
+        try {
+            return syncs;
+        } finally {
+            sync.unlock();
+        }
+    }
+
+    /**
+     * @return generation of the current log
+     */
+    long generation() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    // Observers
+
+    @Override
+    public Set<String> vertices() {
+        synchronized (lock) {
+            return Collections.unmodifiableSet(new HashSet<>(graph.vertices()));
+        }
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        synchronized (lock) {
+            return Collections.unmodifiableMap(new HashMap<>(graph.sources(target)));
+        }
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        synchronized (lock) {
+            return Collections.unmodifiableMap(new HashMap<>(graph.targets(source)));
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return graph.toString();
+        }
+    }
+}
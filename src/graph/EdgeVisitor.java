@@ -0,0 +1,19 @@
+package graph;
+
+/**
+ * Callback receiving the edges of a vertex one at a time, with the weight as
+ * a primitive int.
+ *
+ * @param <L> type of vertex labels, must be immutable
+ * @see TraversableGraph
+ */
+public interface EdgeVisitor<L> {
+
+    /**
+     * Visit one edge.
+     *
+     * @param other label of the vertex at the other end of the edge
+     * @param weight positive weight of the edge
+     */
+    void visit(L other, int weight);
+}
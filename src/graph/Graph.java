@@ -22,11 +22,14 @@ public interface Graph<L> {
     /**
      * Create an empty graph.
      * 
+     * <p>The graph starts out in a compact array layout suited to small graphs
+     * and switches to hashed adjacency as it grows; see {@link AdaptiveGraph}.
+     * 
      * @param <L> type of vertex labels in the graph, must be immutable
      * @return a new empty weighted directed graph
      */
     public static <L> Graph<L> empty() {
-        throw new RuntimeException("not implemented");
+        return new AdaptiveGraph<>();
     }
     
     /**
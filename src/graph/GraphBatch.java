@@ -0,0 +1,87 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A list of mutations to be applied to a {@link BatchGraph} in one atomic
+ * step. Typical use:
+ *
+ * <pre>
+ * graph.batch().set("a", "b", 1).set("b", "c", 2).remove("d").commit();
+ * </pre>
+ *
+ * @param <L> type of vertex labels, must be immutable
+ */
+public final class GraphBatch<L> {
+
+    private final BatchGraph<L> graph;
+    private final List<Mutation<L>> mutations = new ArrayList<>();
+
+    // Abstraction function:
+    //   AF = the mutations, in order, still to be applied to graph
+    // Representation invariant:
+    //   graph != null, mutations has no null elements
+    // Safety from rep exposure:
+    //   mutations() returns an unmodifiable view; mutations are immutable
+
+    /**
+     * Make an empty batch.
+     *
+     * @param graph graph that {@link #commit()} applies the batch to
+     */
+    public GraphBatch(BatchGraph<L> graph) {
+        if (graph == null) {
+            throw new IllegalArgumentException("Graph cannot be null");
+        }
+        this.graph = graph;
+    }
+
+    /**
+     * @param vertex label of the vertex to add, not null
+     * @return this batch, with {@code add(vertex)} appended
+     */
+    public GraphBatch<L> add(L vertex) {
+        mutations.add(Mutation.add(vertex));
+        return this;
+    }
+
+    /**
+     * @param source label of the source vertex, not null
+     * @param target label of the target vertex, not null
+     * @param weight nonnegative weight of the edge
+     * @return this batch, with {@code set(source, target, weight)} appended
+     */
+    public GraphBatch<L> set(L source, L target, int weight) {
+        mutations.add(Mutation.set(source, target, weight));
+        return this;
+    }
+
+    /**
+     * @param vertex label of the vertex to remove, not null
+     * @return this batch, with {@code remove(vertex)} appended
+     */
+    public GraphBatch<L> remove(L vertex) {
+        mutations.add(Mutation.remove(vertex));
+        return this;
+    }
+
+    /**
+     * @return read-only view of the mutations in this batch, in order
+     */
+    public List<Mutation<L>> mutations() {
+        return Collections.unmodifiableList(mutations);
+    }
+
+    /**
+     * Apply the batch with {@link BatchGraph#applyAll(List)} and empty it.
+     * If the graph rejects the batch, nothing is applied and the batch is kept.
+     *
+     * @throws IllegalArgumentException if a mutation is rejected by the graph
+     */
+    public void commit() {
+        graph.applyAll(mutations);
+        mutations.clear();
+    }
+}
@@ -0,0 +1,285 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Builds a graph from a large number of edges in bulk.
+ *
+ * <p>Calling {@link Graph#set(Object, Object, int)} once per edge pays for a
+ * hash lookup of both endpoints, incremental map growth and an invariant
+ * check on every call. A builder instead appends each edge to flat int arrays
+ * (sized up front from the expected counts), then on {@link #build()} or
+ * {@link #freeze()} sorts them by source with a counting sort, sorts each row
+ * by target, merges duplicate edges, and hands the result to the graph in
+ * one pass with every map presized.
+ *
+ * <p>Edges are interpreted as a sequence of {@code set} calls when duplicates
+ * are {@link Duplicates#REPLACE replaced} (the default), or of
+ * {@link CountingGraph#increment(Object, Object, int) increment} calls when
+ * they are {@link Duplicates#SUM summed}. Either way an edge with weight 0
+ * never adds vertices, and edges whose final weight is 0 are left out. A
+ * builder can keep growing after it has built a graph.
+ *
+ * @param <L> type of vertex labels, must be immutable
+ */
+public final class GraphBuilder<L> {
+
+    /**
+     * How to combine several edges with the same source and target.
+     */
+    public enum Duplicates {
+        /** The last edge added wins, as with repeated {@link Graph#set(Object, Object, int)}. */
+        REPLACE,
+        /** The weights of all the edges are added up. */
+        SUM
+    }
+
+    private final Map<L, Integer> ids;
+    private Object[] labels;
+    private int vertexCount = 0;
+    private int[] edgeSources;
+    private int[] edgeTargets;
+    private int[] edgeWeights;
+    private int edgeCount = 0;
+    private Duplicates duplicates = Duplicates.REPLACE;
+
+    // Abstraction function:
+    //   AF = the graph obtained from an empty graph by adding labels[0..vertexCount) and then
+    //     applying, in order and according to duplicates, each edge i < edgeCount from
+    //     labels[edgeSources[i]] to labels[edgeTargets[i]] with weight edgeWeights[i]
+    // Representation invariant:
+    //   ids maps labels[i] to i for i < vertexCount and has no other keys; edge endpoints
+    //     are in [0, vertexCount); weights are nonnegative, and positive if duplicates == SUM
+    // Safety from rep exposure:
+    //   arrays are never handed out; built graphs get their own arrays
+
+    /**
+     * Make a builder for a graph of unknown size.
+     */
+    public GraphBuilder() {
+        this(16, 16);
+    }
+
+    /**
+     * Make a builder with room for the expected number of vertices and edges,
+     * so that adding that many causes no resizing.
+     *
+     * @param expectedVertices expected number of vertices, nonnegative
+     * @param expectedEdges expected number of edges (including duplicates), nonnegative
+     */
+    public GraphBuilder(int expectedVertices, int expectedEdges) {
+        if (expectedVertices < 0 || expectedEdges < 0) {
+            throw new IllegalArgumentException("Expected sizes must be non-negative");
+        }
+        ids = new HashMap<>(Math.max(16, (int) (expectedVertices / 0.75f) + 1));
+        labels = new Object[Math.max(4, expectedVertices)];
+        edgeSources = new int[Math.max(4, expectedEdges)];
+        edgeTargets = new int[edgeSources.length];
+        edgeWeights = new int[edgeSources.length];
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert ids.size() == vertexCount : "every vertex must have exactly one id";
+        assert edgeSources.length == edgeTargets.length && edgeTargets.length == edgeWeights.length
+                : "edge arrays must be parallel";
+    }
+
+    /**
+     * Choose how edges with the same source and target are combined; applies to
+     * every edge, including ones already added.
+     *
+     * @param policy duplicate policy, not null
+     * @return this builder
+     * @throws IllegalStateException if switching to SUM after adding an edge of weight 0
+     */
+    public GraphBuilder<L> duplicates(Duplicates policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Policy cannot be null");
+        }
+        if (policy == Duplicates.SUM && duplicates != Duplicates.SUM) {
+            for (int i = 0; i < edgeCount; i++) {
+                if (edgeWeights[i] == 0) {
+                    throw new IllegalStateException("Edges of weight 0 were added under REPLACE");
+                }
+            }
+        }
+        duplicates = policy;
+        return this;
+    }
+
+    private int intern(L label) {
+        Integer id = ids.get(label);
+        if (id != null) {
+            return id;
+        }
+        if (vertexCount == labels.length) {
+            labels = Arrays.copyOf(labels, labels.length + (labels.length >> 1));
+        }
+        labels[vertexCount] = label;
+        ids.put(label, vertexCount);
+        return vertexCount++;
+    }
+
+    /**
+     * Add a vertex, as by {@link Graph#add(Object)}.
+     *
+     * @param vertex label of the vertex, not null
+     * @return this builder
+     */
+    public GraphBuilder<L> addVertex(L vertex) {
+        if (vertex == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        intern(vertex);
+        return this;
+    }
+
+    /**
+     * Add an edge, creating its vertices if weight is positive.
+     *
+     * @param source label of the source vertex, not null
+     * @param target label of the target vertex, not null
+     * @param weight nonnegative weight of the edge
+     * @return this builder
+     */
+    public GraphBuilder<L> addEdge(L source, L target, int weight) {
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        if (weight == 0 && (duplicates == Duplicates.SUM || !ids.containsKey(source) || !ids.containsKey(target))) {
+            // adds nothing to a sum, and cannot remove an edge between unknown vertices
+            return this;
+        }
+        int s = intern(source);
+        int t = intern(target);
+        if (edgeCount == edgeSources.length) {
+            int capacity = edgeCount + (edgeCount >> 1);
+            edgeSources = Arrays.copyOf(edgeSources, capacity);
+            edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+            edgeWeights = Arrays.copyOf(edgeWeights, capacity);
+        }
+        edgeSources[edgeCount] = s;
+        edgeTargets[edgeCount] = t;
+        edgeWeights[edgeCount] = weight;
+        edgeCount++;
+        return this;
+    }
+
+    /**
+     * Add an edge, as by {@link #addEdge(Object, Object, int)}.
+     *
+     * @param edge edge to add, not null
+     * @return this builder
+     */
+    public GraphBuilder<L> addEdge(WeightedEdge<? extends L> edge) {
+        return addEdge(edge.getSource(), edge.getTarget(), edge.getWeight());
+    }
+
+    /**
+     * Add edges in iteration order, as by {@link #addEdge(Object, Object, int)}.
+     *
+     * @param edges edges to add
+     * @return this builder
+     */
+    public GraphBuilder<L> addEdges(Iterable<? extends WeightedEdge<? extends L>> edges) {
+        for (WeightedEdge<? extends L> edge : edges) {
+            addEdge(edge);
+        }
+        return this;
+    }
+
+    /**
+     * Add edges in encounter order, as by {@link #addEdge(Object, Object, int)}.
+     * The stream is consumed on the calling thread.
+     *
+     * @param edges edges to add
+     * @return this builder
+     */
+    public GraphBuilder<L> addEdges(Stream<? extends WeightedEdge<? extends L>> edges) {
+        edges.sequential().forEachOrdered(this::addEdge);
+        return this;
+    }
+
+    /**
+     * Build a mutable graph holding the vertices and merged edges added so far.
+     *
+     * @return a new {@link AdaptiveGraph}
+     * @throws IllegalArgumentException if summed weights overflow an int
+     */
+    public Graph<L> build() {
+        int[][] csr = merge();
+        return new AdaptiveGraph<>(Arrays.copyOf(labels, vertexCount), csr[0], csr[1], csr[2]);
+    }
+
+    /**
+     * Build an immutable compressed-sparse-row graph holding the vertices and
+     * merged edges added so far, without going through a mutable graph.
+     *
+     * @return a new {@link CsrGraph}
+     * @throws IllegalArgumentException if summed weights overflow an int
+     */
+    public CsrGraph<L> freeze() {
+        int[][] csr = merge();
+        return new CsrGraph<>(Arrays.copyOf(labels, vertexCount), csr[0], csr[1], csr[2]);
+    }
+
+    /**
+     * Sort the edges into rows by source and target and merge duplicates.
+     *
+     * @return {offsets, targets, weights} of the forward CSR, rows sorted by target
+     *         and without edges of weight 0
+     */
+    private int[][] merge() {
+        int n = vertexCount;
+        int m = edgeCount;
+
+        // counting sort of edge indices by source; stable, so insertion order survives
+        int[] start = new int[n + 1];
+        for (int i = 0; i < m; i++) {
+            start[edgeSources[i] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] fill = Arrays.copyOf(start, n);
+        // (target << 32 | edge index): sorting a row groups duplicates in insertion order
+        long[] keys = new long[m];
+        for (int i = 0; i < m; i++) {
+            keys[fill[edgeSources[i]]++] = (long) edgeTargets[i] << 32 | i;
+        }
+
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[m];
+        int[] weights = new int[m];
+        int out = 0;
+        for (int v = 0; v < n; v++) {
+            Arrays.sort(keys, start[v], start[v + 1]);
+            int k = start[v];
+            while (k < start[v + 1]) {
+                int target = (int) (keys[k] >>> 32);
+                long weight = 0;
+                for (; k < start[v + 1] && (int) (keys[k] >>> 32) == target; k++) {
+                    int w = edgeWeights[(int) keys[k]];
+                    weight = duplicates == Duplicates.SUM ? weight + w : w;
+                }
+                if (weight > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Summed weight of an edge overflows an int");
+                }
+                if (weight > 0) {
+                    targets[out] = target;
+                    weights[out] = (int) weight;
+                    out++;
+                }
+            }
+            offsets[v + 1] = out;
+        }
+        return new int[][] {offsets, Arrays.copyOf(targets, out), Arrays.copyOf(weights, out)};
+    }
+}
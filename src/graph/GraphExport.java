@@ -0,0 +1,445 @@
+package graph;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes graphs of String labels as Graphviz DOT, GraphML or TSV edge lists.
+ *
+ * <p>Output is streamed: records are collected in a buffer of about
+ * {@value #BUFFER_CHARS} characters, which is handed to the {@link Appendable}
+ * or encoded as UTF-8 into the {@link WritableByteChannel} whenever it fills,
+ * so memory use does not grow with the graph. Edges are read with
+ * {@link TraversableGraph#forEachTarget} when the graph offers it.
+ *
+ * <p>The formats:
+ * <ul>
+ * <li>{@link Format#TSV}: one line "source TAB target TAB weight" per edge and
+ *     a line with just the label for each vertex without outgoing edges, escaped
+ *     as {@link GraphImport} reads it: backslash, tab, newline and carriage
+ *     return as \\, \t, \n and \r, and a leading '#' as \#. A vertex labelled
+ *     with the empty string and without outgoing edges is written as an empty
+ *     line, which readers skip.
+ * <li>{@link Format#DOT}: a {@code digraph} with an edge statement with a
+ *     {@code weight} attribute per edge and a node statement for each vertex
+ *     without outgoing edges; every id is quoted, with \" and \\ for quotes and
+ *     backslashes.
+ * <li>{@link Format#GRAPHML}: a directed graph whose node ids are the labels,
+ *     with every node declared and an int "weight" data element per edge.
+ *     Labels containing control characters other than tab, newline and carriage
+ *     return cannot be written as XML and are rejected.
+ * </ul>
+ * The graph must not be modified while it is being written.
+ */
+public final class GraphExport {
+
+    /**
+     * Formats graphs can be written in.
+     */
+    public enum Format {
+        /** tab-separated edge list */
+        TSV("tsv"),
+        /** Graphviz DOT */
+        DOT("dot"),
+        /** GraphML */
+        GRAPHML("graphml");
+
+        private final String extension;
+
+        private Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @return the usual file name extension of the format, without a dot
+         */
+        public String extension() {
+            return extension;
+        }
+    }
+
+    static final int BUFFER_CHARS = 1 << 16;
+
+    private GraphExport() {
+        // not instantiable
+    }
+
+    /**
+     * Write a graph to an Appendable, such as a {@link java.io.Writer}.
+     *
+     * @param graph graph to write; not modified
+     * @param format format to write it in
+     * @param out where to append the text; it is not flushed or closed
+     * @throws IOException if out throws it
+     * @throws IllegalArgumentException if a label cannot be written in the format
+     */
+    public static void write(Graph<String> graph, Format format, Appendable out) throws IOException {
+        write(graph, format, new AppendableOutput(out));
+    }
+
+    /**
+     * Write a graph to a channel as UTF-8 text.
+     *
+     * @param graph graph to write; not modified
+     * @param format format to write it in
+     * @param out channel to write the bytes to; it is not closed
+     * @throws IOException if the channel cannot be written
+     * @throws IllegalArgumentException if a label cannot be written in the format
+     */
+    public static void write(Graph<String> graph, Format format, WritableByteChannel out) throws IOException {
+        write(graph, format, new ChannelOutput(out));
+    }
+
+    /**
+     * Write a graph to several files in parallel, one per shard. The vertices,
+     * in the iteration order of {@link Graph#vertices()}, are split into
+     * contiguous ranges of nearly equal size, and each file holds a complete
+     * graph in the given format with the out-edges of one range. Reading every
+     * file into the same graph therefore gives back the whole graph.
+     *
+     * <p>The shards are written on the {@link ForkJoinPool#commonPool() common
+     * pool}, so the graph's observers must be safe to call from several threads
+     * at once while it is not being modified. Splitting copies the vertex set to
+     * an array; in GraphML, each shard also keeps the set of its own vertices and
+     * of the other vertices its edges point to, which it declares as nodes.
+     *
+     * @param graph graph to write; not modified
+     * @param format format to write it in
+     * @param directory existing directory to write the files into
+     * @param shards number of files to write, positive
+     * @return the files written, named part-00000 and so on, with the format's extension
+     * @throws IOException if a file cannot be written
+     * @throws IllegalArgumentException if shards is not positive, or a label cannot
+     *         be written in the format
+     */
+    public static List<Path> write(Graph<String> graph, Format format, Path directory, int shards)
+            throws IOException {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Number of shards must be positive");
+        }
+        String[] vertices = graph.vertices().toArray(new String[0]);
+        List<Path> files = new ArrayList<>(shards);
+        List<ForkJoinTask<?>> writing = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            Path file = directory.resolve(String.format("part-%05d.%s", shard, format.extension));
+            List<String> range = Arrays.asList(vertices).subList(
+                    (int) ((long) vertices.length * shard / shards),
+                    (int) ((long) vertices.length * (shard + 1) / shards));
+            files.add(file);
+            writing.add(ForkJoinPool.commonPool().submit(() -> {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    writeRange(graph, range, format, new ChannelOutput(channel), true);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        try {
+            for (ForkJoinTask<?> task : writing) {
+                task.join();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return files;
+    }
+
+    private static void write(Graph<String> graph, Format format, Output out) throws IOException {
+        writeRange(graph, graph.vertices(), format, out, false);
+    }
+
+    // Writes a complete document with the vertices of range and their out-edges; when range
+    // is only part of the graph, GraphML declares the other endpoints of those edges too.
+    private static void writeRange(Graph<String> graph, Iterable<String> range, Format format,
+            Output out, boolean partial) throws IOException {
+        StringBuilder text = out.text;
+        try {
+            switch (format) {
+            case TSV:
+                for (String vertex : range) {
+                    if (writeEdges(graph, vertex, format, out, null) == 0) {
+                        tsvLabel(text, vertex);
+                        text.append('\n');
+                        out.endRecord();
+                    }
+                }
+                break;
+            case DOT:
+                text.append("digraph {\n");
+                for (String vertex : range) {
+                    if (writeEdges(graph, vertex, format, out, null) == 0) {
+                        dotLabel(text.append("  "), vertex);
+                        text.append(";\n");
+                        out.endRecord();
+                    }
+                }
+                text.append("}\n");
+                break;
+            case GRAPHML:
+                text.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                        .append("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n")
+                        .append("  <key id=\"weight\" for=\"edge\" attr.name=\"weight\" attr.type=\"int\"/>\n")
+                        .append("  <graph edgedefault=\"directed\">\n");
+                Set<String> own = partial ? new HashSet<>() : null;
+                for (String vertex : range) {
+                    graphmlNode(text, vertex);
+                    out.endRecord();
+                    if (own != null) {
+                        own.add(vertex);
+                    }
+                }
+                Set<String> others = partial ? new HashSet<>() : null;
+                for (String vertex : range) {
+                    writeEdges(graph, vertex, format, out, others);
+                }
+                if (others != null) {
+                    others.removeAll(own);
+                    for (String vertex : others) {
+                        graphmlNode(text, vertex);
+                        out.endRecord();
+                    }
+                }
+                text.append("  </graph>\n</graphml>\n");
+                break;
+            default:
+                throw new AssertionError("unknown format " + format);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    // Writes the edges out of source; returns how many there were. Targets are added to
+    // targets, if it is not null.
+    private static int writeEdges(Graph<String> graph, String source, Format format, Output out,
+            Set<String> targets) {
+        EdgeWriter writer = new EdgeWriter(source, format, out, targets);
+        if (graph instanceof TraversableGraph) {
+            ((TraversableGraph<String>) graph).forEachTarget(source, writer);
+        } else {
+            for (Map.Entry<String, Integer> edge : graph.targets(source).entrySet()) {
+                writer.visit(edge.getKey(), edge.getValue());
+            }
+        }
+        return writer.count;
+    }
+
+    /**
+     * Writes the edges out of one vertex as they are visited.
+     */
+    private static final class EdgeWriter implements EdgeVisitor<String> {
+        private final String source;
+        private final Format format;
+        private final Output out;
+        private final Set<String> targets;
+        int count = 0;
+
+        EdgeWriter(String source, Format format, Output out, Set<String> targets) {
+            this.source = source;
+            this.format = format;
+            this.out = out;
+            this.targets = targets;
+        }
+
+        @Override
+        public void visit(String target, int weight) {
+            StringBuilder text = out.text;
+            switch (format) {
+            case TSV:
+                tsvLabel(text, source);
+                tsvLabel(text.append('\t'), target);
+                text.append('\t').append(weight).append('\n');
+                break;
+            case DOT:
+                dotLabel(text.append("  "), source);
+                dotLabel(text.append(" -> "), target);
+                text.append(" [weight=").append(weight).append("];\n");
+                break;
+            case GRAPHML:
+                xmlAttribute(text.append("    <edge source=\""), source);
+                xmlAttribute(text.append("\" target=\""), target);
+                text.append("\"><data key=\"weight\">").append(weight).append("</data></edge>\n");
+                if (targets != null) {
+                    targets.add(target);
+                }
+                break;
+            default:
+                throw new AssertionError("unknown format " + format);
+            }
+            count++;
+            try {
+                out.endRecord();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Escaping
+
+    private static void tsvLabel(StringBuilder text, String label) {
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            switch (c) {
+            case '\\':
+                text.append("\\\\");
+                break;
+            case '\t':
+                text.append("\\t");
+                break;
+            case '\n':
+                text.append("\\n");
+                break;
+            case '\r':
+                text.append("\\r");
+                break;
+            case '#':
+                text.append(i == 0 ? "\\#" : "#");
+                break;
+            default:
+                text.append(c);
+            }
+        }
+    }
+
+    private static void dotLabel(StringBuilder text, String label) {
+        text.append('"');
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\');
+            }
+            text.append(c);
+        }
+        text.append('"');
+    }
+
+    private static void graphmlNode(StringBuilder text, String label) {
+        xmlAttribute(text.append("    <node id=\""), label);
+        text.append("\"/>\n");
+    }
+
+    private static void xmlAttribute(StringBuilder text, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                text.append("&amp;");
+                break;
+            case '<':
+                text.append("&lt;");
+                break;
+            case '>':
+                text.append("&gt;");
+                break;
+            case '"':
+                text.append("&quot;");
+                break;
+            case '\t':
+                text.append("&#9;");
+                break;
+            case '\n':
+                text.append("&#10;");
+                break;
+            case '\r':
+                text.append("&#13;");
+                break;
+            default:
+                if (c < 0x20 || c == 0xFFFE || c == 0xFFFF) {
+                    throw new IllegalArgumentException("Label cannot be written as XML: " + value);
+                }
+                text.append(c);
+            }
+        }
+    }
+
+    // Outputs
+
+    /**
+     * A buffer of text that is passed on once it holds about BUFFER_CHARS characters.
+     * Records are appended to text whole and end with a call to endRecord, so the
+     * text passed on never ends in the middle of a record or of a surrogate pair.
+     */
+    private abstract static class Output {
+        final StringBuilder text = new StringBuilder(BUFFER_CHARS + 256);
+
+        void endRecord() throws IOException {
+            if (text.length() >= BUFFER_CHARS) {
+                flush();
+            }
+        }
+
+        // Passes on and clears the text.
+        abstract void flush() throws IOException;
+    }
+
+    private static final class AppendableOutput extends Output {
+        private final Appendable out;
+
+        AppendableOutput(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        void flush() throws IOException {
+            out.append(text);
+            text.setLength(0);
+        }
+    }
+
+    private static final class ChannelOutput extends Output {
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_CHARS);
+
+        ChannelOutput(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        void flush() throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, bytes, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                drain();
+            } while (result.isOverflow());
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+            drain();
+            text.setLength(0);
+        }
+
+        private void drain() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package graph;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+
+/**
+ * Saves graphs of String labels to compact binary files and loads them back.
+ *
+ * <p>A file is split into independent chunks, each covering a range of vertex
+ * ids and protected by its own CRC-32, so chunks are encoded and decoded in
+ * parallel on the {@link ForkJoinPool#commonPool() common pool}. A single
+ * thread moves the bytes through a {@link FileChannel} with a large direct
+ * buffer while the next chunks are being encoded, and on loading every chunk
+ * is read by its own task with a positional read.
+ *
+ * <h3>File format</h3>
+ * Fixed-size numbers are little-endian; a varint is an unsigned LEB128 int of
+ * at most 5 bytes, and zigzag(x) is (x &lt;&lt; 1) ^ (x &gt;&gt; 31).
+ * <pre>
+ *   header:
+ *     int  magic        0x4F495247 ("GRIO" read as bytes)
+ *     int  version      1
+ *     int  vertexCount  n
+ *     int  edgeCount    m
+ *     int  chunkCount   c
+ *     c x { int kind, int firstVertex, int vertexCount, int firstEdge, int edgeCount,
+ *           int length, long offset, int crc32 }
+ *   chunks, dictionary chunks first, each kind covering its ids in order:
+ *     kind 0, dictionary: for each vertex, varint byte length and the UTF-8 bytes of its label
+ *     kind 1, adjacency:  for each vertex s, varint degree, then for each edge in increasing
+ *                         order of target id t, varint delta and varint weight, where the
+ *                         delta of the first edge is zigzag(t - s) and of the others
+ *                         t - previous t - 1
+ * </pre>
+ * Vertex ids are the iteration order of {@link Graph#vertices()} at the time
+ * of saving, so a loaded graph lists its vertices in the same order.
+ */
+public final class GraphIO {
+
+    static final int MAGIC = 0x4F495247;
+    static final int VERSION = 1;
+
+    private static final int DICTIONARY = 0;
+    private static final int ADJACENCY = 1;
+
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+    private static final int CHUNK_ENTRY_BYTES = 7 * Integer.BYTES + Long.BYTES;
+
+    // Rough number of labels (counting their chars) or edges (counting one per vertex) per chunk.
+    static final int CHUNK_ITEMS = 1 << 18;
+
+    private static final int BUFFER_BYTES = 4 << 20;
+
+    private GraphIO() {
+        // not instantiable
+    }
+
+    /**
+     * One chunk of the file: a kind, a range of vertex ids and, for adjacency
+     * chunks, the matching range of edge indexes in source order.
+     */
+    private static final class Chunk {
+        final int kind;
+        final int firstVertex;
+        final int vertexCount;
+        final int firstEdge;
+        final int edgeCount;
+        int length;
+        long offset;
+        int crc;
+
+        Chunk(int kind, int firstVertex, int vertexCount, int firstEdge, int edgeCount) {
+            this.kind = kind;
+            this.firstVertex = firstVertex;
+            this.vertexCount = vertexCount;
+            this.firstEdge = firstEdge;
+            this.edgeCount = edgeCount;
+        }
+    }
+
+    /**
+     * Save a graph in the format described above, replacing any existing file.
+     *
+     * @param graph graph to save; not modified, and must not be modified meanwhile
+     * @param file path of the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(Graph<String> graph, Path file) throws IOException {
+        save(graph, file, CHUNK_ITEMS);
+    }
+
+    /**
+     * Save a graph with chunks of roughly the given number of items.
+     *
+     * @param graph graph to save
+     * @param file path of the file to write
+     * @param chunkItems rough number of label chars or edges per chunk, positive
+     * @throws IOException if the file cannot be written
+     */
+    static void save(Graph<String> graph, Path file, int chunkItems) throws IOException {
+        CsrGraph<String> csr = Graphs.freeze(graph);
+        List<Chunk> chunks = plan(csr, chunkItems);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int window = 2 * pool.getParallelism() + 1;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long offset = HEADER_BYTES + (long) chunks.size() * CHUNK_ENTRY_BYTES;
+            channel.position(offset);
+            // encode up to window chunks ahead of the one being written
+            Deque<ForkJoinTask<byte[]>> encoding = new ArrayDeque<>();
+            int submitted = 0;
+            for (Chunk chunk : chunks) {
+                while (submitted < chunks.size() && encoding.size() < window) {
+                    Chunk next = chunks.get(submitted++);
+                    encoding.add(pool.submit(() -> encode(csr, next)));
+                }
+                byte[] bytes = encoding.remove().join();
+                CRC32 crc = new CRC32();
+                crc.update(bytes, 0, bytes.length);
+                chunk.crc = (int) crc.getValue();
+                chunk.length = bytes.length;
+                chunk.offset = offset;
+                offset += bytes.length;
+                for (int from = 0; from < bytes.length; ) {
+                    if (!buffer.hasRemaining()) {
+                        drain(channel, buffer);
+                    }
+                    int length = Math.min(buffer.remaining(), bytes.length - from);
+                    buffer.put(bytes, from, length);
+                    from += length;
+                }
+            }
+            drain(channel, buffer);
+
+            long position = 0;
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(csr.vertexCount()).putInt(csr.edgeCount())
+                    .putInt(chunks.size());
+            for (Chunk chunk : chunks) {
+                if (buffer.remaining() < CHUNK_ENTRY_BYTES) {
+                    position = drain(channel, buffer, position);
+                }
+                buffer.putInt(chunk.kind).putInt(chunk.firstVertex).putInt(chunk.vertexCount)
+                        .putInt(chunk.firstEdge).putInt(chunk.edgeCount).putInt(chunk.length)
+                        .putLong(chunk.offset).putInt(chunk.crc);
+            }
+            drain(channel, buffer, position);
+        }
+    }
+
+    // Split the dictionary and the adjacency into vertex ranges of about chunkItems items each.
+    private static List<Chunk> plan(CsrGraph<String> csr, int chunkItems) {
+        int n = csr.vertexCount();
+        List<Chunk> chunks = new ArrayList<>();
+        for (int first = 0, v = 0; first < n; first = v) {
+            long items = 0;
+            while (v < n && items < chunkItems) {
+                items += csr.label(v++).length() + 1;
+            }
+            chunks.add(new Chunk(DICTIONARY, first, v - first, 0, 0));
+        }
+        for (int first = 0, v = 0; first < n; first = v) {
+            while (v < n && csr.offsets[v] - csr.offsets[first] + (v - first) < chunkItems) {
+                v++;
+            }
+            int firstEdge = csr.offsets[first];
+            chunks.add(new Chunk(ADJACENCY, first, v - first, firstEdge, csr.offsets[v] - firstEdge));
+        }
+        return chunks;
+    }
+
+    private static byte[] encode(CsrGraph<String> csr, Chunk chunk) {
+        Encoder out = new Encoder();
+        int end = chunk.firstVertex + chunk.vertexCount;
+        if (chunk.kind == DICTIONARY) {
+            for (int v = chunk.firstVertex; v < end; v++) {
+                byte[] label = csr.label(v).getBytes(StandardCharsets.UTF_8);
+                out.varint(label.length);
+                out.bytes(label);
+            }
+        } else {
+            for (int s = chunk.firstVertex; s < end; s++) {
+                out.varint(csr.offsets[s + 1] - csr.offsets[s]);
+                int previous = -1;
+                for (int e = csr.offsets[s]; e < csr.offsets[s + 1]; e++) {
+                    int target = csr.targets[e];
+                    out.varint(previous < 0 ? zigzag(target - s) : target - previous - 1);
+                    out.varint(csr.weights[e]);
+                    previous = target;
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Writes out everything put into buffer so far at the channel's position and clears it.
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Writes out everything put into buffer so far at the given position and clears it;
+    // returns the position after the bytes written.
+    private static long drain(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    /**
+     * Load a graph saved by {@link #save(Graph, Path)}.
+     *
+     * @param file path of the file to read
+     * @return a new mutable graph with the saved vertices, in their saved order, and edges
+     * @throws IOException if the file cannot be read, is not a graph file, or fails
+     *         a checksum
+     */
+    public static Graph<String> load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a graph file, or an unsupported version");
+            }
+            int n = header.getInt();
+            int m = header.getInt();
+            int count = header.getInt();
+            if (n < 0 || m < 0 || count < 0 || count > (channel.size() - HEADER_BYTES) / CHUNK_ENTRY_BYTES
+                    || count > Integer.MAX_VALUE / CHUNK_ENTRY_BYTES) {
+                throw new IOException("Corrupt graph file header");
+            }
+            ByteBuffer table = read(channel, HEADER_BYTES, count * CHUNK_ENTRY_BYTES);
+            List<Chunk> chunks = new ArrayList<>(count);
+            int labelsCovered = 0;
+            int edgesCovered = 0;
+            int verticesCovered = 0;
+            for (int i = 0; i < count; i++) {
+                Chunk chunk = new Chunk(table.getInt(), table.getInt(), table.getInt(), table.getInt(), table.getInt());
+                chunk.length = table.getInt();
+                chunk.offset = table.getLong();
+                chunk.crc = table.getInt();
+                boolean dictionary = chunk.kind == DICTIONARY && verticesCovered == 0;
+                boolean inOrder = dictionary
+                        ? chunk.firstVertex == labelsCovered
+                        : chunk.kind == ADJACENCY && labelsCovered == n
+                                && chunk.firstVertex == verticesCovered && chunk.firstEdge == edgesCovered;
+                if (!inOrder || chunk.vertexCount <= 0 || chunk.edgeCount < 0 || chunk.length < 0
+                        || chunk.offset < 0 || chunk.offset + chunk.length > channel.size()) {
+                    throw new IOException("Corrupt chunk table entry " + i);
+                }
+                if (dictionary) {
+                    labelsCovered += chunk.vertexCount;
+                } else {
+                    verticesCovered += chunk.vertexCount;
+                    edgesCovered += chunk.edgeCount;
+                }
+                if (labelsCovered > n || verticesCovered > n || edgesCovered > m || edgesCovered < 0) {
+                    throw new IOException("Corrupt chunk table entry " + i);
+                }
+                chunks.add(chunk);
+            }
+            if (labelsCovered != n || verticesCovered != n || edgesCovered != m) {
+                throw new IOException("Chunks do not cover the graph");
+            }
+
+            String[] labels = new String[n];
+            int[] offsets = new int[n + 1];
+            int[] targets = new int[m];
+            int[] weights = new int[m];
+            List<ForkJoinTask<?>> decoding = new ArrayList<>(count);
+            for (Chunk chunk : chunks) {
+                decoding.add(ForkJoinPool.commonPool().submit(() -> {
+                    try {
+                        decode(channel, chunk, labels, offsets, targets, weights);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            try {
+                for (ForkJoinTask<?> task : decoding) {
+                    task.join();
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (new HashSet<>(Arrays.asList(labels)).size() != n) {
+                throw new IOException("Duplicate vertex labels");
+            }
+            return new AdaptiveGraph<>(labels, offsets, targets, weights);
+        }
+    }
+
+    private static void decode(FileChannel channel, Chunk chunk,
+            String[] labels, int[] offsets, int[] targets, int[] weights) throws IOException {
+        ByteBuffer in = read(channel, chunk.offset, chunk.length);
+        CRC32 crc = new CRC32();
+        crc.update(in);
+        if ((int) crc.getValue() != chunk.crc) {
+            throw new IOException("Checksum mismatch in chunk at offset " + chunk.offset);
+        }
+        in.flip();
+        int n = labels.length;
+        int end = chunk.firstVertex + chunk.vertexCount;
+        try {
+            if (chunk.kind == DICTIONARY) {
+                byte[] scratch = new byte[64];
+                for (int v = chunk.firstVertex; v < end; v++) {
+                    int length = varint(in);
+                    if (length > in.remaining()) {
+                        throw new IOException("Label runs past the end of its chunk");
+                    }
+                    if (length > scratch.length) {
+                        scratch = new byte[Math.max(length, 2 * scratch.length)];
+                    }
+                    in.get(scratch, 0, length);
+                    labels[v] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+                }
+            } else {
+                int e = chunk.firstEdge;
+                int lastEdge = chunk.firstEdge + chunk.edgeCount;
+                for (int s = chunk.firstVertex; s < end; s++) {
+                    int degree = varint(in);
+                    if (degree < 0 || degree > lastEdge - e) {
+                        throw new IOException("Degree of vertex " + s + " runs past its chunk");
+                    }
+                    long target = s;
+                    for (int i = 0; i < degree; i++, e++) {
+                        int delta = varint(in);
+                        target = i == 0 ? s + (long) ((delta >>> 1) ^ -(delta & 1)) : target + (delta & 0xFFFFFFFFL) + 1;
+                        int weight = varint(in);
+                        if (target < 0 || target >= n || weight <= 0) {
+                            throw new IOException("Invalid edge from vertex " + s);
+                        }
+                        targets[e] = (int) target;
+                        weights[e] = weight;
+                    }
+                    offsets[s + 1] = e;
+                }
+                if (e != lastEdge) {
+                    throw new IOException("Chunk holds fewer edges than its table entry says");
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated chunk at offset " + chunk.offset, e);
+        }
+        if (in.hasRemaining()) {
+            throw new IOException("Trailing bytes in chunk at offset " + chunk.offset);
+        }
+    }
+
+    // Reads length bytes at position into a new direct buffer, flipped for reading.
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Truncated graph file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int zigzag(int x) {
+        return (x << 1) ^ (x >> 31);
+    }
+
+    private static int varint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint longer than 5 bytes");
+    }
+
+    /**
+     * Growable byte array that chunks are encoded into.
+     */
+    private static final class Encoder {
+        private byte[] bytes = new byte[1 << 12];
+        private int size = 0;
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+            }
+        }
+
+        void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void bytes(byte[] values) {
+            ensure(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
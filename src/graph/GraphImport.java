@@ -0,0 +1,757 @@
+package graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads edge lists and Graphviz DOT files into graphs of String labels.
+ *
+ * <p>Files are streamed through a {@link FileChannel} into a reused buffer and
+ * parsed byte by byte where they lie, without a String per line or per field.
+ * Labels are interned by their bytes, so each distinct label is decoded once,
+ * and the graph receives the same String instance for every occurrence. When
+ * the graph is a {@link BatchGraph}, edges are handed over in batches with
+ * {@link BatchGraph#applyAll(List)}; otherwise they are set one at a time.
+ *
+ * <h3>Edge lists</h3>
+ * One record per line, UTF-8, with fields separated by tabs ({@link Format#TSV})
+ * or commas ({@link Format#CSV}):
+ * <pre>
+ *   source  target  weight   an edge; the weight is passed to {@link Graph#set}
+ *   source  target           an edge of weight 1
+ *   vertex                   a vertex, possibly without edges
+ * </pre>
+ * Empty lines and lines starting with '#' are skipped, and a trailing '\r'
+ * is ignored. In TSV a backslash escapes the next character, with \t, \n and
+ * \r standing for tab, newline and carriage return. In CSV a field may be
+ * enclosed in double quotes, doubling any quote inside it, and may then
+ * contain commas and line breaks.
+ *
+ * <h3>DOT</h3>
+ * A directed graph {@code [strict] digraph [name] { ... }} made of node
+ * statements, edge statements such as {@code a -> b -> c [weight=3]}, attribute
+ * statements and comments. The weight of an edge is its integer {@code weight}
+ * attribute, or else the one of the latest {@code edge [weight=...]} statement,
+ * or else 1. In a quoted id, \" and \\ stand for a quote and a backslash,
+ * and a backslash before a line break joins the lines. Ports are ignored;
+ * undirected graphs, subgraphs and HTML labels are rejected.
+ *
+ * <p>When a file turns out to be malformed, the records before the offending one
+ * may already have been applied to the graph.
+ */
+public final class GraphImport {
+
+    /**
+     * Formats of files that can be imported.
+     */
+    public enum Format {
+        /** tab-separated edge list */
+        TSV,
+        /** comma-separated edge list */
+        CSV,
+        /** Graphviz DOT */
+        DOT;
+
+        /**
+         * @param file a file name ending in .tsv, .txt, .edges, .csv, .dot or .gv,
+         *        in any case
+         * @return the format those extensions stand for
+         * @throws IllegalArgumentException if the extension is none of them
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            String extension = name.substring(name.lastIndexOf('.') + 1);
+            switch (extension) {
+            case "tsv":
+            case "txt":
+            case "edges":
+                return TSV;
+            case "csv":
+                return CSV;
+            case "dot":
+            case "gv":
+                return DOT;
+            default:
+                throw new IllegalArgumentException("Unknown graph file extension: " + file);
+            }
+        }
+    }
+
+    static final int BUFFER_BYTES = 1 << 20;
+    static final int BATCH_SIZE = 1 << 12;
+
+    private GraphImport() {
+        // not instantiable
+    }
+
+    /**
+     * Read a file into a graph, in the format named by its extension.
+     *
+     * @param file file to read; see {@link Format#of(Path)}
+     * @param graph graph to add the file's vertices and edges to
+     * @return number of edges read
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static long read(Path file, Graph<String> graph) throws IOException {
+        return read(file, Format.of(file), graph);
+    }
+
+    /**
+     * Read a file into a graph.
+     *
+     * @param file file to read
+     * @param format format of the file
+     * @param graph graph to add the file's vertices and edges to
+     * @return number of edges read
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static long read(Path file, Format format, Graph<String> graph) throws IOException {
+        return read(file, format, graph, BUFFER_BYTES);
+    }
+
+    /**
+     * Read a file into a graph through a buffer of a given initial size; a
+     * buffer grows to hold the longest record of an edge list.
+     */
+    static long read(Path file, Format format, Graph<String> graph, int bufferBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input input = new Input(file, channel, bufferBytes);
+            Sink sink = new Sink(graph);
+            if (format == Format.DOT) {
+                new DotParser(input, sink).parse();
+            } else {
+                readEdgeList(input, format == Format.CSV ? (byte) ',' : (byte) '\t', sink);
+            }
+            sink.flush();
+            return sink.edges;
+        }
+    }
+
+    /**
+     * The bytes of a file, read through a buffer that is refilled as it is consumed.
+     */
+    private static final class Input {
+        final Path file;
+        final FileChannel channel;
+        byte[] bytes;
+        int position = 0;
+        int limit = 0;
+        boolean eof = false;
+        long line = 1;
+
+        Input(Path file, FileChannel channel, int bufferBytes) {
+            this.file = file;
+            this.channel = channel;
+            this.bytes = new byte[bufferBytes];
+        }
+
+        // Moves the unread bytes to the front of the buffer, growing it if they fill
+        // it, and reads more after them; returns false if the file has no more.
+        boolean refill() throws IOException {
+            if (eof) {
+                return false;
+            }
+            int unread = limit - position;
+            if (unread == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+            } else {
+                System.arraycopy(bytes, position, bytes, 0, unread);
+            }
+            position = 0;
+            limit = unread;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, limit, bytes.length - limit);
+            int read = channel.read(buffer);
+            while (read == 0) {
+                read = channel.read(buffer);
+            }
+            if (read < 0) {
+                eof = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        }
+
+        // Returns the next byte, or -1 at the end of the file.
+        int read() throws IOException {
+            if (position == limit && !refill()) {
+                return -1;
+            }
+            byte b = bytes[position++];
+            if (b == '\n') {
+                line++;
+            }
+            return b & 0xFF;
+        }
+
+        // Returns the next byte without consuming it, or -1 at the end of the file.
+        int peek() throws IOException {
+            if (position == limit && !refill()) {
+                return -1;
+            }
+            return bytes[position] & 0xFF;
+        }
+
+        IOException malformed(String reason) {
+            return new IOException(file + ":" + line + ": " + reason);
+        }
+    }
+
+    /**
+     * Hands vertices and edges to a graph, in batches if it is a {@link BatchGraph}.
+     */
+    private static final class Sink {
+        final Graph<String> graph;
+        final BatchGraph<String> batchGraph;
+        final List<Mutation<String>> pending = new ArrayList<>(BATCH_SIZE);
+        long edges = 0;
+
+        Sink(Graph<String> graph) {
+            this.graph = graph;
+            this.batchGraph = graph instanceof BatchGraph ? (BatchGraph<String>) graph : null;
+        }
+
+        void add(String vertex) {
+            if (batchGraph == null) {
+                graph.add(vertex);
+            } else {
+                enqueue(Mutation.add(vertex));
+            }
+        }
+
+        void set(String source, String target, int weight) {
+            edges++;
+            if (batchGraph == null) {
+                graph.set(source, target, weight);
+            } else {
+                enqueue(Mutation.set(source, target, weight));
+            }
+        }
+
+        private void enqueue(Mutation<String> mutation) {
+            pending.add(mutation);
+            if (pending.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!pending.isEmpty()) {
+                batchGraph.applyAll(pending);
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Interns labels by their UTF-8 bytes, decoding each distinct label once.
+     */
+    private static final class Labels {
+        private byte[][] keys = new byte[1 << 10][];
+        private String[] labels = new String[keys.length];
+        private int[] hashes = new int[keys.length];
+        private int size = 0;
+
+        // Abstraction function:
+        //   AF = the map from keys[i] to labels[i] for every i with keys[i] != null
+        // Representation invariant:
+        //   labels[i] is keys[i] decoded as UTF-8, and hashes[i] its hash; keys.length is
+        //     a power of two greater than 2 * size; keys are found by linear probing
+        // Safety from rep exposure:
+        //   keys are private copies; labels are immutable
+
+        String intern(byte[] bytes, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            hash ^= hash >>> 16;
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key == null) {
+                    String label = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+                    keys[slot] = Arrays.copyOfRange(bytes, from, to);
+                    labels[slot] = label;
+                    hashes[slot] = hash;
+                    if (++size * 2 >= keys.length) {
+                        grow();
+                    }
+                    return label;
+                }
+                if (hashes[slot] == hash && equal(key, bytes, from, to)) {
+                    return labels[slot];
+                }
+            }
+        }
+
+        private static boolean equal(byte[] key, byte[] bytes, int from, int to) {
+            if (key.length != to - from) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != bytes[from + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldLabels = labels;
+            int[] oldHashes = hashes;
+            keys = new byte[2 * oldKeys.length][];
+            labels = new String[keys.length];
+            hashes = new int[keys.length];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int slot = oldHashes[i] & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    labels[slot] = oldLabels[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+        }
+    }
+
+    // Edge lists
+
+    private static final int MAX_FIELDS = 3;
+
+    private static void readEdgeList(Input input, byte separator, Sink sink) throws IOException {
+        Labels labels = new Labels();
+        byte[] scratch = new byte[64];
+        int[] starts = new int[MAX_FIELDS];
+        int[] ends = new int[MAX_FIELDS];
+        boolean[] escaped = new boolean[MAX_FIELDS];
+        String[] fields = new String[MAX_FIELDS];
+        boolean csv = separator == ',';
+        while (true) {
+            int end = recordEnd(input, csv);
+            if (end < 0) {
+                return;
+            }
+            byte[] bytes = input.bytes;
+            int start = input.position;
+            input.position = end < input.limit ? end + 1 : end;
+            int lines = 1;
+            int stop = end;
+            if (stop > start && bytes[stop - 1] == '\r') {
+                stop--;
+            }
+            if (stop == start || bytes[start] == '#') {
+                input.line++;
+                continue;
+            }
+
+            // split the record into fields, noting which ones need unescaping
+            int count = 0;
+            int i = start;
+            while (true) {
+                if (count == MAX_FIELDS) {
+                    throw input.malformed("more than " + MAX_FIELDS + " fields");
+                }
+                starts[count] = i;
+                escaped[count] = false;
+                if (csv && i < stop && bytes[i] == '"') {
+                    escaped[count] = true;
+                    for (i++; ; i++) {
+                        if (i >= stop) {
+                            throw input.malformed("unterminated quoted field");
+                        }
+                        if (bytes[i] == '\n') {
+                            lines++;
+                        } else if (bytes[i] == '"') {
+                            if (i + 1 < stop && bytes[i + 1] == '"') {
+                                i++;
+                            } else {
+                                i++;
+                                break;
+                            }
+                        }
+                    }
+                    if (i < stop && bytes[i] != separator) {
+                        throw input.malformed("text after a quoted field");
+                    }
+                } else {
+                    while (i < stop && bytes[i] != separator) {
+                        if (!csv && bytes[i] == '\\') {
+                            escaped[count] = true;
+                            i++;
+                        }
+                        i++;
+                    }
+                    if (i > stop) {
+                        throw input.malformed("backslash at the end of a line");
+                    }
+                }
+                ends[count++] = i;
+                if (i == stop) {
+                    break;
+                }
+                i++;
+            }
+
+            for (int f = 0; f < Math.min(count, 2); f++) {
+                if (!escaped[f]) {
+                    fields[f] = labels.intern(bytes, starts[f], ends[f]);
+                    continue;
+                }
+                if (scratch.length < ends[f] - starts[f]) {
+                    scratch = new byte[Math.max(ends[f] - starts[f], 2 * scratch.length)];
+                }
+                int length = csv ? unquote(bytes, starts[f], ends[f], scratch)
+                        : unescape(bytes, starts[f], ends[f], scratch);
+                fields[f] = labels.intern(scratch, 0, length);
+            }
+            if (count == 1) {
+                sink.add(fields[0]);
+            } else {
+                int weight = count < 3 ? 1
+                        : escaped[2] && csv ? parseWeight(input, bytes, starts[2] + 1, ends[2] - 1)
+                        : parseWeight(input, bytes, starts[2], ends[2]);
+                sink.set(fields[0], fields[1], weight);
+            }
+            input.line += lines;
+        }
+    }
+
+    // Finds the end of the record at input.position, refilling the buffer as needed:
+    // returns the index of its terminating newline, or input.limit for a last record
+    // without one, or -1 if there are no more records.
+    private static int recordEnd(Input input, boolean csv) throws IOException {
+        int scanned = 0;
+        boolean quoted = false;
+        while (true) {
+            byte[] bytes = input.bytes;
+            int i = input.position + scanned;
+            for (; i < input.limit; i++) {
+                byte b = bytes[i];
+                if (b == '\n' && !quoted) {
+                    return i;
+                }
+                if (csv && b == '"') {
+                    quoted = !quoted;
+                }
+            }
+            scanned = i - input.position;
+            if (!input.refill()) {
+                return input.position < input.limit ? input.limit : -1;
+            }
+        }
+    }
+
+    // Copies a TSV field into scratch without its escapes; returns its length there.
+    private static int unescape(byte[] bytes, int from, int to, byte[] scratch) {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '\\') {
+                b = bytes[++i];
+                b = b == 't' ? (byte) '\t' : b == 'n' ? (byte) '\n' : b == 'r' ? (byte) '\r' : b;
+            }
+            scratch[length++] = b;
+        }
+        return length;
+    }
+
+    // Copies a quoted CSV field into scratch without its quotes; returns its length there.
+    private static int unquote(byte[] bytes, int from, int to, byte[] scratch) {
+        int length = 0;
+        for (int i = from + 1; i < to - 1; i++) {
+            scratch[length++] = bytes[i];
+            if (bytes[i] == '"') {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private static int parseWeight(Input input, byte[] bytes, int from, int to) throws IOException {
+        if (from == to) {
+            throw input.malformed("empty weight");
+        }
+        long weight = 0;
+        for (int i = from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw input.malformed("weight is not a nonnegative integer");
+            }
+            weight = 10 * weight + digit;
+            if (weight > Integer.MAX_VALUE) {
+                throw input.malformed("weight is too large");
+            }
+        }
+        return (int) weight;
+    }
+
+    // DOT
+
+    /**
+     * A recursive-descent parser for the subset of DOT described above.
+     */
+    private static final class DotParser {
+
+        // token kinds; single-character punctuation is its own character
+        private static final int END = -1;
+        private static final int ID = -2;
+        private static final int ARROW = -3;
+        private static final int UNDIRECTED = -4;
+
+        private final Input input;
+        private final Sink sink;
+        private final Labels labels = new Labels();
+        private final List<String> chain = new ArrayList<>();
+        private byte[] text = new byte[64];
+        private int length;
+        private boolean quoted;
+        private int token;
+        private int defaultWeight = 1;
+
+        DotParser(Input input, Sink sink) {
+            this.input = input;
+            this.sink = sink;
+        }
+
+        void parse() throws IOException {
+            next();
+            if (isKeyword("strict")) {
+                next();
+            }
+            if (isKeyword("graph")) {
+                throw input.malformed("undirected graphs are not supported");
+            }
+            if (!isKeyword("digraph")) {
+                throw input.malformed("expected digraph");
+            }
+            next();
+            if (token == ID) {
+                next();
+            }
+            expect('{');
+            while (token != '}') {
+                statement();
+                if (token == ';' || token == ',') {
+                    next();
+                }
+            }
+            next();
+            if (token != END) {
+                throw input.malformed("text after the graph");
+            }
+        }
+
+        private void statement() throws IOException {
+            if (token != ID) {
+                throw input.malformed(token == '{' || token == END ? "subgraphs are not supported"
+                        : "expected a statement");
+            }
+            if (isKeyword("subgraph")) {
+                throw input.malformed("subgraphs are not supported");
+            }
+            if (isKeyword("graph") || isKeyword("node")) {
+                next();
+                attributes();
+                return;
+            }
+            if (isKeyword("edge")) {
+                next();
+                Integer weight = attributes();
+                if (weight != null) {
+                    defaultWeight = weight;
+                }
+                return;
+            }
+            String first = node();
+            if (token == '=') {
+                // a graph attribute; its name was read as a node
+                next();
+                expect(ID);
+                return;
+            }
+            chain.clear();
+            chain.add(first);
+            while (token == ARROW || token == UNDIRECTED) {
+                if (token == UNDIRECTED) {
+                    throw input.malformed("undirected edges are not supported");
+                }
+                next();
+                if (token != ID) {
+                    throw input.malformed(token == '{' ? "subgraphs are not supported" : "expected a node");
+                }
+                chain.add(node());
+            }
+            Integer weight = attributes();
+            if (chain.size() == 1) {
+                sink.add(first);
+                return;
+            }
+            for (int i = 1; i < chain.size(); i++) {
+                sink.set(chain.get(i - 1), chain.get(i), weight != null ? weight : defaultWeight);
+            }
+        }
+
+        // Reads a node id and skips its port, if any.
+        private String node() throws IOException {
+            String label = labels.intern(text, 0, length);
+            next();
+            for (int i = 0; i < 2 && token == ':'; i++) {
+                next();
+                expect(ID);
+            }
+            return label;
+        }
+
+        // Reads any attribute lists; returns the last weight given, or null if none was.
+        private Integer attributes() throws IOException {
+            Integer weight = null;
+            while (token == '[') {
+                next();
+                while (token != ']') {
+                    if (token != ID) {
+                        throw input.malformed("expected an attribute");
+                    }
+                    boolean isWeight = !quoted && length == 6 && matches("weight");
+                    next();
+                    if (token == '=') {
+                        next();
+                        if (token != ID) {
+                            throw input.malformed("expected an attribute value");
+                        }
+                        if (isWeight) {
+                            weight = parseWeight(input, text, 0, length);
+                        }
+                        next();
+                    }
+                    if (token == ';' || token == ',') {
+                        next();
+                    }
+                }
+                next();
+            }
+            return weight;
+        }
+
+        private void expect(int kind) throws IOException {
+            if (token != kind) {
+                throw input.malformed(kind == ID ? "expected an id" : "expected '" + (char) kind + "'");
+            }
+            next();
+        }
+
+        private boolean isKeyword(String keyword) {
+            return token == ID && !quoted && length == keyword.length() && matches(keyword);
+        }
+
+        // Compares the token text to an ASCII word, ignoring case.
+        private boolean matches(String word) {
+            for (int i = 0; i < length; i++) {
+                if (Character.toLowerCase(text[i]) != word.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void append(int b) {
+            if (length == text.length) {
+                text = Arrays.copyOf(text, 2 * text.length);
+            }
+            text[length++] = (byte) b;
+        }
+
+        // Reads the next token into token, and the text of an id into text[0..length).
+        private void next() throws IOException {
+            int b = skipSpaceAndComments();
+            length = 0;
+            quoted = false;
+            if (b < 0) {
+                token = END;
+            } else if (b == '"') {
+                token = ID;
+                quoted = true;
+                while (true) {
+                    b = input.read();
+                    if (b < 0) {
+                        throw input.malformed("unterminated string");
+                    }
+                    if (b == '"') {
+                        break;
+                    }
+                    if (b == '\\') {
+                        int escapedByte = input.read();
+                        if (escapedByte == '\n') {
+                            continue; // a line continuation
+                        }
+                        if (escapedByte != '"' && escapedByte != '\\') {
+                            append(b);
+                        }
+                        b = escapedByte;
+                    }
+                    append(b);
+                }
+            } else if (b == '-' && (input.peek() == '>' || input.peek() == '-')) {
+                token = input.read() == '>' ? ARROW : UNDIRECTED;
+            } else if (b == '<') {
+                throw input.malformed("HTML strings are not supported");
+            } else if (isIdByte(b)) {
+                token = ID;
+                append(b);
+                while (isIdByte(input.peek()) && input.peek() != '-') {
+                    append(input.read());
+                }
+            } else if ("{}[];,=:".indexOf(b) >= 0) {
+                token = b;
+            } else {
+                throw input.malformed("unexpected character '" + (char) b + "'");
+            }
+        }
+
+        // Skips white space and comments; returns the first byte after them, consumed, or -1.
+        private int skipSpaceAndComments() throws IOException {
+            while (true) {
+                int b = input.read();
+                if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    continue;
+                }
+                if (b == '#' || b == '/' && input.peek() == '/') {
+                    while (b >= 0 && b != '\n') {
+                        b = input.read();
+                    }
+                    continue;
+                }
+                if (b == '/' && input.peek() == '*') {
+                    input.read();
+                    int previous = 0;
+                    while ((b = input.read()) >= 0 && !(previous == '*' && b == '/')) {
+                        previous = b;
+                    }
+                    if (b < 0) {
+                        throw input.malformed("unterminated comment");
+                    }
+                    continue;
+                }
+                return b;
+            }
+        }
+
+        // Letters, digits, underscores, dots and any non-ASCII byte make up unquoted ids,
+        // which may also start with a minus sign.
+        private static boolean isIdByte(int b) {
+            return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9'
+                    || b == '_' || b == '.' || b == '-' || b >= 0x80;
+        }
+    }
+}
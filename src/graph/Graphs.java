@@ -0,0 +1,421 @@
+package graph;
+
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Static utility methods operating on or returning {@link Graph} instances.
+ */
+public final class Graphs {
+
+    private Graphs() {
+        // not instantiable
+    }
+
+    /**
+     * Take an immutable compressed-sparse-row snapshot of a graph.
+     * Later changes to the original graph are not reflected in the snapshot.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph to copy; not modified
+     * @return an immutable graph with the same vertices and edges as graph,
+     *         whose mutators throw {@link UnsupportedOperationException}
+     */
+    public static <L> CsrGraph<L> freeze(Graph<L> graph) {
+        if (graph instanceof CsrGraph) {
+            return (CsrGraph<L>) graph;
+        }
+        return CsrGraph.copyOf(graph);
+    }
+
+    /**
+     * Wrap a graph so that it can be shared by threads, with readers that
+     * usually take no lock at all.
+     *
+     * <p>{@link Graph#vertices()}, {@link Graph#sources(Object)} and
+     * {@link Graph#targets(Object)} first copy their result from the wrapped
+     * graph under a {@link StampedLock} optimistic read; the copy is returned
+     * only if no write happened meanwhile, and otherwise (or if reading a graph
+     * in the middle of a write threw) the read is repeated under the read lock.
+     * Mutators take the write lock. Under a read-mostly workload readers
+     * therefore neither block each other nor write any shared memory.
+     *
+     * <p>Because results are copied, the returned sets and maps are unmodifiable
+     * snapshots rather than live views. The wrapped graph must not be used
+     * directly afterwards, and its read methods must not loop forever or
+     * corrupt it when they race with a write; every graph in this package
+     * meets that requirement.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph to wrap
+     * @return a thread-safe graph backed by graph
+     */
+    public static <L> Graph<L> optimisticGraph(Graph<L> graph) {
+        return new OptimisticGraph<>(graph);
+    }
+
+    /**
+     * Wrap a graph so that it can be shared by threads, with every operation
+     * holding the lock of the returned graph.
+     *
+     * <p>Like {@link #optimisticGraph(Graph)}, reads return unmodifiable copies
+     * made while the lock is held. The wrapped graph must not be used directly
+     * afterwards.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph to wrap
+     * @return a thread-safe graph backed by graph
+     */
+    public static <L> Graph<L> synchronizedGraph(Graph<L> graph) {
+        return new SynchronizedGraph<>(graph);
+    }
+
+    /**
+     * Make a spliterator over every edge of a graph, for sequential or parallel
+     * traversal. It knows its exact size, and so does every part it splits
+     * into: an immutable {@link CsrGraph} is split by halving its edge arrays,
+     * and any other graph by a prefix sum of vertex out-degrees, computed once
+     * up front, at the vertex boundary closest to the middle edge. Edges leaving
+     * one vertex always stay in the same part of a non-CSR graph.
+     *
+     * <p>The graph must not be modified until the traversal is over; a change
+     * to the out-degree of a vertex not yet visited is detected and reported
+     * with {@link ConcurrentModificationException}.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph whose edges to traverse
+     * @return a SIZED and SUBSIZED spliterator over the edges of graph, each
+     *         reported once as a (source, target, weight) triple
+     */
+    public static <L> Spliterator<WeightedEdge<L>> edges(Graph<L> graph) {
+        if (graph instanceof CsrGraph) {
+            return ((CsrGraph<L>) graph).edgeSpliterator();
+        }
+        return new VertexEdges<>(graph);
+    }
+
+    /**
+     * Make a stream of every edge of a graph, as described by
+     * {@link #edges(Graph)}. The stream is sequential; call
+     * {@link Stream#parallel()} on it to aggregate over all cores.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph whose edges to stream
+     * @return a stream of the edges of graph
+     */
+    public static <L> Stream<WeightedEdge<L>> edgeStream(Graph<L> graph) {
+        return StreamSupport.stream(edges(graph), false);
+    }
+
+    /**
+     * Spliterator over the edges leaving vertices[next..end) of a graph, plus
+     * the rest of the row being read when tryAdvance() stopped mid-row.
+     */
+    private static final class VertexEdges<L> implements Spliterator<WeightedEdge<L>> {
+
+        private final Graph<L> graph;
+        private final Object[] vertices;
+        // prefix[i] = total out-degree of vertices[0..i)
+        private final long[] prefix;
+        private int next;
+        private final int end;
+        // row being read by tryAdvance(), or null
+        private Iterator<Map.Entry<L, Integer>> row = null;
+        private L rowSource = null;
+        private long rowRemaining = 0;
+        private long visited = 0;
+
+        // Abstraction function:
+        //   AF = the remaining edges of rowSource reported by row, followed by all edges
+        //     leaving vertices[next..end) of graph
+        // Representation invariant:
+        //   0 <= next <= end <= vertices.length; prefix has vertices.length + 1
+        //     non-decreasing entries starting at 0; row == null iff rowRemaining == 0
+        // Safety from rep exposure:
+        //   vertices and prefix are shared only with spliterators split from this one,
+        //     which never write them
+
+        VertexEdges(Graph<L> graph) {
+            this.graph = graph;
+            this.vertices = graph.vertices().toArray();
+            this.prefix = new long[vertices.length + 1];
+            for (int i = 0; i < vertices.length; i++) {
+                prefix[i + 1] = prefix[i] + graph.targets(vertex(i)).size();
+            }
+            this.next = 0;
+            this.end = vertices.length;
+        }
+
+        private VertexEdges(VertexEdges<L> whole, int next, int end) {
+            this.graph = whole.graph;
+            this.vertices = whole.vertices;
+            this.prefix = whole.prefix;
+            this.next = next;
+            this.end = end;
+        }
+
+        @SuppressWarnings("unchecked")
+        private L vertex(int i) {
+            return (L) vertices[i];
+        }
+
+        private long degree(int i) {
+            return prefix[i + 1] - prefix[i];
+        }
+
+        private static ConcurrentModificationException modified(Object vertex) {
+            return new ConcurrentModificationException("Out-degree of " + vertex + " changed during traversal");
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super WeightedEdge<L>> action) {
+            while (row == null) {
+                if (next >= end) {
+                    return false;
+                }
+                long degree = degree(next);
+                L source = vertex(next++);
+                if (degree > 0) {
+                    Map<L, Integer> targets = graph.targets(source);
+                    if (targets.size() != degree) {
+                        throw modified(source);
+                    }
+                    row = targets.entrySet().iterator();
+                    rowSource = source;
+                    rowRemaining = degree;
+                }
+            }
+            Map.Entry<L, Integer> edge = row.next();
+            L source = rowSource;
+            if (--rowRemaining == 0) {
+                row = null;
+                rowSource = null;
+            }
+            action.accept(new WeightedEdge<>(source, edge.getKey(), edge.getValue()));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super WeightedEdge<L>> action) {
+            while (row != null) {
+                tryAdvance(action);
+            }
+            for (; next < end; next++) {
+                long degree = degree(next);
+                if (degree == 0) {
+                    continue;
+                }
+                L source = vertex(next);
+                visited = 0;
+                if (graph instanceof TraversableGraph) {
+                    ((TraversableGraph<L>) graph).forEachTarget(source, (target, weight) -> {
+                        visited++;
+                        action.accept(new WeightedEdge<>(source, target, weight));
+                    });
+                } else {
+                    for (Map.Entry<L, Integer> edge : graph.targets(source).entrySet()) {
+                        visited++;
+                        action.accept(new WeightedEdge<>(source, edge.getKey(), edge.getValue()));
+                    }
+                }
+                if (visited != degree) {
+                    throw modified(source);
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<WeightedEdge<L>> trySplit() {
+            if (end - next < 2) {
+                return null;
+            }
+            // first vertex whose prefix reaches the middle edge, kept strictly inside (next, end);
+            // the row in progress, if any, stays with this half
+            long middle = prefix[next] + estimateSize() / 2;
+            int lo = next + 1;
+            int hi = end - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (prefix[mid] < middle) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            VertexEdges<L> prefixPart = new VertexEdges<>(this, next, lo);
+            next = lo;
+            return prefixPart;
+        }
+
+        @Override
+        public long estimateSize() {
+            return rowRemaining + prefix[end] - prefix[next];
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    private static final class OptimisticGraph<L> implements Graph<L> {
+
+        private final Graph<L> graph;
+        private final StampedLock lock = new StampedLock();
+
+        // Abstraction function:
+        //   AF = the graph represented by graph
+        // Representation invariant:
+        //   graph != null
+        // Safety from rep exposure:
+        //   graph is never handed out; reads return unmodifiable copies
+        // Thread safety argument:
+        //   mutators hold the write lock; a read result is only returned if it was made
+        //     under the read lock or under an optimistic stamp that validated afterwards,
+        //     i.e. with no write in between
+
+        OptimisticGraph(Graph<L> graph) {
+            if (graph == null) {
+                throw new IllegalArgumentException("Graph cannot be null");
+            }
+            this.graph = graph;
+        }
+
+        private <T> T read(Supplier<T> copy) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    T result = copy.get();
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException e) {
+                    // saw the graph mid-write; the read below repeats it consistently
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return copy.get();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        public boolean add(L vertex) {
+            long stamp = lock.writeLock();
+            try {
+                return graph.add(vertex);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public int set(L source, L target, int weight) {
+            long stamp = lock.writeLock();
+            try {
+                return graph.set(source, target, weight);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public boolean remove(L vertex) {
+            long stamp = lock.writeLock();
+            try {
+                return graph.remove(vertex);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public Set<L> vertices() {
+            return read(() -> Collections.unmodifiableSet(new HashSet<>(graph.vertices())));
+        }
+
+        @Override
+        public Map<L, Integer> sources(L target) {
+            return read(() -> Collections.unmodifiableMap(new HashMap<>(graph.sources(target))));
+        }
+
+        @Override
+        public Map<L, Integer> targets(L source) {
+            return read(() -> Collections.unmodifiableMap(new HashMap<>(graph.targets(source))));
+        }
+
+        @Override
+        public String toString() {
+            return read(graph::toString);
+        }
+    }
+
+    private static final class SynchronizedGraph<L> implements Graph<L> {
+
+        private final Graph<L> graph;
+
+        // Abstraction function:
+        //   AF = the graph represented by graph
+        // Representation invariant:
+        //   graph != null
+        // Safety from rep exposure:
+        //   graph is never handed out; reads return unmodifiable copies
+        // Thread safety argument:
+        //   every method holds the lock on this wrapper while it touches graph
+
+        SynchronizedGraph(Graph<L> graph) {
+            if (graph == null) {
+                throw new IllegalArgumentException("Graph cannot be null");
+            }
+            this.graph = graph;
+        }
+
+        @Override
+        public synchronized boolean add(L vertex) {
+            return graph.add(vertex);
+        }
+
+        @Override
+        public synchronized int set(L source, L target, int weight) {
+            return graph.set(source, target, weight);
+        }
+
+        @Override
+        public synchronized boolean remove(L vertex) {
+            return graph.remove(vertex);
+        }
+
+        @Override
+        public synchronized Set<L> vertices() {
+            return Collections.unmodifiableSet(new HashSet<>(graph.vertices()));
+        }
+
+        @Override
+        public synchronized Map<L, Integer> sources(L target) {
+            return Collections.unmodifiableMap(new HashMap<>(graph.sources(target)));
+        }
+
+        @Override
+        public synchronized Map<L, Integer> targets(L source) {
+            return Collections.unmodifiableMap(new HashMap<>(graph.targets(source)));
+        }
+
+        @Override
+        public synchronized String toString() {
+            return graph.toString();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * A mutable weighted directed graph over dense primitive int vertex ids.
+ *
+ * <p>Vertex ids are small nonnegative ints, normally issued by a
+ * {@link VertexDictionary}. Edge weights live in a {@link LongIntHashMap}
+ * keyed by the packed (source, target) pair, and each vertex keeps plain
+ * int arrays of its out- and in-neighbours, so no operation boxes a vertex
+ * or a weight. Use {@link IntGraphAdapter} to view an IntGraph with its
+ * dictionary as a {@link Graph}.
+ */
+public final class IntGraph {
+
+    /**
+     * Callback receiving the edges of a vertex one at a time.
+     */
+    public interface IntEdgeVisitor {
+
+        /**
+         * Visit one edge.
+         *
+         * @param other id of the vertex at the other end of the edge
+         * @param weight positive weight of the edge
+         */
+        void visit(int other, int weight);
+    }
+
+    private static final int[] NO_NEIGHBOURS = new int[0];
+
+    private static final boolean ASSERTIONS = IntGraph.class.desiredAssertionStatus();
+
+    private final LongIntHashMap weights;
+    private boolean[] present;
+    private int[][] out;
+    private int[] outDegree;
+    private int[][] in;
+    private int[] inDegree;
+    private int vertexCount = 0;
+    private int outEntries = 0;
+    private int inEntries = 0;
+
+    // Abstraction function:
+    //   AF = the graph with vertices { v | present[v] } and an edge from s to t with
+    //     weight w for every weights entry pack(s, t) -> w
+    // Representation invariant:
+    //   present, out, outDegree, in and inDegree have the same length; vertexCount counts
+    //     the true entries of present; outEntries and inEntries are the sums of outDegree
+    //     and inDegree, and both equal weights.size(); every weight is positive; both endpoints of every edge
+    //     are present; t is in out[s][0..outDegree[s]) iff s is in in[t][0..inDegree[t]) iff
+    //     weights has a key pack(s, t); neighbour rows hold no duplicates
+    // Safety from rep exposure:
+    //   all fields are private and arrays are never handed out
+
+    /**
+     * Make an empty graph.
+     *
+     * @param expectedVertices expected largest vertex id plus one, nonnegative
+     * @param expectedEdges expected number of edges, nonnegative
+     */
+    public IntGraph(int expectedVertices, int expectedEdges) {
+        int capacity = Math.max(4, expectedVertices);
+        present = new boolean[capacity];
+        out = new int[capacity][];
+        in = new int[capacity][];
+        Arrays.fill(out, NO_NEIGHBOURS);
+        Arrays.fill(in, NO_NEIGHBOURS);
+        outDegree = new int[capacity];
+        inDegree = new int[capacity];
+        weights = new LongIntHashMap(expectedEdges);
+        checkRep();
+    }
+
+    /**
+     * Make an empty graph with default capacity.
+     */
+    public IntGraph() {
+        this(16, 16);
+    }
+
+    private void checkRep() {
+        if (!ASSERTIONS) {
+            return;
+        }
+        assert out.length == present.length && in.length == present.length : "vertex arrays must agree";
+        int edges = 0;
+        for (int s = 0; s < present.length; s++) {
+            assert present[s] || outDegree[s] == 0 && inDegree[s] == 0 : "absent vertices have no edges";
+            for (int i = 0; i < outDegree[s]; i++) {
+                assert weights.get(pack(s, out[s][i]), 0) > 0 : "neighbour without a weight";
+            }
+            edges += outDegree[s];
+        }
+        assert edges == weights.size() : "adjacency and weight map disagree";
+        assert edges == outEntries && edges == inEntries : "entry counts out of date";
+    }
+
+    // Checks the rep after a mutation that touched only the edge from source to target,
+    // in O(1): the edge's weight, the endpoints' degrees, and the entry counts.
+    private void checkRep(int source, int target) {
+        if (!ASSERTIONS) {
+            return;
+        }
+        assert outEntries == weights.size() && inEntries == weights.size() : "adjacency and weight map disagree";
+        if (weights.get(pack(source, target), 0) > 0) {
+            assert contains(source) && contains(target) : "edge endpoints must be present";
+            assert outDegree[source] > 0 && inDegree[target] > 0 : "edge missing from the adjacency rows";
+        }
+        assert !contains(source) || outDegree[source] <= out[source].length : "degrees must fit their rows";
+        assert !contains(target) || inDegree[target] <= in[target].length : "degrees must fit their rows";
+    }
+
+    // Checks the rep after removing vertex, in O(1).
+    private void checkRemoved(int vertex) {
+        if (!ASSERTIONS) {
+            return;
+        }
+        assert outEntries == weights.size() && inEntries == weights.size() : "adjacency and weight map disagree";
+        assert !present[vertex] && outDegree[vertex] == 0 && inDegree[vertex] == 0 : "removed vertex has edges";
+    }
+
+    private static long pack(int source, int target) {
+        return (long) source << 32 | (target & 0xFFFFFFFFL);
+    }
+
+    private void ensureCapacity(int vertex) {
+        if (vertex < 0) {
+            throw new IllegalArgumentException("Vertex ids must be nonnegative");
+        }
+        if (vertex < present.length) {
+            return;
+        }
+        int capacity = Math.max(vertex + 1, present.length * 2);
+        int old = present.length;
+        present = Arrays.copyOf(present, capacity);
+        out = Arrays.copyOf(out, capacity);
+        in = Arrays.copyOf(in, capacity);
+        Arrays.fill(out, old, capacity, NO_NEIGHBOURS);
+        Arrays.fill(in, old, capacity, NO_NEIGHBOURS);
+        outDegree = Arrays.copyOf(outDegree, capacity);
+        inDegree = Arrays.copyOf(inDegree, capacity);
+    }
+
+    /**
+     * @param vertex a vertex id
+     * @return true iff vertex is in this graph
+     */
+    public boolean contains(int vertex) {
+        return vertex >= 0 && vertex < present.length && present[vertex];
+    }
+
+    /**
+     * Add a vertex to this graph.
+     *
+     * @param vertex nonnegative vertex id
+     * @return true if this graph did not already include vertex
+     */
+    public boolean add(int vertex) {
+        ensureCapacity(vertex);
+        if (present[vertex]) {
+            return false;
+        }
+        present[vertex] = true;
+        vertexCount++;
+        return true;
+    }
+
+    /**
+     * Add, change, or remove a weighted directed edge, with the same meaning
+     * as {@link Graph#set(Object, Object, int)}.
+     *
+     * @param source nonnegative source id
+     * @param target nonnegative target id
+     * @param weight nonnegative weight of the edge
+     * @return the previous weight of the edge, or zero if there was no such edge
+     */
+    public int set(int source, int target, int weight) {
+        // checked on every path: pack(-1, -1) is the map's free-slot key
+        if (source < 0 || target < 0) {
+            throw new IllegalArgumentException("Vertex ids must be nonnegative");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        long key = pack(source, target);
+        if (weight == 0) {
+            int previous = weights.remove(key, 0);
+            if (previous != 0) {
+                outDegree[source] = unlink(out[source], outDegree[source], target);
+                inDegree[target] = unlink(in[target], inDegree[target], source);
+                outEntries--;
+                inEntries--;
+            }
+            checkRep(source, target);
+            return previous;
+        }
+        add(source);
+        add(target);
+        int previous = weights.put(key, weight, 0);
+        if (previous == 0) {
+            out[source] = append(out[source], outDegree[source]++, target);
+            in[target] = append(in[target], inDegree[target]++, source);
+            outEntries++;
+            inEntries++;
+        }
+        checkRep(source, target);
+        return previous;
+    }
+
+    /**
+     * @param source a vertex id
+     * @param target a vertex id
+     * @return the weight of the edge from source to target, or zero if there is none
+     */
+    public int weight(int source, int target) {
+        return source < 0 || target < 0 ? 0 : weights.get(pack(source, target), 0);
+    }
+
+    /**
+     * Remove a vertex and every edge to or from it.
+     *
+     * @param vertex a vertex id
+     * @return true if this graph included vertex
+     */
+    public boolean remove(int vertex) {
+        if (!contains(vertex)) {
+            return false;
+        }
+        for (int i = 0; i < outDegree[vertex]; i++) {
+            int target = out[vertex][i];
+            weights.remove(pack(vertex, target), 0);
+            if (target != vertex) {
+                inDegree[target] = unlink(in[target], inDegree[target], vertex);
+                inEntries--;
+            }
+        }
+        for (int i = 0; i < inDegree[vertex]; i++) {
+            int source = in[vertex][i];
+            if (source != vertex) {
+                weights.remove(pack(source, vertex), 0);
+                outDegree[source] = unlink(out[source], outDegree[source], vertex);
+                outEntries--;
+            }
+        }
+        outEntries -= outDegree[vertex];
+        inEntries -= inDegree[vertex];
+        out[vertex] = NO_NEIGHBOURS;
+        in[vertex] = NO_NEIGHBOURS;
+        outDegree[vertex] = 0;
+        inDegree[vertex] = 0;
+        present[vertex] = false;
+        vertexCount--;
+        checkRemoved(vertex);
+        return true;
+    }
+
+    /**
+     * @return number of vertices in this graph
+     */
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return number of edges in this graph
+     */
+    public int edgeCount() {
+        return weights.size();
+    }
+
+    /**
+     * @param vertex a vertex id
+     * @return number of edges leaving vertex
+     */
+    public int outDegree(int vertex) {
+        return contains(vertex) ? outDegree[vertex] : 0;
+    }
+
+    /**
+     * @param vertex a vertex id
+     * @return number of edges entering vertex
+     */
+    public int inDegree(int vertex) {
+        return contains(vertex) ? inDegree[vertex] : 0;
+    }
+
+    /**
+     * @param vertex a vertex id
+     * @param index 0 &lt;= index &lt; outDegree(vertex)
+     * @return the target of the index-th edge leaving vertex, in no particular order
+     */
+    public int target(int vertex, int index) {
+        if (index < 0 || index >= outDegree(vertex)) {
+            throw new IndexOutOfBoundsException("No out-edge " + index + " of vertex " + vertex);
+        }
+        return out[vertex][index];
+    }
+
+    /**
+     * @param vertex a vertex id
+     * @param index 0 &lt;= index &lt; inDegree(vertex)
+     * @return the source of the index-th edge entering vertex, in no particular order
+     */
+    public int source(int vertex, int index) {
+        if (index < 0 || index >= inDegree(vertex)) {
+            throw new IndexOutOfBoundsException("No in-edge " + index + " of vertex " + vertex);
+        }
+        return in[vertex][index];
+    }
+
+    /**
+     * Call visitor once for each edge leaving source, with the target and weight.
+     * The graph must not be modified while the visit is in progress.
+     *
+     * @param source a vertex id
+     * @param visitor callback for each edge
+     */
+    public void forEachTarget(int source, IntEdgeVisitor visitor) {
+        int degree = outDegree(source);
+        for (int i = 0; i < degree; i++) {
+            int target = out[source][i];
+            visitor.visit(target, weights.get(pack(source, target), 0));
+        }
+    }
+
+    /**
+     * Call visitor once for each edge entering target, with the source and weight.
+     * The graph must not be modified while the visit is in progress.
+     *
+     * @param target a vertex id
+     * @param visitor callback for each edge
+     */
+    public void forEachSource(int target, IntEdgeVisitor visitor) {
+        int degree = inDegree(target);
+        for (int i = 0; i < degree; i++) {
+            int source = in[target][i];
+            visitor.visit(source, weights.get(pack(source, target), 0));
+        }
+    }
+
+    // Appends vertex at position size of row, growing it if needed; returns the row.
+    private static int[] append(int[] row, int size, int vertex) {
+        if (size == row.length) {
+            row = Arrays.copyOf(row, Math.max(2, row.length * 2));
+        }
+        row[size] = vertex;
+        return row;
+    }
+
+    // Removes vertex from row[0..size) by moving the last entry into its place; returns the new size.
+    private static int unlink(int[] row, int size, int vertex) {
+        for (int i = 0; i < size; i++) {
+            if (row[i] == vertex) {
+                row[i] = row[size - 1];
+                return size - 1;
+            }
+        }
+        return size;
+    }
+}
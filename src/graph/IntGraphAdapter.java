@@ -0,0 +1,205 @@
+package graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link Graph} view of an {@link IntGraph} whose vertex ids are issued by a
+ * {@link VertexDictionary}.
+ *
+ * <p>Labels are translated to ids once per call and all edge data stays in
+ * the primitive IntGraph. The maps returned by {@link #sources(Object)} and
+ * {@link #targets(Object)} are read-only live views over the IntGraph rows;
+ * weights are boxed only as they are read through the {@link Map} interface.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class IntGraphAdapter<L> implements Graph<L> {
+
+    private final VertexDictionary<L> dictionary;
+    private final IntGraph graph;
+
+    // Abstraction function:
+    //   AF = the graph with a vertex dictionary.labelOf(v) for every vertex v of graph,
+    //     and an edge from labelOf(s) to labelOf(t) with weight w for every edge s -> t
+    //     with weight w of graph
+    // Representation invariant:
+    //   the ids with a label in dictionary are exactly the vertices of graph
+    // Safety from rep exposure:
+    //   dictionary and graph are never handed out; vertices(), sources() and targets()
+    //     return unmodifiable views
+
+    /**
+     * Make an empty graph.
+     */
+    public IntGraphAdapter() {
+        this(new VertexDictionary<>(), new IntGraph());
+    }
+
+    /**
+     * Wrap an existing primitive graph. The caller must not use dictionary or
+     * graph directly afterwards.
+     *
+     * @param dictionary labels of the vertices of graph
+     * @param graph graph whose vertices are exactly the ids issued by dictionary
+     */
+    public IntGraphAdapter(VertexDictionary<L> dictionary, IntGraph graph) {
+        this.dictionary = dictionary;
+        this.graph = graph;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert dictionary.size() == graph.vertexCount() : "dictionary and graph disagree on vertices";
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        boolean added = graph.add(dictionary.intern(vertex));
+        checkRep();
+        return added;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        // validate before interning, so a rejected call leaves no new vertices behind
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        if (weight == 0) {
+            int s = dictionary.idOf(source);
+            int t = dictionary.idOf(target);
+            return s < 0 || t < 0 ? 0 : graph.set(s, t, 0);
+        }
+        int previous = graph.set(dictionary.intern(source), dictionary.intern(target), weight);
+        checkRep();
+        return previous;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        int id = dictionary.idOf(vertex);
+        if (id < 0) {
+            return false;
+        }
+        graph.remove(id);
+        dictionary.remove(vertex);
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return dictionary.labels();
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        return target == null ? Collections.emptyMap() : new Row(target, false);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return source == null ? Collections.emptyMap() : new Row(source, true);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (L vertex : vertices()) {
+            sb.append(vertex).append(" -> ").append(targets(vertex)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Read-only live map view of the out-edges (forward) or in-edges (!forward)
+     * of one vertex. The vertex is looked up by label on every access, since
+     * the dictionary recycles the ids of removed vertices.
+     */
+    private final class Row extends AbstractMap<L, Integer> {
+
+        private final L label;
+        private final boolean forward;
+
+        Row(L label, boolean forward) {
+            this.label = label;
+            this.forward = forward;
+        }
+
+        private int weightTo(int vertex, int other) {
+            return forward ? graph.weight(vertex, other) : graph.weight(other, vertex);
+        }
+
+        @SuppressWarnings("unchecked")
+        private int weightOf(Object key) {
+            int vertex = dictionary.idOf(label);
+            int other = dictionary.idOf((L) key);
+            return vertex < 0 || other < 0 ? 0 : weightTo(vertex, other);
+        }
+
+        private int degree(int vertex) {
+            if (vertex < 0) {
+                return 0;
+            }
+            return forward ? graph.outDegree(vertex) : graph.inDegree(vertex);
+        }
+
+        @Override
+        public int size() {
+            return degree(dictionary.idOf(label));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return weightOf(key) > 0;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            int weight = weightOf(key);
+            return weight > 0 ? weight : null;
+        }
+
+        @Override
+        public Set<Map.Entry<L, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<L, Integer>>() {
+                @Override
+                public int size() {
+                    return Row.this.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<L, Integer>> iterator() {
+                    int vertex = dictionary.idOf(label);
+                    return new Iterator<Map.Entry<L, Integer>>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < degree(vertex);
+                        }
+
+                        @Override
+                        public Map.Entry<L, Integer> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int other = forward ? graph.target(vertex, index) : graph.source(vertex, index);
+                            index++;
+                            return new SimpleImmutableEntry<>(dictionary.labelOf(other), weightTo(vertex, other));
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
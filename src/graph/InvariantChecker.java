@@ -0,0 +1,213 @@
+package graph;
+
+/**
+ * Decides how thoroughly a graph checks its representation invariant after
+ * each mutation, and keeps count of what the checks cost.
+ *
+ * <p>The modes are:
+ * <ul>
+ * <li>{@link Mode#OFF}: never check;
+ * <li>{@link Mode#SAMPLED}: check the whole representation after every Nth
+ *     mutation;
+ * <li>{@link Mode#INCREMENTAL}: after every mutation, check only the parts of
+ *     the representation the mutation touched, usually the rows of one or two
+ *     vertices, so a check costs O(degree) rather than O(V + E);
+ * <li>{@link Mode#FULL}: check the whole representation after every mutation.
+ * </ul>
+ *
+ * <p>Checks are assertions, so when assertions are disabled for this package
+ * no check runs in any mode, and none is counted. A checker keeps mutable
+ * counters and belongs to a single graph; like the graphs that use it, it is
+ * not thread-safe.
+ */
+public final class InvariantChecker {
+
+    /**
+     * How much of the representation to check after a mutation.
+     */
+    public enum Mode {
+        /** Never check. */
+        OFF,
+        /** Check everything after every Nth mutation. */
+        SAMPLED,
+        /** Check what each mutation touched. */
+        INCREMENTAL,
+        /** Check everything after every mutation. */
+        FULL
+    }
+
+    private static final boolean ASSERTIONS = InvariantChecker.class.desiredAssertionStatus();
+
+    private final Mode mode;
+    private final int period;
+    private long mutations = 0;
+    private long fullChecks = 0;
+    private long incrementalChecks = 0;
+    private long nanos = 0;
+
+    // Abstraction function:
+    //   AF = a checking policy of the given mode (with one full check every period
+    //     mutations if SAMPLED), having seen the given number of mutations and run the
+    //     given numbers of full and incremental checks, taking nanos in total
+    // Representation invariant:
+    //   mode != null; period >= 1; period == 1 unless mode == SAMPLED; counters >= 0
+    // Safety from rep exposure:
+    //   all fields are primitives or immutable
+
+    private InvariantChecker(Mode mode, int period) {
+        this.mode = mode;
+        this.period = period;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert mode != null : "mode must be non-null";
+        assert period >= 1 && (period == 1 || mode == Mode.SAMPLED) : "only SAMPLED has a period";
+        assert mutations >= 0 && fullChecks >= 0 && incrementalChecks >= 0 && nanos >= 0 : "counters must be non-negative";
+    }
+
+    /**
+     * @return a checker that never checks
+     */
+    public static InvariantChecker off() {
+        return new InvariantChecker(Mode.OFF, 1);
+    }
+
+    /**
+     * @param period number of mutations per full check, positive
+     * @return a checker that checks everything after every period-th mutation
+     */
+    public static InvariantChecker sampled(int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        return new InvariantChecker(Mode.SAMPLED, period);
+    }
+
+    /**
+     * @return a checker that checks what each mutation touched
+     */
+    public static InvariantChecker incremental() {
+        return new InvariantChecker(Mode.INCREMENTAL, 1);
+    }
+
+    /**
+     * @return a checker that checks everything after every mutation
+     */
+    public static InvariantChecker full() {
+        return new InvariantChecker(Mode.FULL, 1);
+    }
+
+    /**
+     * @return the mode of this checker
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * @return number of mutations per full check if the mode is SAMPLED, otherwise 1
+     */
+    public int period() {
+        return period;
+    }
+
+    /**
+     * Called by a graph after a mutation.
+     *
+     * @param full checks the whole representation
+     * @param incremental checks the part of the representation the mutation
+     *        touched, or null if only a full check is meaningful
+     */
+    void afterMutation(Runnable full, Runnable incremental) {
+        if (!ASSERTIONS || mode == Mode.OFF) {
+            return;
+        }
+        mutations++;
+        switch (mode) {
+        case SAMPLED:
+            if (mutations % period == 0) {
+                runFull(full);
+            }
+            break;
+        case INCREMENTAL:
+            if (incremental == null) {
+                runFull(full);
+            } else {
+                long start = System.nanoTime();
+                incremental.run();
+                nanos += System.nanoTime() - start;
+                incrementalChecks++;
+            }
+            break;
+        default:
+            runFull(full);
+            break;
+        }
+    }
+
+    /**
+     * Called by a graph at the end of a batch of mutations whose individual
+     * checks were skipped; checks everything unless the mode is OFF.
+     *
+     * @param full checks the whole representation
+     */
+    void afterBatch(Runnable full) {
+        if (ASSERTIONS && mode != Mode.OFF) {
+            runFull(full);
+        }
+    }
+
+    private void runFull(Runnable full) {
+        long start = System.nanoTime();
+        full.run();
+        nanos += System.nanoTime() - start;
+        fullChecks++;
+    }
+
+    /**
+     * @return number of mutations seen while checks were enabled
+     */
+    public long mutations() {
+        return mutations;
+    }
+
+    /**
+     * @return number of checks of the whole representation run
+     */
+    public long fullChecks() {
+        return fullChecks;
+    }
+
+    /**
+     * @return number of checks of touched parts of the representation run
+     */
+    public long incrementalChecks() {
+        return incrementalChecks;
+    }
+
+    /**
+     * @return total time spent in checks, in nanoseconds
+     */
+    public long nanos() {
+        return nanos;
+    }
+
+    /**
+     * Reset all counters to zero.
+     */
+    public void reset() {
+        mutations = fullChecks = incrementalChecks = nanos = 0;
+    }
+
+    /**
+     * @return a one-line cost report, e.g.
+     *         "INCREMENTAL: 1000 mutations, 0 full + 1000 incremental checks, 1.234 ms"
+     */
+    @Override
+    public String toString() {
+        String name = mode == Mode.SAMPLED ? "SAMPLED(1/" + period + ")" : mode.name();
+        return String.format("%s: %d mutations, %d full + %d incremental checks, %.3f ms",
+                name, mutations, fullChecks, incrementalChecks, nanos / 1e6);
+    }
+}
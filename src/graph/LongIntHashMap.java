@@ -0,0 +1,149 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * A mutable map from primitive long keys to primitive int values, using open
+ * addressing with linear probing so that no key, value or entry is ever boxed.
+ * Removal shifts later entries of the probe run back instead of leaving
+ * tombstones, so lookups never slow down after heavy churn.
+ *
+ * <p>The key {@link #FREE} (-1L) is reserved to mark empty slots and cannot be
+ * stored.
+ */
+final class LongIntHashMap {
+
+    /** Key reserved for empty slots. */
+    static final long FREE = -1L;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    // Abstraction function:
+    //   AF = { keys[i] -> values[i] | keys[i] != FREE }
+    // Representation invariant:
+    //   keys.length == values.length is a power of two, mask == keys.length - 1,
+    //   size is the number of non-FREE keys and size <= keys.length * LOAD_FACTOR,
+    //   keys are distinct, and every key sits in the probe run starting at slot(key)
+    // Safety from rep exposure:
+    //   arrays are never handed out
+
+    /**
+     * Make an empty map sized to hold the expected number of entries without resizing.
+     *
+     * @param expectedSize expected number of entries, nonnegative
+     */
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) * 2 - 1);
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @return number of entries in this map
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key key to look up, not FREE
+     * @param missing value to return if key is absent
+     * @return the value for key, or missing if key is absent
+     */
+    int get(long key, int missing) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == FREE) {
+                return missing;
+            }
+        }
+    }
+
+    /**
+     * @param key key to store, not FREE
+     * @param value value to associate with key
+     * @param missing value to return if key was absent
+     * @return the previous value for key, or missing if key was absent
+     */
+    int put(long key, int value, int missing) {
+        assert key != FREE : "FREE is reserved";
+        int i = slot(key);
+        for (; keys[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length * 2);
+        }
+        return missing;
+    }
+
+    /**
+     * @param key key to remove
+     * @param missing value to return if key was absent
+     * @return the value that was associated with key, or missing if key was absent
+     */
+    int remove(long key, int missing) {
+        int i = slot(key);
+        for (; keys[i] != key; i = (i + 1) & mask) {
+            if (keys[i] == FREE) {
+                return missing;
+            }
+        }
+        int previous = values[i];
+        // shift back later entries of the run whose home slot is not between the gap and them
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = FREE;
+        size--;
+        return previous;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != FREE) {
+                int j = slot(key);
+                while (keys[j] != FREE) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = key;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,862 @@
+package graph;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A graph of String labels whose edges live on disk in a log-structured
+ * merge tree, for graphs whose edges do not fit in memory.
+ *
+ * <p>Vertex labels are given dense int ids, and each edge is stored twice,
+ * keyed by the packed pair (source id, target id) in a forward tree and by
+ * (target id, source id) in a reverse tree. Updates go to an in-memory sorted
+ * memtable per tree; when it holds a set number of entries it is written out
+ * as an immutable, sorted, memory-mapped segment file, and the removal of an
+ * edge is written as an entry of weight 0 (a tombstone). A lookup consults the
+ * memtable and then the segments from newest to oldest, with a binary search
+ * in each; {@link #targets(String)} is a range scan of the forward tree and
+ * {@link #sources(String)} of the reverse tree. Once a tree has more than a
+ * few segments, a background thread merges them into one, dropping shadowed
+ * entries and tombstones.
+ *
+ * <p>Heap use for edges is bounded by the memtable size; segments are read
+ * through the operating system's page cache. The vertex dictionary, however,
+ * is kept in memory, so heap use still grows with the number of vertices.
+ *
+ * <p>{@link #flush()} and {@link #close()} make every update so far durable.
+ * Updates after the last flush are lost if the process dies; wrap the graph
+ * in a log such as the one {@link DurableGraph} keeps if they must not be.
+ *
+ * <h3>Directory layout</h3>
+ * <pre>
+ *   MANIFEST       text: "lsm-graph 1", then lines "dictionary BYTES", "next N",
+ *                  "forward NAME...", "reverse NAME..." listing live segments oldest first
+ *   dictionary.log vertex records, each { byte kind (0 add, 1 remove), int length, UTF-8 bytes };
+ *                  replaying them into a {@link VertexDictionary} reproduces the ids
+ *   segment-N.seg  { int magic, int version, long count } then count x { long key, int weight }
+ *                  sorted by key, where key = id &lt;&lt; 32 | other id; all little-endian
+ * </pre>
+ * Like the other mutable graphs in this package, an LsmGraph must be used by
+ * one thread at a time; compaction synchronizes with it internally.
+ */
+public final class LsmGraph implements Graph<String>, AutoCloseable {
+
+    /** Default number of memtable entries per tree before a flush. */
+    public static final int DEFAULT_MEMTABLE_ENTRIES = 1 << 20;
+
+    // A tree with more segments than this is compacted.
+    static final int MAX_SEGMENTS = 4;
+
+    private static final int SEGMENT_MAGIC = 0x474D534C;
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+    private static final int ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int ENTRIES_PER_PAGE = (1 << 30) / ENTRY_BYTES;
+    private static final String MANIFEST = "MANIFEST";
+    private static final String DICTIONARY = "dictionary.log";
+    private static final byte ADD = 0;
+    private static final byte REMOVE = 1;
+
+    private final Path directory;
+    private final int memtableEntries;
+
+    private final VertexDictionary<String> dictionary = new VertexDictionary<>();
+    private final FileChannel dictionaryLog;
+    private ByteBuffer dictionaryPending = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+    // length of the dictionary log known to be on disk; assigned under the graph's monitor,
+    // which the compaction thread holds when it writes the manifest
+    private long dictionaryBytes;
+
+    private final TreeMap<Long, Integer> forwardMemtable = new TreeMap<>();
+    private final TreeMap<Long, Integer> reverseMemtable = new TreeMap<>();
+
+    // segments oldest first; replaced wholesale under the graph's monitor, read without it
+    private volatile List<Segment> forward;
+    private volatile List<Segment> reverse;
+    private long nextSegment;
+
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lsm-graph-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> compaction = null;
+    private volatile IOException compactionFailure = null;
+    // replaced segment files not deleted yet, guarded by the graph's monitor
+    private final List<Path> obsolete = new ArrayList<>();
+    private boolean closed = false;
+
+    // Abstraction function:
+    //   AF = the graph with vertices dictionary.labels() and an edge from s to t with
+    //     weight w > 0 iff the newest entry for pack(id(s), id(t)) in forwardMemtable and
+    //     then forward, newest segment first, has weight w
+    // Representation invariant:
+    //   forward and reverse hold the same entries with each key's halves swapped, counting
+    //     memtables and segments together and newest first; every segment is sorted by key;
+    //     both endpoints of every live edge have ids; memtables have fewer than
+    //     memtableEntries entries between operations
+    // Safety from rep exposure:
+    //   targets() and sources() return new maps; vertices() is an unmodifiable view;
+    //     segments are read-only and never handed out
+
+    private LsmGraph(Path directory, int memtableEntries, FileChannel dictionaryLog, long dictionaryBytes,
+            List<Segment> forward, List<Segment> reverse, long nextSegment) {
+        this.directory = directory;
+        this.memtableEntries = memtableEntries;
+        this.dictionaryLog = dictionaryLog;
+        this.dictionaryBytes = dictionaryBytes;
+        this.forward = forward;
+        this.reverse = reverse;
+        this.nextSegment = nextSegment;
+    }
+
+    private void checkRep() {
+        assert forwardMemtable.size() == reverseMemtable.size() : "memtables must mirror each other";
+        assert forwardMemtable.size() < memtableEntries : "memtables must be flushed when full";
+    }
+
+    /**
+     * Open the graph stored in a directory, with the default memtable size.
+     *
+     * @param directory directory of the graph's files; created if missing
+     * @return the graph as of its last flush
+     * @throws IOException if the files cannot be read or are not valid
+     */
+    public static LsmGraph open(Path directory) throws IOException {
+        return open(directory, DEFAULT_MEMTABLE_ENTRIES);
+    }
+
+    /**
+     * Open the graph stored in a directory.
+     *
+     * @param directory directory of the graph's files; created if missing
+     * @param memtableEntries number of edge updates buffered in memory before
+     *        they are written to a new segment; positive
+     * @return the graph as of its last flush
+     * @throws IOException if the files cannot be read or are not valid
+     */
+    public static LsmGraph open(Path directory, int memtableEntries) throws IOException {
+        if (memtableEntries <= 0) {
+            throw new IllegalArgumentException("Memtable size must be positive");
+        }
+        Files.createDirectories(directory);
+        long dictionaryBytes = 0;
+        long nextSegment = 0;
+        List<String> forwardNames = new ArrayList<>();
+        List<String> reverseNames = new ArrayList<>();
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals("lsm-graph 1")) {
+                throw new IOException("Not an LSM graph manifest, or an unsupported version");
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                String[] words = line.split(" ");
+                try {
+                    switch (words[0]) {
+                    case "dictionary":
+                        dictionaryBytes = Long.parseLong(words[1]);
+                        break;
+                    case "next":
+                        nextSegment = Long.parseLong(words[1]);
+                        break;
+                    case "forward":
+                        forwardNames.addAll(Arrays.asList(words).subList(1, words.length));
+                        break;
+                    case "reverse":
+                        reverseNames.addAll(Arrays.asList(words).subList(1, words.length));
+                        break;
+                    default:
+                        throw new IOException("Unexpected manifest line: " + line);
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Malformed manifest line: " + line, e);
+                }
+            }
+        }
+
+        // segments and manifests not named by the manifest were never committed or are
+        // obsolete, including replaced segments that could not be deleted while mapped
+        Set<String> live = new HashSet<>(forwardNames);
+        live.addAll(reverseNames);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (name.endsWith(".seg") && !live.contains(name)) {
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        // still mapped by a graph not yet collected; a later open retries
+                    }
+                }
+            }
+        }
+        List<Segment> forward = new ArrayList<>();
+        for (String name : forwardNames) {
+            forward.add(Segment.open(directory.resolve(name)));
+        }
+        List<Segment> reverse = new ArrayList<>();
+        for (String name : reverseNames) {
+            reverse.add(Segment.open(directory.resolve(name)));
+        }
+
+        FileChannel dictionaryLog = FileChannel.open(directory.resolve(DICTIONARY),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (dictionaryLog.size() < dictionaryBytes) {
+            dictionaryLog.close();
+            throw new IOException("Dictionary is shorter than the manifest says");
+        }
+        dictionaryLog.truncate(dictionaryBytes);
+        dictionaryLog.position(dictionaryBytes);
+        LsmGraph graph = new LsmGraph(directory, memtableEntries, dictionaryLog, dictionaryBytes,
+                Collections.unmodifiableList(forward), Collections.unmodifiableList(reverse), nextSegment);
+        graph.replayDictionary();
+        graph.maybeCompact();
+        return graph;
+    }
+
+    private void replayDictionary() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(dictionaryBytes, 1 << 20)).order(ByteOrder.LITTLE_ENDIAN);
+        long position = 0;
+        buffer.limit(0);
+        byte[] scratch = new byte[64];
+        while (position < dictionaryBytes || buffer.hasRemaining()) {
+            if (buffer.remaining() < 1 + Integer.BYTES) {
+                position = refill(buffer, position);
+            }
+            byte kind = buffer.get();
+            int length = buffer.getInt();
+            if (length < 0 || length > dictionaryBytes) {
+                throw new IOException("Corrupt dictionary record");
+            }
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            }
+            for (int read = 0; read < length; ) {
+                if (!buffer.hasRemaining()) {
+                    position = refill(buffer, position);
+                }
+                int chunk = Math.min(buffer.remaining(), length - read);
+                buffer.get(scratch, read, chunk);
+                read += chunk;
+            }
+            String label = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            if (kind == ADD) {
+                dictionary.intern(label);
+            } else if (kind == REMOVE) {
+                dictionary.remove(label);
+            } else {
+                throw new IOException("Unknown dictionary record type " + kind);
+            }
+        }
+    }
+
+    // Moves the unread bytes of buffer to its start and reads more of the dictionary after them;
+    // position is the file offset just past the bytes already in buffer.
+    private long refill(ByteBuffer buffer, long position) throws IOException {
+        buffer.compact();
+        while (buffer.hasRemaining() && position < dictionaryBytes) {
+            int read = dictionaryLog.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Truncated dictionary");
+            }
+            position += read;
+        }
+        buffer.flip();
+        return position;
+    }
+
+    // Keys
+
+    private static long pack(int high, int low) {
+        return (long) high << 32 | (low & 0xFFFFFFFFL);
+    }
+
+    private static int high(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int low(long key) {
+        return (int) key;
+    }
+
+    // Mutators
+
+    @Override
+    public boolean add(String vertex) {
+        checkOpen();
+        if (vertex == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        if (dictionary.idOf(vertex) >= 0) {
+            return false;
+        }
+        intern(vertex);
+        return true;
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        checkOpen();
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        int s = dictionary.idOf(source);
+        int t = dictionary.idOf(target);
+        int previous = s < 0 || t < 0 ? 0 : weight(s, t);
+        if (weight > 0) {
+            s = intern(source);
+            t = intern(target);
+            put(s, t, weight);
+        } else if (previous > 0) {
+            put(s, t, 0);
+        }
+        return previous;
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        checkOpen();
+        int v = dictionary.idOf(vertex);
+        if (v < 0) {
+            return false;
+        }
+        for (int t : scan(forward, forwardMemtable, v).keySet()) {
+            put(v, t, 0);
+        }
+        for (int s : scan(reverse, reverseMemtable, v).keySet()) {
+            put(s, v, 0);
+        }
+        dictionary.remove(vertex);
+        logVertex(REMOVE, vertex);
+        return true;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Graph is closed");
+        }
+    }
+
+    private int intern(String label) {
+        int id = dictionary.idOf(label);
+        if (id < 0) {
+            id = dictionary.intern(label);
+            logVertex(ADD, label);
+        }
+        return id;
+    }
+
+    private void logVertex(byte kind, String label) {
+        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + Integer.BYTES + bytes.length;
+        if (dictionaryPending.remaining() < length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * dictionaryPending.capacity(),
+                    dictionaryPending.position() + length)).order(ByteOrder.LITTLE_ENDIAN);
+            dictionaryPending.flip();
+            grown.put(dictionaryPending);
+            dictionaryPending = grown;
+        }
+        dictionaryPending.put(kind).putInt(bytes.length).put(bytes);
+    }
+
+    // Records the edge in both memtables, flushing them when full.
+    private void put(int source, int target, int weight) {
+        forwardMemtable.put(pack(source, target), weight);
+        reverseMemtable.put(pack(target, source), weight);
+        if (forwardMemtable.size() >= memtableEntries) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        checkRep();
+    }
+
+    // Lookups
+
+    // Returns the weight of the edge from s to t, or 0 if there is none.
+    private int weight(int s, int t) {
+        long key = pack(s, t);
+        Integer weight = forwardMemtable.get(key);
+        if (weight != null) {
+            return weight;
+        }
+        List<Segment> segments = forward;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            int found = segments.get(i).find(key);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return 0;
+    }
+
+    // Range scan of one tree: maps each other id of the live entries keyed (id, other id) to
+    // its weight, newer entries overriding older ones.
+    private static Map<Integer, Integer> scan(List<Segment> segments, TreeMap<Long, Integer> memtable, int id) {
+        long from = pack(id, 0);
+        long to = pack(id + 1, 0);
+        Map<Integer, Integer> row = new HashMap<>();
+        for (Segment segment : segments) {
+            for (long i = segment.lowerBound(from); i < segment.count && segment.key(i) < to; i++) {
+                row.put(low(segment.key(i)), segment.weight(i));
+            }
+        }
+        for (Map.Entry<Long, Integer> entry : memtable.subMap(from, to).entrySet()) {
+            row.put(low(entry.getKey()), entry.getValue());
+        }
+        row.values().removeIf(weight -> weight == 0);
+        return row;
+    }
+
+    private Map<String, Integer> labelled(Map<Integer, Integer> row) {
+        Map<String, Integer> labelled = new HashMap<>(row.size() * 4 / 3 + 1);
+        for (Map.Entry<Integer, Integer> entry : row.entrySet()) {
+            labelled.put(dictionary.labelOf(entry.getKey()), entry.getValue());
+        }
+        return Collections.unmodifiableMap(labelled);
+    }
+
+    @Override
+    public Set<String> vertices() {
+        return dictionary.labels();
+    }
+
+    /**
+     * @return a new read-only map from the sources of edges into target to their weights,
+     *         read by a range scan of the reverse tree
+     */
+    @Override
+    public Map<String, Integer> sources(String target) {
+        int t = dictionary.idOf(target);
+        return t < 0 ? Collections.emptyMap() : labelled(scan(reverse, reverseMemtable, t));
+    }
+
+    /**
+     * @return a new read-only map from the targets of edges out of source to their weights,
+     *         read by a range scan of the forward tree
+     */
+    @Override
+    public Map<String, Integer> targets(String source) {
+        int s = dictionary.idOf(source);
+        return s < 0 ? Collections.emptyMap() : labelled(scan(forward, forwardMemtable, s));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String v : vertices()) {
+            sb.append(v).append(" -> ").append(targets(v)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    // Flushing and compaction
+
+    /**
+     * Write the memtables to new segments and make every update so far durable.
+     *
+     * @throws IOException if the files cannot be written
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        IOException failure = compactionFailure;
+        if (failure != null) {
+            throw new IOException("Background compaction failed", failure);
+        }
+        // the manifest may only name a dictionary length that is already on disk
+        long dictionaryLength = dictionaryBytes;
+        dictionaryPending.flip();
+        while (dictionaryPending.hasRemaining()) {
+            dictionaryLength += dictionaryLog.write(dictionaryPending);
+        }
+        dictionaryPending.clear();
+        dictionaryLog.force(false);
+        Segment forwardSegment = null;
+        Segment reverseSegment = null;
+        if (!forwardMemtable.isEmpty()) {
+            forwardSegment = Segment.write(newSegmentPath(), forwardMemtable.entrySet().iterator(), forwardMemtable.size());
+            reverseSegment = Segment.write(newSegmentPath(), reverseMemtable.entrySet().iterator(), reverseMemtable.size());
+        }
+        synchronized (this) {
+            dictionaryBytes = dictionaryLength;
+            if (forwardSegment != null) {
+                forward = appended(forward, forwardSegment);
+                reverse = appended(reverse, reverseSegment);
+            }
+            writeManifest();
+        }
+        forwardMemtable.clear();
+        reverseMemtable.clear();
+        maybeCompact();
+    }
+
+    private Path newSegmentPath() {
+        synchronized (this) {
+            return directory.resolve("segment-" + nextSegment++ + ".seg");
+        }
+    }
+
+    private static List<Segment> appended(List<Segment> segments, Segment segment) {
+        List<Segment> copy = new ArrayList<>(segments);
+        copy.add(segment);
+        return Collections.unmodifiableList(copy);
+    }
+
+    // Atomically replaces the manifest with one describing the current state; requires this.
+    private void writeManifest() throws IOException {
+        StringBuilder sb = new StringBuilder("lsm-graph 1\n");
+        sb.append("dictionary ").append(dictionaryBytes).append('\n');
+        sb.append("next ").append(nextSegment).append('\n');
+        sb.append("forward");
+        for (Segment segment : forward) {
+            sb.append(' ').append(segment.file.getFileName());
+        }
+        sb.append("\nreverse");
+        for (Segment segment : reverse) {
+            sb.append(' ').append(segment.file.getFileName());
+        }
+        sb.append('\n');
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Schedules a compaction if a tree has too many segments and none is running.
+    private synchronized void maybeCompact() {
+        if ((forward.size() > MAX_SEGMENTS || reverse.size() > MAX_SEGMENTS)
+                && (compaction == null || compaction.isDone())) {
+            compaction = compactor.submit(() -> {
+                try {
+                    compact(true);
+                    compact(false);
+                } catch (IOException e) {
+                    compactionFailure = e;
+                }
+            });
+        }
+    }
+
+    /**
+     * Wait for any running compaction to finish; for tests.
+     */
+    void awaitCompaction() throws Exception {
+        Future<?> running;
+        synchronized (this) {
+            running = compaction;
+        }
+        if (running != null) {
+            running.get();
+        }
+    }
+
+    /**
+     * @return number of segments in the forward tree
+     */
+    int segmentCount() {
+        return forward.size();
+    }
+
+    // Merges the current segments of one tree into one, on the compaction thread.
+    private void compact(boolean forwardTree) throws IOException {
+        List<Segment> merging = forwardTree ? forward : reverse;
+        if (merging.size() <= 1) {
+            return;
+        }
+        long upperBound = 0;
+        for (Segment segment : merging) {
+            upperBound += segment.count;
+        }
+        Segment merged = Segment.write(newSegmentPath(), new MergeIterator(merging), upperBound);
+        synchronized (this) {
+            // segments flushed meanwhile were appended after the ones merged
+            List<Segment> current = forwardTree ? forward : reverse;
+            List<Segment> replaced = new ArrayList<>();
+            if (merged.count > 0) {
+                replaced.add(merged);
+            }
+            replaced.addAll(current.subList(merging.size(), current.size()));
+            if (forwardTree) {
+                forward = Collections.unmodifiableList(replaced);
+            } else {
+                reverse = Collections.unmodifiableList(replaced);
+            }
+            writeManifest();
+        }
+        List<Path> replacedFiles = new ArrayList<>();
+        if (merged.count == 0) {
+            replacedFiles.add(merged.file);
+        }
+        for (Segment segment : merging) {
+            replacedFiles.add(segment.file);
+        }
+        deleteObsolete(replacedFiles);
+    }
+
+    // Deletes segment files the manifest no longer names. Readers still scanning them keep
+    // their mappings, but some platforms (Windows) refuse to delete a file while it is
+    // mapped, so a file that cannot be deleted yet is retried after the next compaction and
+    // at close, and open() removes any that are left; a failed delete is not a failure.
+    private void deleteObsolete(List<Path> files) {
+        List<Path> pending;
+        synchronized (this) {
+            obsolete.addAll(files);
+            pending = new ArrayList<>(obsolete);
+            obsolete.clear();
+        }
+        List<Path> kept = new ArrayList<>();
+        for (Path file : pending) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                kept.add(file);
+            }
+        }
+        synchronized (this) {
+            obsolete.addAll(kept);
+        }
+    }
+
+    /**
+     * Flush the memtables, wait for compaction to finish and close the files.
+     * Further mutations throw {@link IllegalStateException}.
+     *
+     * @throws IOException if the last updates cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            compactor.shutdown();
+            if (!compactor.awaitTermination(1, TimeUnit.HOURS)) {
+                throw new IOException("Compaction did not finish");
+            }
+            if (compactionFailure != null) {
+                throw new IOException("Background compaction failed", compactionFailure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compaction", e);
+        } finally {
+            closed = true;
+            compactor.shutdownNow();
+            dictionaryLog.close();
+            deleteObsolete(Collections.<Path>emptyList());
+        }
+    }
+
+    /**
+     * An immutable sorted run of (key, weight) entries in a memory-mapped file.
+     */
+    private static final class Segment {
+        final Path file;
+        final long count;
+        private final MappedByteBuffer[] pages;
+
+        private Segment(Path file, long count, MappedByteBuffer[] pages) {
+            this.file = file;
+            this.count = count;
+            this.pages = pages;
+        }
+
+        static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                while (header.hasRemaining()) {
+                    if (channel.read(header) < 0) {
+                        throw new IOException("Truncated segment " + file);
+                    }
+                }
+                header.flip();
+                if (header.getInt() != SEGMENT_MAGIC || header.getInt() != SEGMENT_VERSION) {
+                    throw new IOException("Not a segment file: " + file);
+                }
+                long count = header.getLong();
+                if (count < 0 || SEGMENT_HEADER_BYTES + count * ENTRY_BYTES != channel.size()) {
+                    throw new IOException("Segment size does not match its header: " + file);
+                }
+                MappedByteBuffer[] pages = new MappedByteBuffer[(int) ((count + ENTRIES_PER_PAGE - 1) / ENTRIES_PER_PAGE)];
+                for (int p = 0; p < pages.length; p++) {
+                    long first = (long) p * ENTRIES_PER_PAGE;
+                    long entries = Math.min(ENTRIES_PER_PAGE, count - first);
+                    pages[p] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            SEGMENT_HEADER_BYTES + first * ENTRY_BYTES, entries * ENTRY_BYTES);
+                    pages[p].order(ByteOrder.LITTLE_ENDIAN);
+                }
+                return new Segment(file, count, pages);
+            }
+        }
+
+        // Writes entries, which must be sorted by key, skipping none; at most upperBound of them.
+        static Segment write(Path file, Iterator<Map.Entry<Long, Integer>> entries, long upperBound)
+                throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(SEGMENT_MAGIC).putInt(SEGMENT_VERSION).putLong(0);
+                long count = 0;
+                while (entries.hasNext()) {
+                    Map.Entry<Long, Integer> entry = entries.next();
+                    if (buffer.remaining() < ENTRY_BYTES) {
+                        drain(channel, buffer);
+                    }
+                    buffer.putLong(entry.getKey()).putInt(entry.getValue());
+                    count++;
+                }
+                assert count <= upperBound : "more entries than expected";
+                drain(channel, buffer);
+                buffer.putLong(count).flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, 2 * Integer.BYTES + buffer.position());
+                }
+                channel.force(true);
+            }
+            return open(file);
+        }
+
+        private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        long key(long i) {
+            return pages[(int) (i / ENTRIES_PER_PAGE)].getLong((int) (i % ENTRIES_PER_PAGE) * ENTRY_BYTES);
+        }
+
+        int weight(long i) {
+            return pages[(int) (i / ENTRIES_PER_PAGE)].getInt((int) (i % ENTRIES_PER_PAGE) * ENTRY_BYTES + Long.BYTES);
+        }
+
+        // Returns the index of the first entry with a key at least key.
+        long lowerBound(long key) {
+            long lo = 0;
+            long hi = count;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (key(mid) < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        // Returns the weight stored for key, which may be 0, or -1 if there is no entry.
+        int find(long key) {
+            long i = lowerBound(key);
+            return i < count && key(i) == key ? weight(i) : -1;
+        }
+    }
+
+    /**
+     * Streams the newest entry for each key of a list of segments, oldest first,
+     * in key order, leaving out tombstones.
+     */
+    private static final class MergeIterator implements Iterator<Map.Entry<Long, Integer>> {
+
+        // cursor = { segment age (index in the list), next entry index }
+        private final List<Segment> segments;
+        private final PriorityQueue<long[]> cursors;
+        private Map.Entry<Long, Integer> next;
+
+        MergeIterator(List<Segment> segments) {
+            this.segments = segments;
+            // smallest key first; for equal keys the newest segment first
+            this.cursors = new PriorityQueue<>(Math.max(1, segments.size()), (a, b) -> {
+                int byKey = Long.compare(keyAt(a), keyAt(b));
+                return byKey != 0 ? byKey : Long.compare(b[0], a[0]);
+            });
+            for (int age = 0; age < segments.size(); age++) {
+                if (segments.get(age).count > 0) {
+                    cursors.add(new long[] {age, 0});
+                }
+            }
+            advance();
+        }
+
+        private long keyAt(long[] cursor) {
+            return segments.get((int) cursor[0]).key(cursor[1]);
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !cursors.isEmpty()) {
+                long[] newest = cursors.peek();
+                long key = keyAt(newest);
+                int weight = segments.get((int) newest[0]).weight(newest[1]);
+                while (!cursors.isEmpty() && keyAt(cursors.peek()) == key) {
+                    long[] cursor = cursors.poll();
+                    if (++cursor[1] < segments.get((int) cursor[0]).count) {
+                        cursors.add(cursor);
+                    }
+                }
+                if (weight > 0) {
+                    next = new AbstractMap.SimpleImmutableEntry<>(key, weight);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<Long, Integer> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Long, Integer> result = next;
+            advance();
+            return result;
+        }
+    }
+}
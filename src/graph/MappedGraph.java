@@ -0,0 +1,474 @@
+package graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable graph of String labels read directly from a memory-mapped file.
+ *
+ * <p>Opening a file maps its sections with {@link FileChannel#map} and reads
+ * nothing else, so even a very large graph is queryable at once and its data
+ * is paged in by the operating system on demand instead of being copied onto
+ * the heap. Files are written by {@link #write(Graph, Path)}.
+ *
+ * <h3>File format</h3>
+ * All numbers are little-endian.
+ * <pre>
+ *   header:
+ *     int  magic          0x4D475246 ("FRGM" read as bytes)
+ *     int  version        1
+ *     int  vertexCount    n
+ *     int  edgeCount      m
+ *     int  sectionCount   9
+ *     sectionCount x { long offset, long length }   byte ranges of the sections below
+ *   sections, in order:
+ *     0 label index     int[] open-addressing hash table, a power-of-two number of slots;
+ *                       slot holds vertex id + 1 or 0 when empty; the home slot of a label
+ *                       is derived from {@link String#hashCode()}, with linear probing
+ *     1 label offsets   int[n+1], byte offsets of each label in section 2
+ *     2 label bytes     UTF-8 bytes of the labels of vertices 0..n-1, back to back
+ *     3 forward offsets int[n+1], edges of vertex v are entries offsets[v]..offsets[v+1]-1
+ *                       of sections 4 and 5
+ *     4 forward targets int[m], target ids, increasing within each row
+ *     5 forward weights int[m], positive weights matching section 4
+ *     6 reverse offsets int[n+1], the same for edges grouped by target
+ *     7 reverse sources int[m], source ids, increasing within each row
+ *     8 reverse weights int[m], positive weights matching section 7
+ * </pre>
+ * Each section is mapped separately and must be smaller than 2 GB.
+ *
+ * <p>The maps returned by {@link #sources(String)} and {@link #targets(String)}
+ * are read-only views over the mapped data, and every mutator throws
+ * {@link UnsupportedOperationException}.
+ */
+public final class MappedGraph implements Graph<String> {
+
+    static final int MAGIC = 0x4D475246;
+    static final int VERSION = 1;
+
+    private static final int LABEL_INDEX = 0;
+    private static final int LABEL_OFFSETS = 1;
+    private static final int LABEL_BYTES = 2;
+    private static final int FORWARD_OFFSETS = 3;
+    private static final int FORWARD_TARGETS = 4;
+    private static final int FORWARD_WEIGHTS = 5;
+    private static final int REVERSE_OFFSETS = 6;
+    private static final int REVERSE_SOURCES = 7;
+    private static final int REVERSE_WEIGHTS = 8;
+    private static final int SECTIONS = 9;
+
+    private static final int HEADER_BYTES = 5 * Integer.BYTES + SECTIONS * 2 * Long.BYTES;
+
+    private final int vertexCount;
+    private final int edgeCount;
+    private final IntBuffer labelIndex;
+    private final int labelMask;
+    private final IntBuffer labelOffsets;
+    private final ByteBuffer labelBytes;
+    private final IntBuffer forwardOffsets;
+    private final IntBuffer forwardTargets;
+    private final IntBuffer forwardWeights;
+    private final IntBuffer reverseOffsets;
+    private final IntBuffer reverseSources;
+    private final IntBuffer reverseWeights;
+
+    // Abstraction function:
+    //   AF = the graph with vertices label(0..vertexCount) and an edge from label(s) to
+    //     label(forwardTargets[e]) with weight forwardWeights[e] for every s and every
+    //     forwardOffsets[s] <= e < forwardOffsets[s+1]
+    // Representation invariant:
+    //   the buffers follow the file format above; the reverse sections describe the same
+    //     edges as the forward ones
+    // Safety from rep exposure:
+    //   all buffers are read-only and never handed out; views decode labels into new Strings
+
+    private MappedGraph(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Truncated graph file header");
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a mapped graph file, or an unsupported version");
+        }
+        vertexCount = header.getInt();
+        edgeCount = header.getInt();
+        if (header.getInt() != SECTIONS) {
+            throw new IOException("Unexpected number of sections");
+        }
+        ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+        for (int i = 0; i < SECTIONS; i++) {
+            long offset = header.getLong();
+            long length = header.getLong();
+            if (offset < HEADER_BYTES || length < 0 || length > Integer.MAX_VALUE
+                    || offset + length > channel.size()) {
+                throw new IOException("Section " + i + " lies outside the file");
+            }
+            sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        labelIndex = sections[LABEL_INDEX].asIntBuffer();
+        labelMask = labelIndex.capacity() - 1;
+        labelOffsets = sections[LABEL_OFFSETS].asIntBuffer();
+        labelBytes = sections[LABEL_BYTES];
+        forwardOffsets = sections[FORWARD_OFFSETS].asIntBuffer();
+        forwardTargets = sections[FORWARD_TARGETS].asIntBuffer();
+        forwardWeights = sections[FORWARD_WEIGHTS].asIntBuffer();
+        reverseOffsets = sections[REVERSE_OFFSETS].asIntBuffer();
+        reverseSources = sections[REVERSE_SOURCES].asIntBuffer();
+        reverseWeights = sections[REVERSE_WEIGHTS].asIntBuffer();
+        if (Integer.bitCount(labelIndex.capacity()) != 1
+                || labelOffsets.capacity() != vertexCount + 1
+                || forwardOffsets.capacity() != vertexCount + 1 || reverseOffsets.capacity() != vertexCount + 1
+                || forwardTargets.capacity() != edgeCount || reverseSources.capacity() != edgeCount) {
+            throw new IOException("Section sizes do not match the header");
+        }
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert forwardOffsets.get(vertexCount) == edgeCount : "forward offsets must end at the edge count";
+        assert reverseOffsets.get(vertexCount) == edgeCount : "reverse offsets must end at the edge count";
+        assert labelOffsets.get(vertexCount) == labelBytes.capacity() : "label offsets must cover the label bytes";
+    }
+
+    /**
+     * Open a graph file written by {@link #write(Graph, Path)}.
+     *
+     * @param file path of the graph file
+     * @return a read-only graph backed by the mapped file; it remains valid after
+     *         the file is closed, and must not be used if the file is modified
+     * @throws IOException if the file cannot be read or is not a valid graph file
+     */
+    public static MappedGraph open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedGraph(channel);
+        }
+    }
+
+    /**
+     * Write a graph in the file format described above, replacing any existing file.
+     *
+     * @param graph graph to write; not modified
+     * @param file path of the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Graph<String> graph, Path file) throws IOException {
+        CsrGraph<String> csr = Graphs.freeze(graph);
+        int n = csr.vertexCount();
+
+        byte[][] labels = new byte[n][];
+        int[] labelOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            labels[v] = csr.label(v).getBytes(StandardCharsets.UTF_8);
+            long end = (long) labelOffsets[v] + labels[v].length;
+            if (end > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Labels exceed 2 GB");
+            }
+            labelOffsets[v + 1] = (int) end;
+        }
+        int slots = Integer.highestOneBit(Math.max(2, n) * 2 - 1) * 2;
+        int[] labelIndex = new int[slots];
+        for (int v = 0; v < n; v++) {
+            int slot = home(csr.label(v).hashCode(), slots - 1);
+            while (labelIndex[slot] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            labelIndex[slot] = v + 1;
+        }
+
+        long[] lengths = {
+            (long) slots * Integer.BYTES,
+            (long) (n + 1) * Integer.BYTES,
+            labelOffsets[n],
+            (long) (n + 1) * Integer.BYTES,
+            (long) csr.edgeCount() * Integer.BYTES,
+            (long) csr.edgeCount() * Integer.BYTES,
+            (long) (n + 1) * Integer.BYTES,
+            (long) csr.edgeCount() * Integer.BYTES,
+            (long) csr.edgeCount() * Integer.BYTES,
+        };
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(csr.edgeCount()).putInt(SECTIONS);
+        long offset = HEADER_BYTES;
+        for (long length : lengths) {
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Graph section exceeds 2 GB");
+            }
+            header.putLong(offset).putLong(length);
+            offset += length;
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(header);
+            writeInts(channel, buffer, labelIndex);
+            writeInts(channel, buffer, labelOffsets);
+            for (byte[] label : labels) {
+                for (byte b : label) {
+                    if (!buffer.hasRemaining()) {
+                        drain(channel, buffer);
+                    }
+                    buffer.put(b);
+                }
+            }
+            writeInts(channel, buffer, csr.offsets);
+            writeInts(channel, buffer, csr.targets);
+            writeInts(channel, buffer, csr.weights);
+            writeInts(channel, buffer, csr.reverseOffsets);
+            writeInts(channel, buffer, csr.sources);
+            writeInts(channel, buffer, csr.reverseWeights);
+            drain(channel, buffer);
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+        for (int value : values) {
+            if (buffer.remaining() < Integer.BYTES) {
+                drain(channel, buffer);
+            }
+            buffer.putInt(value);
+        }
+    }
+
+    // Writes out everything put into buffer so far and clears it.
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int home(int hash, int mask) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // Label lookups
+
+    private String label(int v) {
+        int from = labelOffsets.get(v);
+        byte[] bytes = new byte[labelOffsets.get(v + 1) - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = labelBytes.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean labelEquals(int v, byte[] bytes) {
+        int from = labelOffsets.get(v);
+        if (labelOffsets.get(v + 1) - from != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (labelBytes.get(from + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the id of the vertex with the given label, or -1 if there is none.
+    private int id(Object label) {
+        if (!(label instanceof String)) {
+            return -1;
+        }
+        byte[] bytes = ((String) label).getBytes(StandardCharsets.UTF_8);
+        for (int slot = home(label.hashCode(), labelMask); ; slot = (slot + 1) & labelMask) {
+            int entry = labelIndex.get(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            if (labelEquals(entry - 1, bytes)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; mapped graphs are read-only
+     */
+    @Override
+    public boolean add(String vertex) {
+        throw new UnsupportedOperationException("Mapped graphs are read-only");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; mapped graphs are read-only
+     */
+    @Override
+    public int set(String source, String target, int weight) {
+        throw new UnsupportedOperationException("Mapped graphs are read-only");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always; mapped graphs are read-only
+     */
+    @Override
+    public boolean remove(String vertex) {
+        throw new UnsupportedOperationException("Mapped graphs are read-only");
+    }
+
+    @Override
+    public Set<String> vertices() {
+        return new AbstractSet<String>() {
+            @Override
+            public int size() {
+                return vertexCount;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return id(o) >= 0;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < vertexCount;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return label(next++);
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        int t = id(target);
+        return t < 0 ? Collections.emptyMap()
+                : new Row(reverseOffsets.get(t), reverseOffsets.get(t + 1), reverseSources, reverseWeights);
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        int s = id(source);
+        return s < 0 ? Collections.emptyMap()
+                : new Row(forwardOffsets.get(s), forwardOffsets.get(s + 1), forwardTargets, forwardWeights);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String vertex : vertices()) {
+            sb.append(vertex).append(" -> ").append(targets(vertex)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Read-only map view of one mapped row: neighbours[from..to) are vertex ids in
+     * increasing order and rowWeights[from..to) the matching edge weights.
+     */
+    private final class Row extends AbstractMap<String, Integer> {
+
+        private final int from;
+        private final int to;
+        private final IntBuffer neighbours;
+        private final IntBuffer rowWeights;
+
+        Row(int from, int to, IntBuffer neighbours, IntBuffer rowWeights) {
+            this.from = from;
+            this.to = to;
+            this.neighbours = neighbours;
+            this.rowWeights = rowWeights;
+        }
+
+        // Returns the buffer index of the edge to the given label, or -1 if absent.
+        private int find(Object key) {
+            int id = id(key);
+            int lo = from;
+            int hi = to - 1;
+            while (id >= 0 && lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int other = neighbours.get(mid);
+                if (other < id) {
+                    lo = mid + 1;
+                } else if (other > id) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return find(key) >= 0;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            int e = find(key);
+            return e < 0 ? null : rowWeights.get(e);
+        }
+
+        @Override
+        public Set<Map.Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Integer>>() {
+                @Override
+                public int size() {
+                    return to - from;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Integer>> iterator() {
+                    return new Iterator<Map.Entry<String, Integer>>() {
+                        private int e = from;
+
+                        @Override
+                        public boolean hasNext() {
+                            return e < to;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Integer> next() {
+                            if (e >= to) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, Integer> entry =
+                                    new SimpleImmutableEntry<>(label(neighbours.get(e)), rowWeights.get(e));
+                            e++;
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
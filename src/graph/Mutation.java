@@ -0,0 +1,228 @@
+package graph;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable description of one {@link Graph} mutator call, for applying
+ * many of them at once with {@link BatchGraph#applyAll(List)}.
+ *
+ * @param <L> type of vertex labels, must be immutable
+ */
+public final class Mutation<L> {
+
+    /**
+     * The mutator a mutation calls.
+     */
+    public enum Kind {
+        /** {@link Graph#add(Object)} */
+        ADD,
+        /** {@link Graph#set(Object, Object, int)} */
+        SET,
+        /** {@link Graph#remove(Object)} */
+        REMOVE
+    }
+
+    private final Kind kind;
+    private final L vertex;
+    private final L target;
+    private final int weight;
+
+    // Abstraction function:
+    //   AF = the call add(vertex) if kind == ADD, set(vertex, target, weight) if kind == SET,
+    //     or remove(vertex) if kind == REMOVE
+    // Representation invariant:
+    //   vertex != null; target != null iff kind == SET; weight >= 0, and 0 unless kind == SET
+    // Safety from rep exposure:
+    //   all fields are private, final and immutable
+
+    private Mutation(Kind kind, L vertex, L target, int weight) {
+        this.kind = kind;
+        this.vertex = vertex;
+        this.target = target;
+        this.weight = weight;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert vertex != null : "vertex must be non-null";
+        assert (target != null) == (kind == Kind.SET) : "only SET has a target";
+        assert weight >= 0 && (weight == 0 || kind == Kind.SET) : "only SET has a weight";
+    }
+
+    /**
+     * @param <L> type of vertex labels
+     * @param vertex label of the vertex to add, not null
+     * @return the mutation {@code add(vertex)}
+     */
+    public static <L> Mutation<L> add(L vertex) {
+        if (vertex == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        return new Mutation<>(Kind.ADD, vertex, null, 0);
+    }
+
+    /**
+     * @param <L> type of vertex labels
+     * @param source label of the source vertex, not null
+     * @param target label of the target vertex, not null
+     * @param weight nonnegative weight of the edge
+     * @return the mutation {@code set(source, target, weight)}
+     */
+    public static <L> Mutation<L> set(L source, L target, int weight) {
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        return new Mutation<>(Kind.SET, source, target, weight);
+    }
+
+    /**
+     * @param <L> type of vertex labels
+     * @param vertex label of the vertex to remove, not null
+     * @return the mutation {@code remove(vertex)}
+     */
+    public static <L> Mutation<L> remove(L vertex) {
+        if (vertex == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        return new Mutation<>(Kind.REMOVE, vertex, null, 0);
+    }
+
+    /**
+     * @return which mutator this mutation calls
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the vertex added or removed, or the source of the edge set
+     */
+    public L getVertex() {
+        return vertex;
+    }
+
+    /**
+     * @return the target of the edge set, or null unless the kind is SET
+     */
+    public L getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the weight of the edge set, or 0 unless the kind is SET
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Apply this mutation to a graph.
+     *
+     * @param graph graph to modify
+     * @return an action that reverts the change, provided it runs while the graph
+     *         is in the state this mutation left it in
+     */
+    Runnable applyTo(Graph<L> graph) {
+        switch (kind) {
+        case ADD:
+            return graph.add(vertex) ? () -> graph.remove(vertex) : () -> { };
+        case SET: {
+            boolean hadSource = graph.vertices().contains(vertex);
+            boolean hadTarget = graph.vertices().contains(target);
+            int previous = graph.set(vertex, target, weight);
+            return () -> {
+                graph.set(vertex, target, previous);
+                if (!hadTarget) {
+                    graph.remove(target);
+                }
+                if (!hadSource) {
+                    graph.remove(vertex);
+                }
+            };
+        }
+        case REMOVE: {
+            if (!graph.vertices().contains(vertex)) {
+                return () -> { };
+            }
+            Map<L, Integer> targets = new HashMap<>(graph.targets(vertex));
+            Map<L, Integer> sources = new HashMap<>(graph.sources(vertex));
+            graph.remove(vertex);
+            return () -> {
+                graph.add(vertex);
+                for (Map.Entry<L, Integer> edge : targets.entrySet()) {
+                    graph.set(vertex, edge.getKey(), edge.getValue());
+                }
+                for (Map.Entry<L, Integer> edge : sources.entrySet()) {
+                    graph.set(edge.getKey(), vertex, edge.getValue());
+                }
+            };
+        }
+        default:
+            throw new AssertionError("unknown mutation kind " + kind);
+        }
+    }
+
+    /**
+     * Apply mutations to a graph in order, then run a check; if a mutation or
+     * the check throws, revert the mutations already applied, newest first, and
+     * rethrow. Implements {@link BatchGraph#applyAll(List)}.
+     *
+     * @param <L> type of vertex labels
+     * @param graph graph to modify
+     * @param mutations mutations to apply
+     * @param check run once after the last mutation, typically the graph's
+     *        representation invariant check
+     */
+    static <L> void applyAll(Graph<L> graph, List<? extends Mutation<L>> mutations, Runnable check) {
+        Deque<Runnable> undo = new ArrayDeque<>(mutations.size());
+        try {
+            for (Mutation<L> mutation : mutations) {
+                undo.push(mutation.applyTo(graph));
+            }
+            check.run();
+        } catch (RuntimeException | Error e) {
+            while (!undo.isEmpty()) {
+                undo.pop().run();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!(that instanceof Mutation)) {
+            return false;
+        }
+        Mutation<?> other = (Mutation<?>) that;
+        return kind == other.kind && vertex.equals(other.vertex)
+                && Objects.equals(target, other.target) && weight == other.weight;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, vertex, target, weight);
+    }
+
+    /**
+     * @return the mutation as a call, e.g. "set(a, b, 3)"
+     */
+    @Override
+    public String toString() {
+        switch (kind) {
+        case SET:
+            return "set(" + vertex + ", " + target + ", " + weight + ")";
+        case ADD:
+            return "add(" + vertex + ")";
+        default:
+            return "remove(" + vertex + ")";
+        }
+    }
+}
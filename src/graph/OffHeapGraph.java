@@ -0,0 +1,691 @@
+package graph;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A mutable weighted directed graph of String labels whose vertices, edges and
+ * labels are stored in direct memory outside the Java heap.
+ *
+ * <p>The graph is made of four off-heap tables plus a label arena:
+ * <ul>
+ * <li>vertex records: label hash, label location and length, heads of the
+ *     out- and in-edge lists, out- and in-degree;
+ * <li>edge records: source, target, weight and the links of the doubly linked
+ *     out-list of the source and in-list of the target;
+ * <li>an open-addressing label index from label to vertex id;
+ * <li>an open-addressing edge index from (source, target) to edge id;
+ * <li>labels themselves, UTF-8 encoded in pages of direct memory.
+ * </ul>
+ * The heap only holds the table page references, so {@code set}, edge lookup
+ * and vertex removal cost O(1) per edge touched without creating any garbage
+ * beyond the label being encoded. Ids of removed vertices and edges are
+ * recycled; the bytes of removed labels are not reclaimed until the graph is
+ * closed.
+ *
+ * <p>The maps and set returned by the query methods are read-only live views
+ * that decode labels as they are read. An OffHeapGraph must be
+ * {@link #close() closed} when it is no longer needed; every method except
+ * close throws {@link IllegalStateException} afterwards.
+ */
+public class OffHeapGraph implements Graph<String>, AutoCloseable {
+
+    private static final int NONE = -1;
+
+    // vertex record layout, in ints
+    private static final int V_HASH = 0;
+    private static final int V_PAGE = 1;
+    private static final int V_OFFSET = 2;
+    private static final int V_LENGTH = 3;  // -1 marks a free record
+    private static final int V_OUT = 4;     // head of the out-list, or next free record
+    private static final int V_IN = 5;
+    private static final int V_OUT_DEGREE = 6;
+    private static final int V_IN_DEGREE = 7;
+    private static final int VERTEX_INTS = 8;
+
+    // edge record layout, in ints
+    private static final int E_SOURCE = 0;
+    private static final int E_TARGET = 1;
+    private static final int E_WEIGHT = 2;  // 0 marks a free record
+    private static final int E_PREV_OUT = 3;
+    private static final int E_NEXT_OUT = 4; // next in the out-list, or next free record
+    private static final int E_PREV_IN = 5;
+    private static final int E_NEXT_IN = 6;
+    private static final int EDGE_INTS = 7;
+
+    // edge index slot layout, in ints; a zero edge field marks an empty slot
+    private static final int X_SOURCE = 0;
+    private static final int X_TARGET = 1;
+    private static final int X_EDGE = 2;    // edge id + 1
+    private static final int INDEX_INTS = 3;
+
+    private static final int LABEL_PAGE_BYTES = 1 << 16;
+
+    private DirectIntArray vertexTable = new DirectIntArray();
+    private DirectIntArray edgeTable = new DirectIntArray();
+    private DirectIntArray labelIndex = new DirectIntArray();  // slot holds vertex id + 1, or 0
+    private DirectIntArray edgeIndex = new DirectIntArray();
+    private List<ByteBuffer> labelPages = new ArrayList<>();
+    private int labelPageUsed = LABEL_PAGE_BYTES;
+
+    private int vertexHigh = 0;
+    private int vertexCount = 0;
+    private int freeVertex = NONE;
+    private int labelMask;
+    private int edgeHigh = 0;
+    private int edgeCount = 0;
+    private int freeEdge = NONE;
+    private int edgeMask;
+    private int outDegrees = 0;
+    private int inDegrees = 0;
+    private boolean closed = false;
+
+    // Abstraction function:
+    //   AF = the graph whose vertices are the decoded labels of the live vertex records
+    //     0..vertexHigh-1 (V_LENGTH >= 0), with an edge from label(E_SOURCE) to
+    //     label(E_TARGET) of weight E_WEIGHT for every live edge record 0..edgeHigh-1
+    //     (E_WEIGHT > 0)
+    // Representation invariant:
+    //   vertexCount live vertex records, edgeCount live edge records; free records form
+    //     the chains starting at freeVertex and freeEdge; each live edge is on exactly the
+    //     out-list of its source and the in-list of its target, and the degrees match the
+    //     list lengths; outDegrees and inDegrees are the sums of the out- and in-degrees of
+    //     the live vertices, and both equal edgeCount; labelIndex (labelMask + 1 slots) holds exactly the live vertices,
+    //     edgeIndex (edgeMask + 1 slots) exactly the live edges, each in the probe run
+    //     starting at its home slot, and both are at most half full; labels are distinct
+    // Safety from rep exposure:
+    //   all tables are private and never handed out; views decode labels into new Strings
+
+    /**
+     * Make an empty graph.
+     */
+    public OffHeapGraph() {
+        labelMask = resizeIndex(labelIndex, 16, 1) - 1;
+        edgeMask = resizeIndex(edgeIndex, 16, INDEX_INTS) - 1;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert vertexCount <= vertexHigh && edgeCount <= edgeHigh : "counts exceed issued ids";
+        assert vertexCount <= (labelMask + 1) / 2 : "label index too full";
+        assert edgeCount <= (edgeMask + 1) / 2 : "edge index too full";
+        assert outDegrees == edgeCount && inDegrees == edgeCount : "degrees must add up to the edge count";
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Graph has been closed");
+        }
+    }
+
+    /**
+     * @return number of bytes of direct memory currently held by this graph
+     */
+    public long offHeapBytes() {
+        checkOpen();
+        long bytes = vertexTable.bytes() + edgeTable.bytes() + labelIndex.bytes() + edgeIndex.bytes();
+        for (ByteBuffer page : labelPages) {
+            bytes += page.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Release all storage of this graph. The direct memory is returned to the
+     * operating system once the garbage collector reclaims the dropped buffers.
+     * Closing an already closed graph has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        vertexTable.release();
+        edgeTable.release();
+        labelIndex.release();
+        edgeIndex.release();
+        labelPages = null;
+        vertexTable = edgeTable = labelIndex = edgeIndex = null;
+    }
+
+    @Override
+    public boolean add(String vertex) {
+        checkOpen();
+        byte[] bytes = encode(vertex);
+        if (findVertex(vertex.hashCode(), bytes) != NONE) {
+            return false;
+        }
+        createVertex(vertex.hashCode(), bytes);
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        checkOpen();
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        // encode both labels first, so that a null label is rejected before any vertex is added
+        byte[] sourceBytes = encode(source);
+        byte[] targetBytes = encode(target);
+        int s;
+        int t;
+        if (weight == 0) {
+            s = findVertex(source.hashCode(), sourceBytes);
+            t = s == NONE ? NONE : findVertex(target.hashCode(), targetBytes);
+            int e = t == NONE ? NONE : findEdge(s, t);
+            if (e == NONE) {
+                return 0;
+            }
+            int previous = edgeInt(e, E_WEIGHT);
+            deleteEdge(e);
+            checkRep();
+            return previous;
+        }
+        s = findOrCreateVertex(source.hashCode(), sourceBytes);
+        t = findOrCreateVertex(target.hashCode(), targetBytes);
+        int e = findEdge(s, t);
+        if (e != NONE) {
+            int previous = edgeInt(e, E_WEIGHT);
+            setEdgeInt(e, E_WEIGHT, weight);
+            checkRep();
+            return previous;
+        }
+        createEdge(s, t, weight);
+        checkRep();
+        return 0;
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        checkOpen();
+        int v = findVertex(vertex);
+        if (v == NONE) {
+            return false;
+        }
+        for (int e = vertexInt(v, V_OUT); e != NONE; ) {
+            int next = edgeInt(e, E_NEXT_OUT);
+            deleteEdge(e);
+            e = next;
+        }
+        for (int e = vertexInt(v, V_IN); e != NONE; ) {
+            int next = edgeInt(e, E_NEXT_IN);
+            deleteEdge(e);
+            e = next;
+        }
+        deleteVertex(v);
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public Set<String> vertices() {
+        checkOpen();
+        return new AbstractSet<String>() {
+            @Override
+            public int size() {
+                checkOpen();
+                return vertexCount;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                checkOpen();
+                return o instanceof String && findVertex((String) o) != NONE;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                checkOpen();
+                return new Iterator<String>() {
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        while (from < vertexHigh && vertexInt(from, V_LENGTH) < 0) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < vertexHigh;
+                    }
+
+                    @Override
+                    public String next() {
+                        checkOpen();
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        String label = label(next);
+                        next = advance(next + 1);
+                        return label;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        checkOpen();
+        return target == null ? Collections.emptyMap() : new Row(target, false);
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        checkOpen();
+        return source == null ? Collections.emptyMap() : new Row(source, true);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String vertex : vertices()) {
+            sb.append(vertex).append(" -> ").append(targets(vertex)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    // Record accessors
+
+    private int vertexInt(int v, int field) {
+        return vertexTable.get((long) v * VERTEX_INTS + field);
+    }
+
+    private void setVertexInt(int v, int field, int value) {
+        vertexTable.set((long) v * VERTEX_INTS + field, value);
+    }
+
+    private int edgeInt(int e, int field) {
+        return edgeTable.get((long) e * EDGE_INTS + field);
+    }
+
+    private void setEdgeInt(int e, int field, int value) {
+        edgeTable.set((long) e * EDGE_INTS + field, value);
+    }
+
+    // Labels
+
+    private static byte[] encode(String label) {
+        if (label == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        return label.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String label(int v) {
+        ByteBuffer page = labelPages.get(vertexInt(v, V_PAGE));
+        byte[] bytes = new byte[vertexInt(v, V_LENGTH)];
+        int offset = vertexInt(v, V_OFFSET);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = page.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean labelEquals(int v, byte[] bytes) {
+        if (vertexInt(v, V_LENGTH) != bytes.length) {
+            return false;
+        }
+        ByteBuffer page = labelPages.get(vertexInt(v, V_PAGE));
+        int offset = vertexInt(v, V_OFFSET);
+        for (int i = 0; i < bytes.length; i++) {
+            if (page.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Copies label bytes into the arena and records their location in vertex v.
+    private void storeLabel(int v, byte[] bytes) {
+        if (bytes.length > LABEL_PAGE_BYTES - labelPageUsed) {
+            labelPages.add(ByteBuffer.allocateDirect(Math.max(LABEL_PAGE_BYTES, bytes.length)));
+            labelPageUsed = 0;
+        }
+        int page = labelPages.size() - 1;
+        ByteBuffer buffer = labelPages.get(page);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(labelPageUsed + i, bytes[i]);
+        }
+        setVertexInt(v, V_PAGE, page);
+        setVertexInt(v, V_OFFSET, labelPageUsed);
+        setVertexInt(v, V_LENGTH, bytes.length);
+        labelPageUsed += bytes.length;
+    }
+
+    // Vertices and the label index
+
+    private static int mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int findVertex(String label) {
+        return label == null ? NONE : findVertex(label.hashCode(), encode(label));
+    }
+
+    private int findVertex(int hash, byte[] bytes) {
+        for (int slot = mix(hash) & labelMask; ; slot = (slot + 1) & labelMask) {
+            int entry = labelIndex.get(slot);
+            if (entry == 0) {
+                return NONE;
+            }
+            int v = entry - 1;
+            if (vertexInt(v, V_HASH) == hash && labelEquals(v, bytes)) {
+                return v;
+            }
+        }
+    }
+
+    private int findOrCreateVertex(int hash, byte[] bytes) {
+        int v = findVertex(hash, bytes);
+        return v != NONE ? v : createVertex(hash, bytes);
+    }
+
+    private int createVertex(int hash, byte[] bytes) {
+        int v;
+        if (freeVertex != NONE) {
+            v = freeVertex;
+            freeVertex = vertexInt(v, V_OUT);
+        } else {
+            v = vertexHigh++;
+            vertexTable.ensureCapacity((long) vertexHigh * VERTEX_INTS);
+        }
+        setVertexInt(v, V_HASH, hash);
+        storeLabel(v, bytes);
+        setVertexInt(v, V_OUT, NONE);
+        setVertexInt(v, V_IN, NONE);
+        setVertexInt(v, V_OUT_DEGREE, 0);
+        setVertexInt(v, V_IN_DEGREE, 0);
+        vertexCount++;
+        if (vertexCount > (labelMask + 1) / 2) {
+            rehashLabels((labelMask + 1) * 2);
+        } else {
+            insertLabel(v);
+        }
+        return v;
+    }
+
+    private void insertLabel(int v) {
+        int slot = mix(vertexInt(v, V_HASH)) & labelMask;
+        while (labelIndex.get(slot) != 0) {
+            slot = (slot + 1) & labelMask;
+        }
+        labelIndex.set(slot, v + 1);
+    }
+
+    private void deleteVertex(int v) {
+        // find the slot of v, then shift later entries of its probe run back into the gap
+        int gap = mix(vertexInt(v, V_HASH)) & labelMask;
+        while (labelIndex.get(gap) != v + 1) {
+            gap = (gap + 1) & labelMask;
+        }
+        for (int j = (gap + 1) & labelMask; labelIndex.get(j) != 0; j = (j + 1) & labelMask) {
+            int home = mix(vertexInt(labelIndex.get(j) - 1, V_HASH)) & labelMask;
+            if (((j - home) & labelMask) >= ((j - gap) & labelMask)) {
+                labelIndex.set(gap, labelIndex.get(j));
+                gap = j;
+            }
+        }
+        labelIndex.set(gap, 0);
+        setVertexInt(v, V_LENGTH, NONE);
+        setVertexInt(v, V_OUT, freeVertex);
+        freeVertex = v;
+        vertexCount--;
+    }
+
+    // Replaces the label index by an empty one with the given number of slots and re-inserts
+    // every live vertex.
+    private void rehashLabels(int size) {
+        labelIndex.release();
+        labelIndex = new DirectIntArray();
+        labelMask = resizeIndex(labelIndex, size, 1) - 1;
+        for (int v = 0; v < vertexHigh; v++) {
+            if (vertexInt(v, V_LENGTH) >= 0) {
+                insertLabel(v);
+            }
+        }
+    }
+
+    // Makes room for the given number of slots in an empty index; returns the slot count.
+    private static int resizeIndex(DirectIntArray index, int slots, int intsPerSlot) {
+        index.ensureCapacity((long) slots * intsPerSlot);
+        return slots;
+    }
+
+    // Edges and the edge index
+
+    private int edgeHome(int source, int target) {
+        return mix((long) source << 32 | (target & 0xFFFFFFFFL)) & edgeMask;
+    }
+
+    private long edgeSlot(int slot, int field) {
+        return (long) slot * INDEX_INTS + field;
+    }
+
+    private int findEdge(int source, int target) {
+        for (int slot = edgeHome(source, target); ; slot = (slot + 1) & edgeMask) {
+            int entry = edgeIndex.get(edgeSlot(slot, X_EDGE));
+            if (entry == 0) {
+                return NONE;
+            }
+            if (edgeIndex.get(edgeSlot(slot, X_SOURCE)) == source
+                    && edgeIndex.get(edgeSlot(slot, X_TARGET)) == target) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void insertEdgeIndex(int source, int target, int e) {
+        int slot = edgeHome(source, target);
+        while (edgeIndex.get(edgeSlot(slot, X_EDGE)) != 0) {
+            slot = (slot + 1) & edgeMask;
+        }
+        edgeIndex.set(edgeSlot(slot, X_SOURCE), source);
+        edgeIndex.set(edgeSlot(slot, X_TARGET), target);
+        edgeIndex.set(edgeSlot(slot, X_EDGE), e + 1);
+    }
+
+    private void removeEdgeIndex(int e) {
+        int gap = edgeHome(edgeInt(e, E_SOURCE), edgeInt(e, E_TARGET));
+        while (edgeIndex.get(edgeSlot(gap, X_EDGE)) != e + 1) {
+            gap = (gap + 1) & edgeMask;
+        }
+        for (int j = (gap + 1) & edgeMask; edgeIndex.get(edgeSlot(j, X_EDGE)) != 0; j = (j + 1) & edgeMask) {
+            int home = edgeHome(edgeIndex.get(edgeSlot(j, X_SOURCE)), edgeIndex.get(edgeSlot(j, X_TARGET)));
+            if (((j - home) & edgeMask) >= ((j - gap) & edgeMask)) {
+                for (int field = 0; field < INDEX_INTS; field++) {
+                    edgeIndex.set(edgeSlot(gap, field), edgeIndex.get(edgeSlot(j, field)));
+                }
+                gap = j;
+            }
+        }
+        edgeIndex.set(edgeSlot(gap, X_EDGE), 0);
+    }
+
+    // Replaces the edge index by an empty one with the given number of slots and re-inserts
+    // every live edge.
+    private void rehashEdges(int size) {
+        edgeIndex.release();
+        edgeIndex = new DirectIntArray();
+        edgeMask = resizeIndex(edgeIndex, size, INDEX_INTS) - 1;
+        for (int e = 0; e < edgeHigh; e++) {
+            if (edgeInt(e, E_WEIGHT) > 0) {
+                insertEdgeIndex(edgeInt(e, E_SOURCE), edgeInt(e, E_TARGET), e);
+            }
+        }
+    }
+
+    private void createEdge(int s, int t, int weight) {
+        int e;
+        if (freeEdge != NONE) {
+            e = freeEdge;
+            freeEdge = edgeInt(e, E_NEXT_OUT);
+        } else {
+            e = edgeHigh++;
+            edgeTable.ensureCapacity((long) edgeHigh * EDGE_INTS);
+        }
+        setEdgeInt(e, E_SOURCE, s);
+        setEdgeInt(e, E_TARGET, t);
+        setEdgeInt(e, E_WEIGHT, weight);
+
+        int outHead = vertexInt(s, V_OUT);
+        setEdgeInt(e, E_PREV_OUT, NONE);
+        setEdgeInt(e, E_NEXT_OUT, outHead);
+        if (outHead != NONE) {
+            setEdgeInt(outHead, E_PREV_OUT, e);
+        }
+        setVertexInt(s, V_OUT, e);
+        setVertexInt(s, V_OUT_DEGREE, vertexInt(s, V_OUT_DEGREE) + 1);
+        outDegrees++;
+
+        int inHead = vertexInt(t, V_IN);
+        setEdgeInt(e, E_PREV_IN, NONE);
+        setEdgeInt(e, E_NEXT_IN, inHead);
+        if (inHead != NONE) {
+            setEdgeInt(inHead, E_PREV_IN, e);
+        }
+        setVertexInt(t, V_IN, e);
+        setVertexInt(t, V_IN_DEGREE, vertexInt(t, V_IN_DEGREE) + 1);
+        inDegrees++;
+
+        edgeCount++;
+        if (edgeCount > (edgeMask + 1) / 2) {
+            rehashEdges((edgeMask + 1) * 2);
+        } else {
+            insertEdgeIndex(s, t, e);
+        }
+    }
+
+    private void deleteEdge(int e) {
+        removeEdgeIndex(e);
+        int s = edgeInt(e, E_SOURCE);
+        int t = edgeInt(e, E_TARGET);
+
+        int prev = edgeInt(e, E_PREV_OUT);
+        int next = edgeInt(e, E_NEXT_OUT);
+        if (prev == NONE) {
+            setVertexInt(s, V_OUT, next);
+        } else {
+            setEdgeInt(prev, E_NEXT_OUT, next);
+        }
+        if (next != NONE) {
+            setEdgeInt(next, E_PREV_OUT, prev);
+        }
+        setVertexInt(s, V_OUT_DEGREE, vertexInt(s, V_OUT_DEGREE) - 1);
+        outDegrees--;
+
+        prev = edgeInt(e, E_PREV_IN);
+        next = edgeInt(e, E_NEXT_IN);
+        if (prev == NONE) {
+            setVertexInt(t, V_IN, next);
+        } else {
+            setEdgeInt(prev, E_NEXT_IN, next);
+        }
+        if (next != NONE) {
+            setEdgeInt(next, E_PREV_IN, prev);
+        }
+        setVertexInt(t, V_IN_DEGREE, vertexInt(t, V_IN_DEGREE) - 1);
+        inDegrees--;
+
+        setEdgeInt(e, E_WEIGHT, 0);
+        setEdgeInt(e, E_NEXT_OUT, freeEdge);
+        freeEdge = e;
+        edgeCount--;
+    }
+
+    /**
+     * Read-only live map view of the out-edges (forward) or in-edges (!forward)
+     * of one vertex. The vertex is looked up by label on every access, since
+     * the id of a removed vertex is recycled.
+     */
+    private final class Row extends AbstractMap<String, Integer> {
+
+        private final String label;
+        private final boolean forward;
+
+        Row(String label, boolean forward) {
+            this.label = label;
+            this.forward = forward;
+        }
+
+        private int edgeTo(Object key) {
+            checkOpen();
+            int vertex = findVertex(label);
+            int other = key instanceof String ? findVertex((String) key) : NONE;
+            if (vertex == NONE || other == NONE) {
+                return NONE;
+            }
+            return forward ? findEdge(vertex, other) : findEdge(other, vertex);
+        }
+
+        @Override
+        public int size() {
+            checkOpen();
+            int vertex = findVertex(label);
+            return vertex == NONE ? 0 : vertexInt(vertex, forward ? V_OUT_DEGREE : V_IN_DEGREE);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return edgeTo(key) != NONE;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            int e = edgeTo(key);
+            return e == NONE ? null : edgeInt(e, E_WEIGHT);
+        }
+
+        @Override
+        public Set<Map.Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Integer>>() {
+                @Override
+                public int size() {
+                    return Row.this.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Integer>> iterator() {
+                    checkOpen();
+                    int vertex = findVertex(label);
+                    return new Iterator<Map.Entry<String, Integer>>() {
+                        private int e = vertex == NONE ? NONE : vertexInt(vertex, forward ? V_OUT : V_IN);
+
+                        @Override
+                        public boolean hasNext() {
+                            return e != NONE;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Integer> next() {
+                            checkOpen();
+                            if (e == NONE) {
+                                throw new NoSuchElementException();
+                            }
+                            int other = edgeInt(e, forward ? E_TARGET : E_SOURCE);
+                            Map.Entry<String, Integer> entry =
+                                    new SimpleImmutableEntry<>(label(other), edgeInt(e, E_WEIGHT));
+                            e = edgeInt(e, forward ? E_NEXT_OUT : E_NEXT_IN);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package graph;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A mutable weighted directed graph whose state is a persistent (immutable,
+ * structurally shared) {@link Snapshot}.
+ *
+ * <p>Every mutation builds a new snapshot from the current one and publishes
+ * it; the two share every part of the underlying hash array mapped tries that
+ * the mutation did not touch, so a mutation copies O(log n) small nodes
+ * rather than the graph. {@link #snapshot()} hands out the current snapshot in
+ * O(1): a reader holding it sees a stable graph no matter how many mutations
+ * the writer applies afterwards, and nothing is copied to make that so.
+ *
+ * <p>Mutators are synchronized, so one writer at a time applies changes;
+ * readers never lock. The views returned by {@link #vertices()},
+ * {@link #sources(Object)} and {@link #targets(Object)} belong to the snapshot
+ * current at the time of the call and do not change afterwards.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class PersistentGraph<L> implements Graph<L> {
+
+    private volatile Snapshot<L> current = Snapshot.empty();
+
+    // Abstraction function:
+    //   AF = the graph represented by current
+    // Representation invariant:
+    //   current != null
+    // Safety from rep exposure:
+    //   snapshots are immutable, so handing them out is safe
+    // Thread safety argument:
+    //   current is volatile and refers to an immutable snapshot; mutators hold the lock on
+    //     this graph while they derive and publish the next snapshot
+
+    /**
+     * @return the current state of this graph, which later mutations of this
+     *         graph do not affect
+     */
+    public Snapshot<L> snapshot() {
+        return current;
+    }
+
+    @Override
+    public synchronized boolean add(L vertex) {
+        Snapshot<L> before = current;
+        current = before.withVertex(vertex);
+        return current != before;
+    }
+
+    @Override
+    public synchronized int set(L source, L target, int weight) {
+        Snapshot<L> before = current;
+        current = before.withEdge(source, target, weight);
+        return before.weight(source, target);
+    }
+
+    @Override
+    public synchronized boolean remove(L vertex) {
+        Snapshot<L> before = current;
+        current = before.withoutVertex(vertex);
+        return current != before;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return current.vertices();
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        return current.sources(target);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return current.targets(source);
+    }
+
+    @Override
+    public String toString() {
+        return current.toString();
+    }
+
+    /**
+     * An immutable weighted directed graph whose updates return new graphs that
+     * share structure with the original.
+     *
+     * <p>The {@link Graph} mutators throw {@link UnsupportedOperationException};
+     * use {@link #withVertex(Object)}, {@link #withEdge(Object, Object, int)} and
+     * {@link #withoutVertex(Object)} instead.
+     *
+     * @param <L> type of vertex labels in this graph, must be immutable
+     */
+    public static final class Snapshot<L> implements Graph<L> {
+
+        private static final boolean ASSERTIONS = PersistentGraph.class.desiredAssertionStatus();
+
+        private static final Snapshot<?> EMPTY =
+                new Snapshot<>(PersistentMap.empty(), PersistentMap.empty());
+
+        private final PersistentMap<L, PersistentMap<L, Integer>> outgoing;
+        private final PersistentMap<L, PersistentMap<L, Integer>> incoming;
+
+        // Abstraction function:
+        //   AF = the graph with vertices outgoing.keySet() and an edge from s to t with
+        //     weight w for every outgoing.get(s).get(t) == w
+        // Representation invariant:
+        //   all weights are positive; incoming.get(t).get(s) == outgoing.get(s).get(t) for
+        //     every edge; incoming has no empty rows and only names vertices of outgoing
+        // Safety from rep exposure:
+        //   the persistent maps are immutable and only handed out as read-only views
+
+        private Snapshot(PersistentMap<L, PersistentMap<L, Integer>> outgoing,
+                PersistentMap<L, PersistentMap<L, Integer>> incoming) {
+            this.outgoing = outgoing;
+            this.incoming = incoming;
+        }
+
+        /**
+         * @param <L> type of vertex labels
+         * @return the empty graph
+         */
+        @SuppressWarnings("unchecked")
+        public static <L> Snapshot<L> empty() {
+            return (Snapshot<L>) EMPTY;
+        }
+
+        // Checks the invariant on the one edge an update touched, in O(log n); scanning
+        // the rows of its endpoints would make every update of a hub cost O(degree).
+        private Snapshot<L> checkRep(L source, L target) {
+            if (!ASSERTIONS) {
+                return this;
+            }
+            PersistentMap<L, Integer> row = outgoing.get(source);
+            PersistentMap<L, Integer> column = incoming.get(target);
+            Integer weight = row == null ? null : row.get(target);
+            assert weight == null || weight > 0 : "edge weights must be positive";
+            assert Objects.equals(weight, column == null ? null : column.get(source))
+                    : "edge missing from the inbound index";
+            assert column == null || column.size() > 0 : "empty inbound rows should be dropped";
+            assert column == null || outgoing.containsKey(target) : "inbound index names an unknown vertex";
+            return this;
+        }
+
+        /**
+         * @param source a label
+         * @param target a label
+         * @return the weight of the edge from source to target, or 0 if there is none
+         */
+        public int weight(L source, L target) {
+            PersistentMap<L, Integer> row = outgoing.get(source);
+            Integer weight = row == null ? null : row.get(target);
+            return weight == null ? 0 : weight;
+        }
+
+        /**
+         * @param vertex label of a vertex, not null
+         * @return a graph like this one that includes vertex; this graph itself if
+         *         it already does
+         */
+        public Snapshot<L> withVertex(L vertex) {
+            if (vertex == null) {
+                throw new IllegalArgumentException("Vertex label cannot be null");
+            }
+            if (outgoing.containsKey(vertex)) {
+                return this;
+            }
+            return new Snapshot<>(outgoing.put(vertex, PersistentMap.empty()), incoming);
+        }
+
+        /**
+         * @param source label of the source vertex, not null
+         * @param target label of the target vertex, not null
+         * @param weight nonnegative weight of the edge
+         * @return a graph like this one with the edge from source to target changed as
+         *         described by {@link Graph#set(Object, Object, int)}; this graph
+         *         itself if nothing changes
+         */
+        public Snapshot<L> withEdge(L source, L target, int weight) {
+            if (source == null || target == null) {
+                throw new IllegalArgumentException("Source and target cannot be null");
+            }
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight must be non-negative");
+            }
+            PersistentMap<L, Integer> row = outgoing.get(source);
+            PersistentMap<L, Integer> column = incoming.get(target);
+            if (weight == 0) {
+                if (row == null || !row.containsKey(target)) {
+                    return this;
+                }
+                PersistentMap<L, Integer> newColumn = column.remove(source);
+                return new Snapshot<>(outgoing.put(source, row.remove(target)),
+                        newColumn.size() == 0 ? incoming.remove(target) : incoming.put(target, newColumn))
+                        .checkRep(source, target);
+            }
+            PersistentMap<L, PersistentMap<L, Integer>> newOutgoing = outgoing;
+            if (!newOutgoing.containsKey(target)) {
+                newOutgoing = newOutgoing.put(target, PersistentMap.empty());
+            }
+            if (row == null) {
+                row = PersistentMap.empty();
+            }
+            if (column == null) {
+                column = PersistentMap.empty();
+            }
+            newOutgoing = newOutgoing.put(source, row.put(target, weight));
+            if (newOutgoing == outgoing) {
+                return this;
+            }
+            return new Snapshot<>(newOutgoing, incoming.put(target, column.put(source, weight)))
+                    .checkRep(source, target);
+        }
+
+        /**
+         * @param vertex a label
+         * @return a graph like this one without vertex and its edges; this graph
+         *         itself if it has no such vertex
+         */
+        public Snapshot<L> withoutVertex(L vertex) {
+            PersistentMap<L, Integer> row = outgoing.get(vertex);
+            if (row == null) {
+                return this;
+            }
+            PersistentMap<L, PersistentMap<L, Integer>> newOutgoing = outgoing.remove(vertex);
+            PersistentMap<L, PersistentMap<L, Integer>> newIncoming = incoming;
+            for (L target : row.keySet()) {
+                if (!target.equals(vertex)) {
+                    PersistentMap<L, Integer> column = newIncoming.get(target).remove(vertex);
+                    newIncoming = column.size() == 0 ? newIncoming.remove(target) : newIncoming.put(target, column);
+                }
+            }
+            PersistentMap<L, Integer> column = incoming.get(vertex);
+            if (column != null) {
+                for (L source : column.keySet()) {
+                    if (!source.equals(vertex)) {
+                        newOutgoing = newOutgoing.put(source, newOutgoing.get(source).remove(vertex));
+                    }
+                }
+                newIncoming = newIncoming.remove(vertex);
+            }
+            return new Snapshot<>(newOutgoing, newIncoming);
+        }
+
+        /**
+         * @throws UnsupportedOperationException always; use {@link #withVertex(Object)}
+         */
+        @Override
+        public boolean add(L vertex) {
+            throw new UnsupportedOperationException("Snapshots are immutable");
+        }
+
+        /**
+         * @throws UnsupportedOperationException always; use {@link #withEdge(Object, Object, int)}
+         */
+        @Override
+        public int set(L source, L target, int weight) {
+            throw new UnsupportedOperationException("Snapshots are immutable");
+        }
+
+        /**
+         * @throws UnsupportedOperationException always; use {@link #withoutVertex(Object)}
+         */
+        @Override
+        public boolean remove(L vertex) {
+            throw new UnsupportedOperationException("Snapshots are immutable");
+        }
+
+        @Override
+        public Set<L> vertices() {
+            return outgoing.keySet();
+        }
+
+        @Override
+        public Map<L, Integer> sources(L target) {
+            PersistentMap<L, Integer> column = incoming.get(target);
+            return column == null ? Collections.emptyMap() : column.asMap();
+        }
+
+        @Override
+        public Map<L, Integer> targets(L source) {
+            PersistentMap<L, Integer> row = outgoing.get(source);
+            return row == null ? Collections.emptyMap() : row.asMap();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (L vertex : vertices()) {
+                sb.append(vertex).append(" -> ").append(targets(vertex)).append("\n");
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash map implemented as a hash array mapped trie (HAMT).
+ *
+ * <p>{@link #put(Object, Object)} and {@link #remove(Object)} return a new map
+ * and leave this one unchanged. The new map shares every trie node that the
+ * update did not touch, so an update copies only the O(log32 n) nodes on the
+ * path to the changed key, and keeping an old version costs nothing extra.
+ *
+ * @param <K> type of keys, must be immutable with consistent equals and hashCode
+ * @param <V> type of values, must be immutable
+ */
+final class PersistentMap<K, V> {
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    // Abstraction function:
+    //   AF = the map holding every key-value pair stored in the trie rooted at root
+    //     (the empty map if root is null)
+    // Representation invariant:
+    //   size is the number of pairs in the trie; no key appears twice; each pair is
+    //     reachable by following the 5-bit slices of hash(key) from the root; no node
+    //     below the root is empty; nodes are never modified once published
+    // Safety from rep exposure:
+    //   nodes are never handed out; asMap() is a read-only view
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return number of keys in this map
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key a key
+     * @return the value for key, or null if key is absent
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        return root == null || key == null ? null : (V) root.get(key, hash(key), 0);
+    }
+
+    /**
+     * @param key a key
+     * @return true iff key is present
+     */
+    boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key key to store, not null
+     * @param value value to associate with key, not null
+     * @return a map like this one but with key mapped to value; this map itself
+     *         if key was already mapped to an equal value
+     */
+    PersistentMap<K, V> put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Keys and values cannot be null");
+        }
+        boolean[] added = new boolean[1];
+        Node newRoot = root == null
+                ? BitmapNode.EMPTY.put(key, value, hash(key), 0, added)
+                : root.put(key, value, hash(key), 0, added);
+        return newRoot == root ? this : new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @param key key to remove
+     * @return a map like this one but without key; this map itself if key was absent
+     */
+    PersistentMap<K, V> remove(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Node newRoot = root.remove(key, hash(key), 0);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentMap<>(newRoot, size - 1);
+    }
+
+    /**
+     * @return a read-only {@link Map} view of this map
+     */
+    Map<K, V> asMap() {
+        return new AbstractMap<K, V>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public V get(Object key) {
+                return PersistentMap.this.get(key);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return PersistentMap.this.containsKey(key);
+            }
+
+            @Override
+            public Set<Map.Entry<K, V>> entrySet() {
+                return new AbstractSet<Map.Entry<K, V>>() {
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<K, V>> iterator() {
+                        return new EntryIterator();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return a read-only {@link Set} view of the keys of this map
+     */
+    Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public Iterator<K> iterator() {
+                final EntryIterator entries = new EntryIterator();
+                return new Iterator<K>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public K next() {
+                        return entries.next().getKey();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * A trie node. Its array holds key-value pairs as adjacent elements; in a
+     * bitmap node a null key marks a slot whose value element is a child node.
+     */
+    private abstract static class Node {
+        final Object[] array;
+
+        Node(Object[] array) {
+            this.array = array;
+        }
+
+        abstract Object get(Object key, int hash, int shift);
+
+        // Returns this node if nothing changed; sets added[0] if a new key was stored.
+        abstract Node put(Object key, Object value, int hash, int shift, boolean[] added);
+
+        // Returns this node if nothing changed, or null if the node became empty.
+        abstract Node remove(Object key, int hash, int shift);
+    }
+
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+
+        BitmapNode(int bitmap, Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        private int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = index(bit);
+            Object k = array[i];
+            if (k == null) {
+                return ((Node) array[i + 1]).get(key, hash, shift + BITS);
+            }
+            return key.equals(k) ? array[i + 1] : null;
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, i);
+                copy[i] = key;
+                copy[i + 1] = value;
+                System.arraycopy(array, i, copy, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(key, value, hash, shift + BITS, added);
+                return child == v ? this : with(i + 1, null, child);
+            }
+            if (key.equals(k)) {
+                return value.equals(v) ? this : with(i + 1, k, value);
+            }
+            added[0] = true;
+            return with(i + 1, null, pair(k, v, hash(k), key, value, hash, shift + BITS));
+        }
+
+        // Returns a copy of this node with array[i - 1] = key and array[i] = value.
+        private BitmapNode with(int i, Object key, Object value) {
+            Object[] copy = array.clone();
+            copy[i - 1] = key;
+            copy[i] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object k = array[i];
+            if (k == null) {
+                Node child = ((Node) array[i + 1]).remove(key, hash, shift + BITS);
+                if (child == array[i + 1]) {
+                    return this;
+                }
+                if (child != null) {
+                    return with(i + 1, null, child);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+    }
+
+    private static final class CollisionNode extends Node {
+        private final int hash;
+
+        CollisionNode(int hash, Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        private int find(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int i = find(key);
+            return i < 0 ? null : array[i + 1];
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                // nest this node below a bitmap node that also holds the new key
+                BitmapNode parent = new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[] {null, this});
+                return parent.put(key, value, hash, shift, added);
+            }
+            int i = find(key);
+            if (i >= 0) {
+                if (value.equals(array[i + 1])) {
+                    return this;
+                }
+                Object[] copy = array.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            Object[] copy = Arrays.copyOf(array, array.length + 2);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int i = find(key);
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new CollisionNode(hash, copy);
+        }
+    }
+
+    // Returns a node holding two pairs with different keys, starting at the given shift.
+    private static Node pair(Object k1, Object v1, int h1, Object k2, Object v2, int h2, int shift) {
+        if (h1 == h2) {
+            return new CollisionNode(h1, new Object[] {k1, v1, k2, v2});
+        }
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY.put(k1, v1, h1, shift, added).put(k2, v2, h2, shift, added);
+    }
+
+    /**
+     * Depth-first iterator over the pairs of the trie.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Deque<Node> nodes = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Map.Entry<K, V> next;
+
+        EntryIterator() {
+            if (root != null) {
+                nodes.push(root);
+                positions.push(0);
+            }
+            next = advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map.Entry<K, V> advance() {
+            while (!nodes.isEmpty()) {
+                Node node = nodes.peek();
+                int i = positions.pop();
+                if (i >= node.array.length) {
+                    nodes.pop();
+                    continue;
+                }
+                positions.push(i + 2);
+                Object key = node.array[i];
+                if (key == null) {
+                    nodes.push((Node) node.array[i + 1]);
+                    positions.push(0);
+                } else {
+                    return new AbstractMap.SimpleImmutableEntry<>((K) key, (V) node.array[i + 1]);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> entry = next;
+            next = advance();
+            return entry;
+        }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return that instanceof PersistentMap && asMap().equals(((PersistentMap<?, ?>) that).asMap());
+    }
+
+    @Override
+    public int hashCode() {
+        return asMap().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+}
@@ -0,0 +1,141 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A weighted directed graph partitioned by source vertex over several shard
+ * graphs, usually the result of {@link ShardedIngester#finish()}.
+ *
+ * <p>Every edge lives in the shard chosen by the hash of its source, so
+ * {@link #targets(Object)} and the mutators for an edge touch exactly one
+ * shard. A vertex may appear in several shards (as a source in its own and as
+ * a target in others); {@link #vertices()} is their union and
+ * {@link #sources(Object)} merges the disjoint in-edges found in every shard.
+ * Both return unmodifiable copies. This graph is not thread-safe.
+ */
+public class ShardedGraph implements CountingGraph<String> {
+
+    private final List<CountingGraph<String>> shards;
+
+    // Abstraction function:
+    //   AF = the graph whose vertices are the union of the vertices of all shards and
+    //     whose edges are the union of the edges of all shards
+    // Representation invariant:
+    //   shards is nonempty; every edge from s is in shards.get(shardOf(s, shards.size()))
+    // Safety from rep exposure:
+    //   shards is private and never handed out; targets() wraps the shard's result in an
+    //     unmodifiable view and the other reads return copies
+
+    /**
+     * Make a graph over existing shards.
+     *
+     * @param shards shard graphs, each holding only edges whose source hashes to
+     *        its index; owned by this graph from now on
+     */
+    ShardedGraph(List<? extends CountingGraph<String>> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one shard");
+        }
+        this.shards = new ArrayList<>(shards);
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert !shards.isEmpty() : "there must be at least one shard";
+    }
+
+    /**
+     * @param source a vertex label, not null
+     * @param count number of shards, positive
+     * @return index of the shard that holds the out-edges of source
+     */
+    static int shardOf(Object source, int count) {
+        long h = source.hashCode() * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 32) * count >>> 32);
+    }
+
+    private CountingGraph<String> shard(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        return shards.get(shardOf(source, shards.size()));
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int shardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public boolean add(String vertex) {
+        for (CountingGraph<String> shard : shards) {
+            if (shard.vertices().contains(vertex)) {
+                return false;
+            }
+        }
+        return shard(vertex).add(vertex);
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        return shard(source).set(source, target, weight);
+    }
+
+    @Override
+    public int merge(String source, String target, int value, IntBinaryOperator op) {
+        return shard(source).merge(source, target, value, op);
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        boolean removed = false;
+        for (CountingGraph<String> shard : shards) {
+            removed |= shard.remove(vertex);
+        }
+        return removed;
+    }
+
+    @Override
+    public Set<String> vertices() {
+        Set<String> union = new HashSet<>();
+        for (CountingGraph<String> shard : shards) {
+            union.addAll(shard.vertices());
+        }
+        return Collections.unmodifiableSet(union);
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        Map<String, Integer> merged = new HashMap<>();
+        for (CountingGraph<String> shard : shards) {
+            merged.putAll(shard.sources(target));
+        }
+        return Collections.unmodifiableMap(merged);
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        if (source == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(shard(source).targets(source));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String vertex : vertices()) {
+            sb.append(vertex).append(" -> ").append(targets(vertex)).append("\n");
+        }
+        return sb.toString();
+    }
+}
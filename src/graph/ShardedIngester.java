@@ -0,0 +1,280 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Builds a large graph from many producer threads by partitioning edge
+ * updates over single-writer shards.
+ *
+ * <p>Each update is routed by the hash of its source vertex to one of N
+ * shards. A shard owns a private graph, written only by the shard's own
+ * thread, and is fed through a bounded lock-free ring buffer
+ * ({@link UpdateRing}); neither producers nor shard threads ever take a lock,
+ * and updates to one edge are applied in the order they were offered. When
+ * a ring is full, producers wait for its shard to catch up.
+ *
+ * <p>When ingestion is done, {@link #finish()} waits for every queued update,
+ * stops the shard threads and returns the shards as one {@link ShardedGraph}.
+ * Typical use, with the updates offered from any number of threads:
+ *
+ * <pre>
+ * ShardedIngester ingester = new ShardedIngester(8, 1 &lt;&lt; 16);
+ * ingester.increment("the", "cat", 1);
+ * ...
+ * Graph&lt;String&gt; graph = ingester.finish();
+ * </pre>
+ *
+ * <p>Invalid updates (null labels, negative weights) are rejected when they
+ * are offered. An update that can only fail when applied, such as an
+ * increment that would make a weight negative, is dropped, and the first such
+ * failure (including an {@link Error} thrown by a shard graph) is rethrown by
+ * {@link #flush()} or {@link #finish()}.
+ */
+public class ShardedIngester implements AutoCloseable {
+
+    /** Maximum number of updates a shard applies between progress reports. */
+    private static final int BATCH = 256;
+    /** Empty polls or failed offers before a thread starts parking. */
+    private static final int SPINS = 128;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Shard[] shards;
+    private volatile boolean closed = false;
+    private volatile Throwable failure;
+
+    // Abstraction function:
+    //   AF = the graph obtained by applying, in order, every update offered so far to the
+    //     graphs of the shards, exposed as one ShardedGraph
+    // Representation invariant:
+    //   shards is nonempty; an update with source s is only offered to
+    //     shards[ShardedGraph.shardOf(s, shards.length)]
+    // Safety from rep exposure:
+    //   the shard graphs are only handed out by finish(), after their threads have stopped
+    // Thread safety argument:
+    //   each shard graph is confined to its shard thread until finish() joins that thread;
+    //   the rings are lock-free multi-producer single-consumer queues; closed, failure and
+    //     each shard's applied count are volatile
+
+    /**
+     * Ring consumer that applies updates to one private graph.
+     */
+    private final class Shard implements Runnable, UpdateRing.Sink {
+        final UpdateRing ring;
+        final CountingGraph<String> graph;
+        final Thread thread;
+        volatile long applied = 0;
+
+        Shard(int index, int capacity, CountingGraph<String> graph) {
+            this.ring = new UpdateRing(capacity);
+            this.graph = graph;
+            this.thread = new Thread(this, "graph-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (true) {
+                int drained = ring.drain(this, BATCH);
+                if (drained > 0) {
+                    applied += drained;
+                    idle = 0;
+                } else if (closed && applied == ring.offered()) {
+                    return;
+                } else if (++idle > SPINS) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        @Override
+        public void accept(int kind, String source, String target, int value) {
+            try {
+                switch (kind) {
+                case UpdateRing.ADD:
+                    graph.add(source);
+                    break;
+                case UpdateRing.SET:
+                    graph.set(source, target, value);
+                    break;
+                case UpdateRing.INCREMENT:
+                    graph.increment(source, target, value);
+                    break;
+                default:
+                    throw new AssertionError("unknown update kind " + kind);
+                }
+            } catch (Throwable e) {
+                // an Error (say an AssertionError from a shard's checkRep) must not
+                // kill the shard thread: producers would spin on its full ring
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start an ingester whose shards are {@link ConcreteVerticesGraph}s that
+     * check their invariant {@link InvariantChecker#incremental() incrementally}.
+     *
+     * @param shardCount number of shards (and shard threads), positive
+     * @param capacity number of queued updates each shard can buffer
+     */
+    public ShardedIngester(int shardCount, int capacity) {
+        this(shardCount, capacity, () -> new ConcreteVerticesGraph(InvariantChecker.incremental()));
+    }
+
+    /**
+     * Start an ingester.
+     *
+     * @param shardCount number of shards (and shard threads), positive
+     * @param capacity number of queued updates each shard can buffer
+     * @param factory makes the empty private graph of each shard; the graphs need
+     *        not be thread-safe
+     */
+    public ShardedIngester(int shardCount, int capacity, Supplier<? extends CountingGraph<String>> factory) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Need at least one shard");
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, capacity, factory.get());
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    private void offer(int kind, String source, String target, int value) {
+        if (source == null || (kind != UpdateRing.ADD && target == null)) {
+            throw new IllegalArgumentException("Vertex labels cannot be null");
+        }
+        UpdateRing ring = shards[ShardedGraph.shardOf(source, shards.length)].ring;
+        for (int attempts = 0; !ring.offer(kind, source, target, value); attempts++) {
+            if (closed) {
+                throw new IllegalStateException("Ingester has been closed");
+            }
+            if (attempts > SPINS) {
+                LockSupport.parkNanos(PARK_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Ingester has been closed");
+        }
+    }
+
+    /**
+     * Queue the addition of a vertex, as by {@link Graph#add(Object)}.
+     *
+     * @param vertex label of the vertex, not null
+     */
+    public void add(String vertex) {
+        checkOpen();
+        offer(UpdateRing.ADD, vertex, null, 0);
+    }
+
+    /**
+     * Queue a change of an edge weight, as by {@link Graph#set(Object, Object, int)}.
+     *
+     * @param source label of the source vertex, not null
+     * @param target label of the target vertex, not null
+     * @param weight nonnegative weight of the edge
+     */
+    public void set(String source, String target, int weight) {
+        checkOpen();
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        offer(UpdateRing.SET, source, target, weight);
+    }
+
+    /**
+     * Queue an increment of an edge weight, as by
+     * {@link CountingGraph#increment(Object, Object, int)}.
+     *
+     * @param source label of the source vertex, not null
+     * @param target label of the target vertex, not null
+     * @param delta amount to add to the weight
+     */
+    public void increment(String source, String target, int delta) {
+        checkOpen();
+        offer(UpdateRing.INCREMENT, source, target, delta);
+    }
+
+    /**
+     * Wait until every update offered before this call has been applied.
+     *
+     * @throws IllegalStateException if applying some update failed
+     */
+    public void flush() {
+        for (Shard shard : shards) {
+            long target = shard.ring.offered();
+            for (int attempts = 0; shard.applied < target && shard.thread.isAlive(); attempts++) {
+                if (attempts > SPINS) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+        Throwable failed = failure;
+        if (failed != null) {
+            throw new IllegalStateException("An update could not be applied", failed);
+        }
+    }
+
+    /**
+     * Apply every queued update, stop the shard threads, and hand over the
+     * shards. Must only be called once every producer has stopped offering
+     * updates; no more updates can be offered afterwards.
+     *
+     * @return a graph over the shards built so far
+     * @throws IllegalStateException if applying some update failed, or if the
+     *         ingester was already closed
+     */
+    public ShardedGraph finish() {
+        checkOpen();
+        close();
+        Throwable failed = failure;
+        if (failed != null) {
+            throw new IllegalStateException("An update could not be applied", failed);
+        }
+        List<CountingGraph<String>> graphs = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            graphs.add(shard.graph);
+        }
+        return new ShardedGraph(graphs);
+    }
+
+    /**
+     * Apply every queued update and stop the shard threads, discarding the
+     * result. Closing an ingester again has no effect.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        boolean interrupted = false;
+        for (Shard shard : shards) {
+            while (shard.thread.isAlive()) {
+                try {
+                    shard.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
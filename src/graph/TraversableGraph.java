@@ -0,0 +1,56 @@
+package graph;
+
+import java.util.Map;
+
+/**
+ * A {@link Graph} whose edges can be visited and looked up without boxing a
+ * weight or building a map, for traversal inner loops.
+ *
+ * <p>The default methods go through {@link #targets(Object)} and
+ * {@link #sources(Object)}; implementations override them to read their own
+ * indexes directly, so that a lookup or a visit allocates nothing per edge.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public interface TraversableGraph<L> extends Graph<L> {
+
+    /**
+     * Visit every edge leaving a vertex. The graph must not be modified during
+     * the visit.
+     *
+     * @param source label of the source vertex
+     * @param visitor called once per edge with the target and the weight; not
+     *        called at all if source is not in the graph
+     */
+    public default void forEachTarget(L source, EdgeVisitor<? super L> visitor) {
+        for (Map.Entry<L, Integer> edge : targets(source).entrySet()) {
+            visitor.visit(edge.getKey(), edge.getValue());
+        }
+    }
+
+    /**
+     * Visit every edge entering a vertex. The graph must not be modified during
+     * the visit.
+     *
+     * @param target label of the target vertex
+     * @param visitor called once per edge with the source and the weight; not
+     *        called at all if target is not in the graph
+     */
+    public default void forEachSource(L target, EdgeVisitor<? super L> visitor) {
+        for (Map.Entry<L, Integer> edge : sources(target).entrySet()) {
+            visitor.visit(edge.getKey(), edge.getValue());
+        }
+    }
+
+    /**
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @return the weight of the edge from source to target, or zero if there is
+     *         no such edge
+     */
+    public default int weight(L source, L target) {
+        Integer weight = targets(source).get(target);
+        return weight == null ? 0 : weight;
+    }
+
+}
@@ -0,0 +1,143 @@
+package graph;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer queue of graph updates.
+ *
+ * <p>This is Dmitry Vyukov's bounded queue: every slot carries a sequence
+ * number that tells producers when the slot is free and the consumer when it
+ * holds a published update. Producers claim a position by compare-and-set on
+ * the tail, fill the slot and publish it with an ordered write of its
+ * sequence; the single consumer needs no atomic read-modify-write at all.
+ * Updates are stored field by field in parallel arrays, so offering an update
+ * allocates nothing.
+ */
+final class UpdateRing {
+
+    static final int ADD = 0;
+    static final int SET = 1;
+    static final int INCREMENT = 2;
+
+    /**
+     * Receives the updates drained from a ring.
+     */
+    interface Sink {
+        void accept(int kind, String source, String target, int value);
+    }
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] kinds;
+    private final String[] sources;
+    private final String[] targets;
+    private final int[] values;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;  // only touched by the consumer
+
+    // Abstraction function:
+    //   AF = the queue of updates at positions head..tail-1, where the update at position p
+    //     is (kinds, sources, targets, values)[p & mask] once sequences[p & mask] == p + 1
+    // Representation invariant:
+    //   capacity is a power of two; head <= tail <= head + capacity; slot i is free for
+    //     position p when sequences[i] == p, and published for position p when it is p + 1
+    // Safety from rep exposure:
+    //   arrays are never handed out
+    // Thread safety argument:
+    //   a producer owns a slot from claiming its position by compare-and-set on tail until
+    //     it publishes it with an ordered write of its sequence; the consumer owns it from
+    //     reading that sequence until it frees it with another ordered write
+
+    /**
+     * Make an empty ring.
+     *
+     * @param capacity minimum number of updates the ring can hold; rounded up to a
+     *        power of two
+     */
+    UpdateRing(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity * 2 - 1);
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        kinds = new int[size];
+        sources = new String[size];
+        targets = new String[size];
+        values = new int[size];
+    }
+
+    /**
+     * @return number of updates the ring can hold
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Append an update if there is room. Safe to call from any thread.
+     *
+     * @return true if the update was queued, false if the ring is full
+     */
+    boolean offer(int kind, String source, String target, int value) {
+        while (true) {
+            long position = tail.get();
+            int i = (int) position & mask;
+            long gap = sequences.get(i) - position;
+            if (gap == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    kinds[i] = kind;
+                    sources[i] = source;
+                    targets[i] = target;
+                    values[i] = value;
+                    sequences.lazySet(i, position + 1);
+                    return true;
+                }
+            } else if (gap < 0) {
+                return false;
+            }
+            // otherwise another producer claimed this position first; try the next one
+        }
+    }
+
+    /**
+     * @return number of updates ever claimed by producers, published or not
+     */
+    long offered() {
+        return tail.get();
+    }
+
+    /**
+     * Remove published updates from the head of the ring and pass them to sink
+     * in order. Must only be called by the consumer thread.
+     *
+     * @param sink receives the updates
+     * @param max maximum number of updates to drain
+     * @return number of updates drained
+     */
+    int drain(Sink sink, int max) {
+        int count = 0;
+        while (count < max) {
+            long position = head;
+            int i = (int) position & mask;
+            if (sequences.get(i) != position + 1) {
+                break;
+            }
+            String source = sources[i];
+            String target = targets[i];
+            sources[i] = null;
+            targets[i] = null;
+            int kind = kinds[i];
+            int value = values[i];
+            sequences.lazySet(i, position + capacity());
+            head = position + 1;
+            count++;
+            sink.accept(kind, source, target, value);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,400 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * A multi-version weighted directed graph: writers commit batches of changes
+ * as numbered versions, and readers pin a version to get a consistent view of
+ * it for as long as they need, without blocking writers or being blocked.
+ *
+ * <p>Each version is a {@link PersistentGraph.Snapshot}, so successive versions
+ * share all unchanged structure and committing a batch does not copy the
+ * graph. A {@link Batch} collects {@code add}/{@code set}/{@code remove}
+ * operations and {@link Batch#commit() commit} applies all of them to the
+ * latest version at once; no reader ever observes part of a batch.
+ *
+ * <p>Versions stay available to {@link #pin(long)} while they are the latest
+ * version or are pinned by some reader. Once neither is true, the version is
+ * reclaimed: it is forgotten by this graph and its memory is left to the
+ * garbage collector, apart from any structure it shares with newer versions.
+ *
+ * <p>The {@link Graph} methods of this class read the latest version, and each
+ * mutator commits a one-operation batch.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class VersionedGraph<L> implements Graph<L> {
+
+    private static final int RECLAIMED = Integer.MIN_VALUE;
+
+    /**
+     * A committed version and the number of readers pinning it.
+     */
+    private static final class Version<L> {
+        final long number;
+        final PersistentGraph.Snapshot<L> graph;
+        final AtomicInteger pins = new AtomicInteger();  // RECLAIMED once forgotten
+
+        Version(long number, PersistentGraph.Snapshot<L> graph) {
+            this.number = number;
+            this.graph = graph;
+        }
+    }
+
+    private final ConcurrentSkipListMap<Long, Version<L>> retained = new ConcurrentSkipListMap<>();
+    private final Object writeLock = new Object();
+    private volatile Version<L> head;
+
+    // Abstraction function:
+    //   AF = the sequence of committed graph versions retained.get(0..head.number), of
+    //     which only the ones still in retained can be pinned; the graph seen through the
+    //     Graph interface is head.graph
+    // Representation invariant:
+    //   head is in retained; every version in retained other than head has pins > 0 or is
+    //     about to be reclaimed by the thread that released its last pin; a version whose
+    //     pins are RECLAIMED is not in retained and is never pinned again
+    // Safety from rep exposure:
+    //   versions are immutable snapshots; ReadView only exposes their read operations
+    // Thread safety argument:
+    //   commits are serialized by writeLock and publish head through a volatile write;
+    //   pins are taken and released by compare-and-set on the version's counter, and a
+    //     version is reclaimed only by moving its counter from 0 to RECLAIMED, so a pin
+    //     either happens before reclamation (and prevents it) or fails and retries
+
+    /**
+     * Make an empty graph at version 0.
+     */
+    public VersionedGraph() {
+        head = new Version<>(0, PersistentGraph.Snapshot.empty());
+        retained.put(0L, head);
+    }
+
+    /**
+     * @return number of the latest committed version
+     */
+    public long version() {
+        return head.number;
+    }
+
+    /**
+     * @return number of versions currently available to {@link #pin(long)}
+     */
+    public int retainedVersions() {
+        return retained.size();
+    }
+
+    /**
+     * Pin the latest committed version.
+     *
+     * @return a read-only view of that version, which must be closed when done
+     */
+    public ReadView<L> pin() {
+        while (true) {
+            Version<L> version = head;
+            if (tryPin(version)) {
+                return new ReadView<>(this, version);
+            }
+        }
+    }
+
+    /**
+     * Pin a version that is still retained.
+     *
+     * @param number version number
+     * @return a read-only view of that version, which must be closed when done
+     * @throws NoSuchElementException if the version has been reclaimed or does not exist
+     */
+    public ReadView<L> pin(long number) {
+        Version<L> version = retained.get(number);
+        if (version == null || !tryPin(version)) {
+            throw new NoSuchElementException("Version " + number + " is not retained");
+        }
+        return new ReadView<>(this, version);
+    }
+
+    private static boolean tryPin(Version<?> version) {
+        while (true) {
+            int pins = version.pins.get();
+            if (pins == RECLAIMED) {
+                return false;
+            }
+            if (version.pins.compareAndSet(pins, pins + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void unpin(Version<L> version) {
+        if (version.pins.decrementAndGet() == 0) {
+            reclaim(version);
+        }
+    }
+
+    // Forgets version if it is neither pinned nor the latest.
+    private void reclaim(Version<L> version) {
+        if (version != head && version.pins.compareAndSet(0, RECLAIMED)) {
+            retained.remove(version.number, version);
+        }
+    }
+
+    /**
+     * @return a new, empty batch of changes to this graph
+     */
+    public Batch begin() {
+        return new Batch();
+    }
+
+    // Applies the operations to the latest version and publishes the result.
+    private long commit(List<UnaryOperator<PersistentGraph.Snapshot<L>>> operations) {
+        synchronized (writeLock) {
+            Version<L> previous = head;
+            PersistentGraph.Snapshot<L> graph = previous.graph;
+            for (UnaryOperator<PersistentGraph.Snapshot<L>> operation : operations) {
+                graph = operation.apply(graph);
+            }
+            if (graph == previous.graph) {
+                return previous.number;
+            }
+            Version<L> next = new Version<>(previous.number + 1, graph);
+            retained.put(next.number, next);
+            head = next;
+            reclaim(previous);
+            return next.number;
+        }
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        synchronized (writeLock) {
+            long before = version();
+            return commit(single(g -> g.withVertex(vertex))) != before;
+        }
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        synchronized (writeLock) {
+            int previous = head.graph.weight(source, target);
+            commit(single(g -> g.withEdge(source, target, weight)));
+            return previous;
+        }
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        synchronized (writeLock) {
+            long before = version();
+            return commit(single(g -> g.withoutVertex(vertex))) != before;
+        }
+    }
+
+    private static <L> List<UnaryOperator<PersistentGraph.Snapshot<L>>> single(
+            UnaryOperator<PersistentGraph.Snapshot<L>> operation) {
+        List<UnaryOperator<PersistentGraph.Snapshot<L>>> operations = new ArrayList<>(1);
+        operations.add(operation);
+        return operations;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return head.graph.vertices();
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        return head.graph.sources(target);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return head.graph.targets(source);
+    }
+
+    @Override
+    public String toString() {
+        return "version " + version() + ":\n" + head.graph;
+    }
+
+    /**
+     * A batch of changes to a VersionedGraph that become visible together when
+     * committed. A batch is meant to be filled and committed by one thread.
+     */
+    public final class Batch {
+
+        private final List<UnaryOperator<PersistentGraph.Snapshot<L>>> operations = new ArrayList<>();
+        private boolean done = false;
+
+        private Batch() {
+        }
+
+        private Batch record(UnaryOperator<PersistentGraph.Snapshot<L>> operation) {
+            if (done) {
+                throw new IllegalStateException("Batch has already been committed or aborted");
+            }
+            operations.add(operation);
+            return this;
+        }
+
+        /**
+         * Add a vertex when the batch commits, as by {@link Graph#add(Object)}.
+         *
+         * @param vertex label for the new vertex, not null
+         * @return this batch
+         */
+        public Batch add(L vertex) {
+            if (vertex == null) {
+                throw new IllegalArgumentException("Vertex label cannot be null");
+            }
+            return record(g -> g.withVertex(vertex));
+        }
+
+        /**
+         * Add, change or remove an edge when the batch commits, as by
+         * {@link Graph#set(Object, Object, int)}.
+         *
+         * @param source label of the source vertex, not null
+         * @param target label of the target vertex, not null
+         * @param weight nonnegative weight of the edge
+         * @return this batch
+         */
+        public Batch set(L source, L target, int weight) {
+            if (source == null || target == null) {
+                throw new IllegalArgumentException("Source and target cannot be null");
+            }
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight must be non-negative");
+            }
+            return record(g -> g.withEdge(source, target, weight));
+        }
+
+        /**
+         * Remove a vertex and its edges when the batch commits, as by
+         * {@link Graph#remove(Object)}.
+         *
+         * @param vertex label of the vertex to remove
+         * @return this batch
+         */
+        public Batch remove(L vertex) {
+            return record(g -> g.withoutVertex(vertex));
+        }
+
+        /**
+         * Apply every change of this batch, in order, to the latest version of the
+         * graph and publish the result as a single new version.
+         *
+         * @return number of the new version, or of the latest version if the batch
+         *         changed nothing
+         * @throws IllegalStateException if the batch was already committed or aborted
+         */
+        public long commit() {
+            if (done) {
+                throw new IllegalStateException("Batch has already been committed or aborted");
+            }
+            done = true;
+            return VersionedGraph.this.commit(operations);
+        }
+
+        /**
+         * Discard this batch without applying any of its changes.
+         */
+        public void abort() {
+            done = true;
+            operations.clear();
+        }
+    }
+
+    /**
+     * A read-only view of one pinned version of a VersionedGraph. The version
+     * stays available until the view is closed; the view must not be used
+     * afterwards.
+     *
+     * @param <L> type of vertex labels in the graph
+     */
+    public static final class ReadView<L> implements Graph<L>, AutoCloseable {
+
+        private final VersionedGraph<L> owner;
+        private final Version<L> version;
+        private boolean closed = false;
+
+        private ReadView(VersionedGraph<L> owner, Version<L> version) {
+            this.owner = owner;
+            this.version = version;
+        }
+
+        private PersistentGraph.Snapshot<L> graph() {
+            if (closed) {
+                throw new IllegalStateException("View has been closed");
+            }
+            return version.graph;
+        }
+
+        /**
+         * @return number of the pinned version
+         */
+        public long version() {
+            return version.number;
+        }
+
+        /**
+         * Release the pin on this version. Closing an already closed view has no effect.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                owner.unpin(version);
+            }
+        }
+
+        /**
+         * @throws UnsupportedOperationException always; views are read-only
+         */
+        @Override
+        public boolean add(L vertex) {
+            throw new UnsupportedOperationException("Pinned versions are read-only");
+        }
+
+        /**
+         * @throws UnsupportedOperationException always; views are read-only
+         */
+        @Override
+        public int set(L source, L target, int weight) {
+            throw new UnsupportedOperationException("Pinned versions are read-only");
+        }
+
+        /**
+         * @throws UnsupportedOperationException always; views are read-only
+         */
+        @Override
+        public boolean remove(L vertex) {
+            throw new UnsupportedOperationException("Pinned versions are read-only");
+        }
+
+        @Override
+        public Set<L> vertices() {
+            return graph().vertices();
+        }
+
+        @Override
+        public Map<L, Integer> sources(L target) {
+            return graph().sources(target);
+        }
+
+        @Override
+        public Map<L, Integer> targets(L source) {
+            return graph().targets(source);
+        }
+
+        @Override
+        public String toString() {
+            return "version " + version.number + ":\n" + graph();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A mutable two-way mapping between vertex labels and dense int ids.
+ *
+ * <p>Ids are issued in increasing order starting at 0; the id of a removed
+ * label is recycled by a later {@link #intern(Object)}, so ids stay within
+ * 0..{@link #capacity()}-1 however much the vocabulary churns.
+ *
+ * @param <L> type of vertex labels, must be immutable
+ */
+public final class VertexDictionary<L> {
+
+    private static final boolean ASSERTIONS = VertexDictionary.class.desiredAssertionStatus();
+
+    private final Map<L, Integer> ids = new HashMap<>();
+    private Object[] labels = new Object[16];
+    private int capacity = 0;
+    private int[] freeIds = new int[0];
+    private int freeCount = 0;
+
+    // Abstraction function:
+    //   AF = { label -> ids.get(label) | label in ids.keySet() }
+    // Representation invariant:
+    //   for every (label, id) in ids: 0 <= id < capacity and labels[id] == label;
+    //   freeIds[0..freeCount) are exactly the ids below capacity with labels[id] == null
+    // Safety from rep exposure:
+    //   labels() is an unmodifiable view; arrays are never handed out
+
+    // Checks the rep after a mutation that touched only the given id, in O(1).
+    private void checkRep(int id) {
+        if (!ASSERTIONS) {
+            return;
+        }
+        assert ids.size() + freeCount == capacity : "every id is either live or free";
+        assert 0 <= id && id < capacity : "ids must be below capacity";
+        L label = labelOf(id);
+        assert label == null || Integer.valueOf(id).equals(ids.get(label)) : "label and id must map to each other";
+        assert freeCount == 0 || labels[freeIds[freeCount - 1]] == null : "free ids must not name a label";
+    }
+
+    /**
+     * @param label a label
+     * @return the id of label, or -1 if it has none
+     */
+    public int idOf(L label) {
+        Integer id = ids.get(label);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Get the id of a label, issuing a new one if it has none.
+     *
+     * @param label a label, not null
+     * @return the id of label
+     */
+    public int intern(L label) {
+        if (label == null) {
+            throw new IllegalArgumentException("Vertex label cannot be null");
+        }
+        Integer existing = ids.get(label);
+        if (existing != null) {
+            return existing;
+        }
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = capacity++;
+            if (id == labels.length) {
+                labels = Arrays.copyOf(labels, labels.length * 2);
+            }
+        }
+        labels[id] = label;
+        ids.put(label, id);
+        checkRep(id);
+        return id;
+    }
+
+    /**
+     * @param id an id
+     * @return the label with that id, or null if the id is not in use
+     */
+    @SuppressWarnings("unchecked")
+    public L labelOf(int id) {
+        return id >= 0 && id < capacity ? (L) labels[id] : null;
+    }
+
+    /**
+     * Release the id of a label so that it can be issued again.
+     *
+     * @param label a label
+     * @return the released id, or -1 if label had none
+     */
+    public int remove(L label) {
+        Integer id = ids.remove(label);
+        if (id == null) {
+            return -1;
+        }
+        labels[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(4, freeIds.length * 2));
+        }
+        freeIds[freeCount++] = id;
+        checkRep(id);
+        return id;
+    }
+
+    /**
+     * @return number of labels with an id
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return one more than the largest id ever issued; every id in use is below it
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return read-only live view of the labels that have an id
+     */
+    public Set<L> labels() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+}
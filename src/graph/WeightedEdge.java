@@ -0,0 +1,91 @@
+package graph;
+
+import java.util.Objects;
+
+/**
+ * An immutable (source, target, weight) triple describing one weighted
+ * directed edge, as accepted by {@link GraphBuilder}.
+ *
+ * @param <L> type of vertex labels, must be immutable
+ */
+public final class WeightedEdge<L> {
+
+    private final L source;
+    private final L target;
+    private final int weight;
+
+    // Abstraction function:
+    //   AF = the edge from source to target with the given weight
+    // Representation invariant:
+    //   source and target are non-null, weight >= 0
+    // Safety from rep exposure:
+    //   all fields are private, final and immutable
+
+    /**
+     * Make an edge.
+     *
+     * @param source label of the source vertex, not null
+     * @param target label of the target vertex, not null
+     * @param weight nonnegative weight of the edge
+     */
+    public WeightedEdge(L source, L target, int weight) {
+        if (source == null || target == null) {
+            throw new IllegalArgumentException("Source and target cannot be null");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must be non-negative");
+        }
+        this.source = source;
+        this.target = target;
+        this.weight = weight;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert source != null && target != null : "endpoints must be non-null";
+        assert weight >= 0 : "weight must be non-negative";
+    }
+
+    /**
+     * @return label of the source vertex
+     */
+    public L getSource() {
+        return source;
+    }
+
+    /**
+     * @return label of the target vertex
+     */
+    public L getTarget() {
+        return target;
+    }
+
+    /**
+     * @return weight of the edge
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!(that instanceof WeightedEdge)) {
+            return false;
+        }
+        WeightedEdge<?> other = (WeightedEdge<?>) that;
+        return source.equals(other.source) && target.equals(other.target) && weight == other.weight;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(source, target, weight);
+    }
+
+    /**
+     * @return the edge as "source -> target (weight)"
+     */
+    @Override
+    public String toString() {
+        return source + " -> " + target + " (" + weight + ")";
+    }
+}
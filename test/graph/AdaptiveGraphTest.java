@@ -0,0 +1,82 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for AdaptiveGraph, on top of the Graph tests in GraphInstanceTest.
+ */
+public class AdaptiveGraphTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   layout: compact, hashed, switching between them part way through
+    //   switch trigger: vertex limit crossed by add() or set(), edge limit crossed by set()
+    //   remove(): vertex with in/out edges, last vertex, self-loop
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new AdaptiveGraph<>();
+    }
+
+    // Covers compact layout, remove vertex with in and out edges
+    @Test
+    public void testCompactRemoveRenumbersEdges() {
+        AdaptiveGraph<String> graph = new AdaptiveGraph<>();
+        graph.set("A", "B", 1);
+        graph.set("B", "C", 2);
+        graph.set("C", "A", 3);
+
+        assertTrue("Removing A should succeed", graph.remove("A"));
+        assertFalse("Graph should still be compact", graph.isHashed());
+        assertEquals("B -> C should survive", Collections.singletonMap("C", 2), graph.targets("B"));
+        assertEquals("C should have no targets left", Collections.emptyMap(), graph.targets("C"));
+        assertEquals("B should have no sources left", Collections.emptyMap(), graph.sources("B"));
+    }
+
+    // Covers switch triggered by add() past the vertex limit
+    @Test
+    public void testSwitchOnVertexLimit() {
+        AdaptiveGraph<Integer> graph = new AdaptiveGraph<>();
+        for (int i = 0; i < AdaptiveGraph.COMPACT_VERTEX_LIMIT; i++) {
+            graph.set(i, (i + 1) % AdaptiveGraph.COMPACT_VERTEX_LIMIT, i + 1);
+        }
+        assertFalse("Graph should still be compact at the limit", graph.isHashed());
+
+        assertTrue("Adding one more vertex should succeed", graph.add(-1));
+        assertTrue("Graph should have switched layout", graph.isHashed());
+        assertEquals("All vertices should be kept", AdaptiveGraph.COMPACT_VERTEX_LIMIT + 1, graph.vertices().size());
+        for (int i = 0; i < AdaptiveGraph.COMPACT_VERTEX_LIMIT; i++) {
+            assertEquals("Edge weights should be kept", (Integer) (i + 1),
+                    graph.targets(i).get((i + 1) % AdaptiveGraph.COMPACT_VERTEX_LIMIT));
+        }
+    }
+
+    // Covers switch triggered by set() past the edge limit, self-loop removal in hashed layout
+    @Test
+    public void testSwitchOnEdgeLimit() {
+        AdaptiveGraph<Integer> graph = new AdaptiveGraph<>();
+        for (int i = 0; i <= AdaptiveGraph.COMPACT_EDGE_LIMIT; i++) {
+            graph.set(i % 4, i / 4, 1);
+        }
+        assertTrue("Graph should have switched layout", graph.isHashed());
+        assertEquals("Edge count should be kept", 1, (int) graph.targets(0).get(8));
+
+        Map<Integer, Integer> sources = graph.sources(0);
+        assertEquals("0 should have four sources", 4, sources.size());
+        assertTrue("Removing 0 should succeed", graph.remove(0));
+        assertFalse("0 should be gone from sources", graph.sources(1).containsKey(0));
+        assertFalse("0 should be gone from targets", graph.targets(1).containsKey(0));
+    }
+
+    // Covers set() with zero weight not creating vertices
+    @Test
+    public void testZeroWeightDoesNotAddVertices() {
+        AdaptiveGraph<String> graph = new AdaptiveGraph<>();
+        assertEquals("No edge should have existed", 0, graph.set("A", "B", 0));
+        assertEquals("No vertices should be added", Collections.emptySet(), graph.vertices());
+    }
+}
@@ -0,0 +1,70 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for CombiningGraph, on top of the Graph tests in GraphInstanceTest.
+ */
+public class CombiningGraphTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   wrapped graph: ConcreteEdgesGraph, ConcreteVerticesGraph
+    //   requests: add, set, increment, merge, remove; invalid ones rethrown to the caller
+    //   threads: one, many incrementing the same hot edge and distinct edges
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new CombiningGraph<>(new ConcreteEdgesGraph());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullGraph() {
+        new CombiningGraph<String>(null);
+    }
+
+    @Test
+    public void testFailuresReachTheCaller() {
+        CombiningGraph<String> graph = new CombiningGraph<>(new ConcreteVerticesGraph());
+        graph.increment("a", "b", 2);
+        try {
+            graph.increment("a", "b", -3);
+            fail("expected a negative weight to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("failed request leaves the weight alone",
+                Collections.singletonMap("b", 2), graph.targets("a"));
+        assertEquals(5, graph.merge("a", "b", 3, Integer::sum));
+        assertEquals(0, graph.increment("a", "b", -5));
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws InterruptedException {
+        CombiningGraph<String> graph = new CombiningGraph<>(new ConcreteEdgesGraph());
+        final int threads = 4;
+        final int rounds = 5000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final String own = "w" + t;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    graph.increment("the", "cat", 1);
+                    graph.increment(own, "the", 2);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals("hot edge", Integer.valueOf(threads * rounds), graph.targets("the").get("cat"));
+        assertEquals("one source per thread", threads, graph.sources("the").size());
+        for (int t = 0; t < threads; t++) {
+            assertEquals("edge of thread " + t, Integer.valueOf(2 * rounds), graph.sources("the").get("w" + t));
+        }
+    }
+}
@@ -2,7 +2,9 @@ package graph;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -44,6 +46,127 @@ public class ConcreteEdgesGraphTest extends GraphInstanceTest {
         assertFalse("Edge from X to Y should now be removed", graph.targets("X").containsKey("Y"));
     }
 
+    // Check counting adjacencies with increment and merge
+    @Test
+    public void testIncrementAndMerge() {
+        ConcreteEdgesGraph graph = new ConcreteEdgesGraph();
+        assertEquals("First increment should create the edge", 1, graph.increment("X", "Y", 1));
+        assertEquals("Second increment should add to the weight", 3, graph.increment("X", "Y", 2));
+        assertEquals("Merge should combine with the weight", 3, graph.merge("X", "Y", 5, Math::min));
+        assertEquals("Sources should see the new weight", (Integer) 3, graph.sources("Y").get("X"));
+        assertEquals("Decrement to zero should remove the edge", 0, graph.increment("X", "Y", -3));
+        assertTrue("Edge from X to Y should be removed", graph.targets("X").isEmpty());
+        assertTrue("Edge into Y should be removed", graph.sources("Y").isEmpty());
+    }
+
+    // Check that sources(), targets() and vertices() are live read-only views
+    @Test
+    public void testLiveReadOnlyViews() {
+        GraphAssert.assertLiveReadOnlyViews(emptyInstance());
+    }
+
+    // Check that iterating a view hands out each edge's own entries instead of new ones
+    @Test
+    public void testViewIterationReusesEntries() {
+        ConcreteEdgesGraph graph = new ConcreteEdgesGraph();
+        graph.set("a", "b", 400);
+        graph.set("c", "b", 500);
+        Map.Entry<String, Integer> first = graph.targets("a").entrySet().iterator().next();
+        assertEquals("Entry should be keyed by the target", "b", first.getKey());
+        assertEquals("Entry should hold the weight", Integer.valueOf(400), first.getValue());
+        assertSame("Iterating again should reuse the entry", first, graph.targets("a").entrySet().iterator().next());
+        for (Map.Entry<String, Integer> entry : graph.sources("b").entrySet()) {
+            assertSame("Sources view should reuse its entries too", entry, graph.sources("b").entrySet().stream()
+                    .filter(e -> e.getKey().equals(entry.getKey())).findFirst().get());
+        }
+        try {
+            first.setValue(1);
+            fail("Expected entries to be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals("Weight lookup should agree with the entry", Integer.valueOf(400), graph.targets("a").get("b"));
+    }
+
+    // Check that the primitive visitors agree with targets() and sources() and allocate nothing per edge
+    @Test
+    public void testEdgeVisitorsDoNotAllocatePerEdge() {
+        GraphAssert.assertVisitorsDoNotAllocatePerEdge(new ConcreteEdgesGraph());
+    }
+
+    // Check applying a batch of mutations atomically, and rolling back a failed batch
+    @Test
+    public void testApplyAllAndRollback() {
+        ConcreteEdgesGraph graph = new ConcreteEdgesGraph();
+        graph.batch().set("X", "Y", 2).set("Y", "Z", 3).add("W").remove("Z").commit();
+        assertEquals("Batch should apply in order", Collections.singletonMap("Y", 2), graph.targets("X"));
+        assertEquals("Removed vertex should take its edges", Collections.emptyMap(), graph.targets("Y"));
+        assertEquals("Vertices after the batch", new HashSet<>(Arrays.asList("X", "Y", "W")), graph.vertices());
+
+        Set<String> verticesBefore = new HashSet<>(graph.vertices());
+        try {
+            // the null entry fails after the other mutations have been applied
+            graph.applyAll(Arrays.asList(Mutation.remove("X"), Mutation.set("W", "Y", 7),
+                    Mutation.set("new", "X", 1), null));
+            fail("Expected the batch to fail on its null entry");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        assertEquals("Failed batch should leave the vertices unchanged", verticesBefore, graph.vertices());
+        assertEquals("Failed batch should leave the edges unchanged", Collections.singletonMap("Y", 2), graph.targets("X"));
+        assertEquals("Removed edge should be restored", Collections.singletonMap("X", 2), graph.sources("Y"));
+        assertFalse("Added vertex should be removed again", graph.vertices().contains("new"));
+    }
+
+    // Check that a rejected set() leaves the graph unchanged
+    @Test
+    public void testRejectedSetLeavesGraphUnchanged() {
+        ConcreteEdgesGraph graph = new ConcreteEdgesGraph();
+        graph.set("a", "c", 1);
+        try {
+            graph.set(null, "b", 3);
+            fail("Expected a null source to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            graph.set("b", null, 0);
+            fail("Expected a null target to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("Rejected set should add no vertices", new HashSet<>(Arrays.asList("a", "c")), graph.vertices());
+    }
+
+    // Check that each invariant-checking mode runs and counts the expected checks
+    @Test
+    public void testInvariantCheckerModes() {
+        InvariantChecker[] checkers = {
+            InvariantChecker.off(), InvariantChecker.sampled(3), InvariantChecker.incremental(), InvariantChecker.full()
+        };
+        for (InvariantChecker checker : checkers) {
+            ConcreteEdgesGraph graph = new ConcreteEdgesGraph(checker);
+            assertSame("Graph should report its checker", checker, graph.invariantChecker());
+            for (int i = 0; i < 5; i++) {
+                graph.set("X", "Y" + i, i + 1);
+            }
+            graph.remove("X");
+            assertTrue("Graph should still work in mode " + checker.mode(), graph.vertices().contains("Y4"));
+        }
+        assertEquals("Off should count nothing", 0, checkers[0].mutations());
+        assertEquals("Sampled should check every third mutation", 2, checkers[1].fullChecks());
+        assertEquals("Incremental should check every mutation locally", 6, checkers[2].incrementalChecks());
+        assertEquals("Incremental should never check everything", 0, checkers[2].fullChecks());
+        assertEquals("Full should check every mutation", 6, checkers[3].fullChecks());
+        assertTrue("Report should name the mode", checkers[1].toString().startsWith("SAMPLED(1/3): 6 mutations"));
+    }
+
+    // Check that a sampling period must be positive
+    @Test(expected = IllegalArgumentException.class)
+    public void testSampledCheckerNeedsPositivePeriod() {
+        InvariantChecker.sampled(0);
+    }
+
     // Check removing a vertex from the graph
     @Test
     public void testDeleteNode() {
@@ -4,7 +4,9 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,6 +39,78 @@ public class ConcreteVerticesGraphTest extends GraphInstanceTest {
         assertTrue("Edge from X to Y should be removed", graph.targets("X").isEmpty());
     }
 
+    // Tests counting adjacencies with increment and merge
+    @Test
+    public void testIncrementAndMerge() {
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        assertEquals("First increment should create the edge", 1, graph.increment("X", "Y", 1));
+        assertEquals("Second increment should add to the weight", 3, graph.increment("X", "Y", 2));
+        assertEquals("Merge should combine with the weight", 3, graph.merge("X", "Y", 5, Math::min));
+        assertEquals("Sources should see the new weight", (Integer) 3, graph.sources("Y").get("X"));
+        assertEquals("Decrement to zero should remove the edge", 0, graph.increment("X", "Y", -3));
+        assertTrue("Edge from X to Y should be removed", graph.targets("X").isEmpty());
+        assertTrue("Edge into Y should be removed", graph.sources("Y").isEmpty());
+    }
+
+    // Tests that sources(), targets() and vertices() are live read-only views
+    @Test
+    public void testLiveReadOnlyViews() {
+        GraphAssert.assertLiveReadOnlyViews(emptyInstance());
+    }
+
+    // Tests that the primitive visitors agree with targets() and sources() and allocate nothing per edge
+    @Test
+    public void testEdgeVisitorsDoNotAllocatePerEdge() {
+        GraphAssert.assertVisitorsDoNotAllocatePerEdge(new ConcreteVerticesGraph());
+    }
+
+    // Tests applying a batch of mutations atomically, and rolling back a failed batch
+    @Test
+    public void testApplyAllAndRollback() {
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        graph.batch().set("X", "Y", 2).set("Y", "Z", 3).add("W").remove("Z").commit();
+        assertEquals("Batch should apply in order", Collections.singletonMap("Y", 2), graph.targets("X"));
+        assertEquals("Removed vertex should take its edges", Collections.emptyMap(), graph.targets("Y"));
+        assertEquals("Vertices after the batch", new HashSet<>(Arrays.asList("X", "Y", "W")), graph.vertices());
+
+        Set<String> verticesBefore = new HashSet<>(graph.vertices());
+        try {
+            // the null entry fails after the other mutations have been applied
+            graph.applyAll(Arrays.asList(Mutation.remove("X"), Mutation.set("W", "Y", 7),
+                    Mutation.set("new", "X", 1), null));
+            fail("Expected the batch to fail on its null entry");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        assertEquals("Failed batch should leave the vertices unchanged", verticesBefore, graph.vertices());
+        assertEquals("Failed batch should leave the edges unchanged", Collections.singletonMap("Y", 2), graph.targets("X"));
+        assertEquals("Removed edge should be restored", Collections.singletonMap("X", 2), graph.sources("Y"));
+        assertFalse("Added vertex should be removed again", graph.vertices().contains("new"));
+    }
+
+    // Tests that each invariant-checking mode runs and counts the expected checks
+    @Test
+    public void testInvariantCheckerModes() {
+        InvariantChecker[] checkers = {
+            InvariantChecker.off(), InvariantChecker.sampled(3), InvariantChecker.incremental(), InvariantChecker.full()
+        };
+        for (InvariantChecker checker : checkers) {
+            ConcreteVerticesGraph graph = new ConcreteVerticesGraph(checker);
+            assertSame("Graph should report its checker", checker, graph.invariantChecker());
+            for (int i = 0; i < 5; i++) {
+                graph.set("X", "Y" + i, i + 1);
+            }
+            graph.remove("X");
+            assertTrue("Graph should still work in mode " + checker.mode(), graph.vertices().contains("Y4"));
+        }
+        assertEquals("Off should count nothing", 0, checkers[0].mutations());
+        assertEquals("Sampled should check every third mutation", 2, checkers[1].fullChecks());
+        assertEquals("Incremental should check every mutation locally", 6, checkers[2].incrementalChecks());
+        assertEquals("Incremental should never check everything", 0, checkers[2].fullChecks());
+        assertEquals("Full should check every mutation", 6, checkers[3].fullChecks());
+        assertTrue("Report should name the mode", checkers[1].toString().startsWith("SAMPLED(1/3): 6 mutations"));
+    }
+
     // Tests removal of vertices and any associated edges
     @Test
     public void testVertexRemoval() {
@@ -95,6 +169,20 @@ public class ConcreteVerticesGraphTest extends GraphInstanceTest {
         assertTrue("Target should be Q with weight 3", targets.containsKey("Q") && targets.get("Q") == 3);
     }
 
+    // Tests that removing a vertex clears it from the sources and targets of its neighbours
+    @Test
+    public void testVertexRemovalUpdatesInboundEdges() {
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        graph.set("A", "B", 1);
+        graph.set("B", "C", 2);
+        graph.set("C", "B", 3);
+
+        assertEquals("B should have two sources", 2, graph.sources("B").size());
+        assertTrue("Vertex C should be removed", graph.remove("C"));
+        assertEquals("Only A should remain a source of B", Collections.singletonMap("A", 1), graph.sources("B"));
+        assertTrue("Edge from B to C should also be removed", graph.targets("B").isEmpty());
+    }
+
     // Tests that the string representation matches the expected format
     @Test
     public void testGraphToString() {
@@ -0,0 +1,152 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests for ConcurrentGraph, on top of the Graph tests in GraphInstanceTest.
+ */
+public class ConcurrentGraphTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   single thread: everything in GraphInstanceTest, views are live, remove with self-loop
+    //   many threads: disjoint sources, one shared source, set racing remove
+    //   after threads finish: sources() and targets() agree edge by edge
+    //   increment()/merge(): new edge, existing edge, down to zero, below zero, many threads
+
+    private static final int THREADS = 8;
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new ConcurrentGraph<>();
+    }
+
+    private static void runConcurrently(List<Callable<Void>> tasks) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertConsistent(Graph<String> graph) {
+        for (String source : graph.vertices()) {
+            for (Map.Entry<String, Integer> edge : graph.targets(source).entrySet()) {
+                assertEquals("sources of " + edge.getKey() + " should mirror targets of " + source,
+                        edge.getValue(), graph.sources(edge.getKey()).get(source));
+            }
+            for (Map.Entry<String, Integer> edge : graph.sources(source).entrySet()) {
+                assertEquals("targets of " + edge.getKey() + " should mirror sources of " + source,
+                        edge.getValue(), graph.targets(edge.getKey()).get(source));
+            }
+        }
+    }
+
+    @Test
+    public void testViewsAreLive() {
+        ConcurrentGraph<String> graph = new ConcurrentGraph<>();
+        graph.set("a", "a", 1);
+        Map<String, Integer> targets = graph.targets("a");
+        graph.set("a", "b", 2);
+        assertEquals("view should see the new edge", 2, targets.size());
+        assertEquals("zero weight removes the edge", 1, graph.set("a", "a", 0));
+        assertEquals("view should drop the removed edge", Collections.singletonMap("b", 2), targets);
+        assertTrue("remove b", graph.remove("b"));
+        assertTrue("view should drop the removed vertex", targets.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentDisjointAndSharedSources() throws Exception {
+        final ConcurrentGraph<String> graph = new ConcurrentGraph<>(THREADS);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            tasks.add(() -> {
+                for (int i = 0; i < 500; i++) {
+                    graph.set("own" + thread, "w" + i, i + 1);
+                    graph.set("shared", "w" + (thread * 500 + i), 1);
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks);
+        assertEquals("shared source should have every edge", THREADS * 500, graph.targets("shared").size());
+        for (int t = 0; t < THREADS; t++) {
+            assertEquals("own source edges", 500, graph.targets("own" + t).size());
+        }
+        assertEquals("w0 has one edge per own source plus shared", THREADS + 1, graph.sources("w0").size());
+        assertConsistent(graph);
+    }
+
+    @Test
+    public void testSetRacingRemove() throws Exception {
+        final ConcurrentGraph<String> graph = new ConcurrentGraph<>(THREADS);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            tasks.add(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    String a = "v" + (i % 13);
+                    String b = "v" + ((i * 7 + thread) % 13);
+                    if (thread % 4 == 0 && i % 10 == 0) {
+                        graph.remove(a);
+                    } else {
+                        graph.set(a, b, i % 3);
+                    }
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks);
+        assertConsistent(graph);
+    }
+
+    @Test
+    public void testMergeAndIncrement() {
+        ConcurrentGraph<String> graph = new ConcurrentGraph<>();
+        assertEquals("new edge takes the value", 2, graph.increment("a", "b", 2));
+        assertEquals("existing edge is combined", 6, graph.merge("a", "b", 3, (old, v) -> old * v));
+        assertEquals("down to zero removes the edge", 0, graph.increment("a", "b", -6));
+        assertFalse("edge is gone", graph.targets("a").containsKey("b"));
+        assertTrue("vertices are kept", graph.vertices().contains("b"));
+        try {
+            graph.increment("a", "c", -1);
+            fail("negative weight should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected exception
+        }
+        assertFalse("rejected increment adds nothing", graph.vertices().contains("c"));
+    }
+
+    @Test
+    public void testConcurrentIncrementsAreExact() throws Exception {
+        final ConcurrentGraph<String> graph = new ConcurrentGraph<>(THREADS);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            tasks.add(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    graph.increment("the", "w" + (i % 10), 1);
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("count of the -> w" + i, (Integer) (THREADS * 500), graph.targets("the").get("w" + i));
+        }
+        assertConsistent(graph);
+    }
+}
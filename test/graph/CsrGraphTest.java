@@ -0,0 +1,100 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for CsrGraph snapshots taken with Graphs.freeze().
+ */
+public class CsrGraphTest {
+
+    // Testing strategy
+    //   source graph: ConcreteEdgesGraph, ConcreteVerticesGraph, empty
+    //   vertices: isolated, self-loop, in/out edges
+    //   sources()/targets(): present label, unknown label, get() of non-neighbour
+    //   mutators: add(), set(), remove() all rejected
+    //   snapshot independence: later changes to the source graph
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static <G extends Graph<String>> G fill(G graph) {
+        graph.set("a", "b", 1);
+        graph.set("a", "c", 2);
+        graph.set("c", "a", 3);
+        graph.set("c", "c", 4);
+        graph.add("lonely");
+        return graph;
+    }
+
+    @Test
+    public void testFreezeConcreteEdgesGraph() {
+        Graph<String> graph = fill(new ConcreteEdgesGraph());
+        GraphAssert.assertSameGraph(graph, Graphs.freeze(graph));
+    }
+
+    @Test
+    public void testFreezeConcreteVerticesGraph() {
+        Graph<String> graph = fill(new ConcreteVerticesGraph());
+        GraphAssert.assertSameGraph(graph, Graphs.freeze(graph));
+    }
+
+    @Test
+    public void testFreezeEmpty() {
+        CsrGraph<Integer> frozen = Graphs.freeze(Graph.<Integer>empty());
+        assertEquals("expected no vertices", Collections.emptySet(), frozen.vertices());
+        assertEquals("expected no targets", Collections.emptyMap(), frozen.targets(1));
+    }
+
+    @Test
+    public void testRowLookups() {
+        CsrGraph<String> frozen = Graphs.freeze(fill(new ConcreteEdgesGraph()));
+        Map<String, Integer> targets = frozen.targets("a");
+        assertEquals("weight of a -> c", (Integer) 2, targets.get("c"));
+        assertNull("c is a vertex but not a target of a", targets.get("lonely"));
+        assertNull("unknown labels are not targets", targets.get("missing"));
+        assertFalse("containsKey of a non-neighbour", targets.containsKey("a"));
+        assertEquals("unknown vertex has no sources", Collections.emptyMap(), frozen.sources("missing"));
+        assertEquals("self-loop is its own source", (Integer) 4, frozen.sources("c").get("c"));
+
+        Map<String, Integer> copy = new HashMap<>(targets);
+        assertEquals("views should copy like any map", targets, copy);
+    }
+
+    @Test
+    public void testSnapshotIsIndependent() {
+        Graph<String> graph = fill(new ConcreteEdgesGraph());
+        CsrGraph<String> frozen = Graphs.freeze(graph);
+        graph.set("a", "b", 9);
+        graph.remove("c");
+        assertEquals("snapshot should keep the old weight", (Integer) 1, frozen.targets("a").get("b"));
+        assertTrue("snapshot should keep removed vertices", frozen.vertices().contains("c"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAddRejected() {
+        Graphs.freeze(fill(new ConcreteEdgesGraph())).add("x");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSetRejected() {
+        Graphs.freeze(fill(new ConcreteEdgesGraph())).set("a", "b", 5);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemoveRejected() {
+        Graphs.freeze(fill(new ConcreteEdgesGraph())).remove("a");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testVerticesUnmodifiable() {
+        Graphs.freeze(fill(new ConcreteEdgesGraph())).vertices().add("x");
+    }
+}
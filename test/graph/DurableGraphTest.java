@@ -0,0 +1,221 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for DurableGraph logging, checkpoints and recovery.
+ */
+public class DurableGraphTest {
+
+    // Testing strategy
+    //   mutations: add, set (new edge, update, zero), remove, no-ops, rejected
+    //   recovery: from the log only, from a checkpoint plus a log, after automatic checkpoints,
+    //     with a torn record at the end of the log
+    //   writers: one, several concurrent
+    //   lifecycle: mutation after close
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static void deleteAll(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static Set<String> files(Path directory) throws IOException {
+        Set<String> names = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                names.add(file.getFileName().toString());
+            }
+        }
+        return names;
+    }
+
+    @Test
+    public void testRecoverFromLog() throws IOException {
+        Path directory = Files.createTempDirectory("durable");
+        try {
+            try (DurableGraph graph = DurableGraph.open(directory)) {
+                assertTrue("new vertex", graph.add("a"));
+                assertFalse("existing vertex", graph.add("a"));
+                assertEquals("new edge", 0, graph.set("a", "b", 3));
+                assertEquals("updated edge", 3, graph.set("a", "b", 5));
+                graph.set("b", "c", 1);
+                graph.set("c", "\u00e9t\u00e9", 2);
+                assertEquals("removed edge", 1, graph.set("b", "c", 0));
+                assertTrue("removed vertex", graph.remove("c"));
+                try {
+                    graph.set("a", "b", -1);
+                    fail("Expected a negative weight to be rejected");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+            try (DurableGraph graph = DurableGraph.open(directory)) {
+                assertEquals("vertices should be recovered",
+                        new HashSet<>(Arrays.asList("a", "b", "\u00e9t\u00e9")), graph.vertices());
+                assertEquals("edges should be recovered", Collections.singletonMap("b", 5), graph.targets("a"));
+                assertEquals("removed vertex should take its edges", Collections.emptyMap(), graph.sources("\u00e9t\u00e9"));
+                assertEquals("removed edge should stay removed", Collections.emptyMap(), graph.targets("b"));
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testRecoverFromCheckpointAndLog() throws IOException {
+        Path directory = Files.createTempDirectory("durable");
+        try {
+            Graph<String> expected = new ConcreteEdgesGraph();
+            try (DurableGraph graph = DurableGraph.open(directory)) {
+                for (int i = 0; i < 50; i++) {
+                    graph.set("v" + i, "v" + (i * 7 % 50), i + 1);
+                    expected.set("v" + i, "v" + (i * 7 % 50), i + 1);
+                }
+                graph.checkpoint();
+                assertEquals("checkpoint should start a new log",
+                        new HashSet<>(Arrays.asList("checkpoint-1.bin", "wal-1.log")), files(directory));
+                for (int i = 0; i < 50; i += 3) {
+                    graph.remove("v" + i);
+                    expected.remove("v" + i);
+                }
+                graph.set("v1", "new", 9);
+                expected.set("v1", "new", 9);
+            }
+            try (DurableGraph graph = DurableGraph.open(directory)) {
+                GraphAssert.assertSameGraph(expected, graph);
+                graph.set("v1", "newer", 4);
+                expected.set("v1", "newer", 4);
+            }
+            try (DurableGraph graph = DurableGraph.open(directory)) {
+                GraphAssert.assertSameGraph(expected, graph);
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testAutomaticCheckpoints() throws IOException {
+        Path directory = Files.createTempDirectory("durable");
+        try {
+            Graph<String> expected = new ConcreteEdgesGraph();
+            try (DurableGraph graph = DurableGraph.open(directory, 512)) {
+                for (int i = 0; i < 200; i++) {
+                    graph.set("s" + i % 17, "t" + i % 23, i + 1);
+                    expected.set("s" + i % 17, "t" + i % 23, i + 1);
+                }
+                assertTrue("checkpoints should have been taken", graph.generation() > 3);
+                assertEquals("old files should be deleted", 2, files(directory).size());
+                assertTrue("log should stay near the threshold",
+                        Files.size(directory.resolve("wal-" + graph.generation() + ".log")) < 1024);
+            }
+            try (DurableGraph graph = DurableGraph.open(directory, 512)) {
+                GraphAssert.assertSameGraph(expected, graph);
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testTornRecordDiscarded() throws IOException {
+        Path directory = Files.createTempDirectory("durable");
+        try {
+            try (DurableGraph graph = DurableGraph.open(directory)) {
+                graph.set("a", "b", 1);
+                graph.set("b", "c", 2);
+            }
+            Path log = directory.resolve("wal-0.log");
+            long intact = Files.size(log);
+            // a crash in the middle of writing a third record
+            try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(new byte[] {20, 0, 0, 0, 1, 2, 3, 4, 1, 0}));
+            }
+            try (DurableGraph graph = DurableGraph.open(directory)) {
+                assertEquals("torn record should be truncated", intact, Files.size(log));
+                assertEquals("intact records should be replayed", Collections.singletonMap("c", 2), graph.targets("b"));
+                graph.set("c", "a", 3);
+            }
+            try (DurableGraph graph = DurableGraph.open(directory)) {
+                assertEquals("records after the truncation should be kept", Collections.singletonMap("a", 3), graph.targets("c"));
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testConcurrentWritersShareSyncs() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        try {
+            int writers = 4;
+            int perWriter = 100;
+            DurableGraph graph = DurableGraph.open(directory);
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+            for (int w = 0; w < writers; w++) {
+                String source = "writer" + w;
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < perWriter; i++) {
+                            graph.set(source, "t" + i, i + 1);
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals("writers should not fail", Collections.emptyList(), failures);
+            assertTrue("no more than one sync per mutation", graph.syncs() <= writers * perWriter);
+            graph.close();
+            try (DurableGraph recovered = DurableGraph.open(directory)) {
+                GraphAssert.assertSameGraph(graph, recovered);
+                assertEquals("every edge should be recovered", perWriter, recovered.targets("writer3").size());
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedGraphRejectsMutations() throws IOException {
+        Path directory = Files.createTempDirectory("durable");
+        try {
+            DurableGraph graph = DurableGraph.open(directory);
+            graph.close();
+            graph.add("a");
+        } finally {
+            deleteAll(directory);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assertions about graphs shared by the tests of several implementations.
+ */
+final class GraphAssert {
+
+    private GraphAssert() {
+        // static helpers only
+    }
+
+    /**
+     * Asserts that two graphs have the same vertices and the same edges,
+     * comparing both targets() and sources() of every vertex.
+     *
+     * @param expected the graph expected
+     * @param actual the graph to check
+     */
+    static void assertSameGraph(Graph<String> expected, Graph<String> actual) {
+        assertEquals("vertices should match", expected.vertices(), actual.vertices());
+        for (String v : expected.vertices()) {
+            assertEquals("targets of " + v + " should match", expected.targets(v), actual.targets(v));
+            assertEquals("sources of " + v + " should match", expected.sources(v), actual.sources(v));
+        }
+    }
+
+    /**
+     * Asserts that sources(), targets() and vertices() of a graph are live
+     * read-only views: they see later mutations, follow a vertex through
+     * remove() and a later set(), and reject modification.
+     *
+     * @param graph an empty graph
+     */
+    static void assertLiveReadOnlyViews(Graph<String> graph) {
+        Set<String> vertices = graph.vertices();
+        Map<String, Integer> targets = graph.targets("a");
+        Map<String, Integer> sources = graph.sources("b");
+        assertTrue("View of an absent vertex should be empty", targets.isEmpty());
+
+        graph.set("a", "b", 4);
+        graph.set("a", "c", 1);
+        assertEquals("Vertex view should see later additions", new HashSet<>(Arrays.asList("a", "b", "c")), vertices);
+        assertEquals("Targets view should see later edges", 2, targets.size());
+        assertEquals("Targets view should report weights", Integer.valueOf(4), targets.get("b"));
+        assertEquals("Sources view should see later edges", Collections.singletonMap("a", 4), sources);
+
+        graph.remove("a");
+        assertTrue("Views should forget a removed vertex's edges", targets.isEmpty() && sources.isEmpty());
+        graph.set("a", "b", 2);
+        assertEquals("Views should follow a re-added vertex", Collections.singletonMap("b", 2), targets);
+        assertEquals("Views should follow a re-added vertex", Collections.singletonMap("a", 2), sources);
+
+        try {
+            targets.put("c", 1);
+            fail("Expected targets view to be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            sources.keySet().iterator().remove();
+            fail("Expected sources view to be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            vertices.remove("a");
+            fail("Expected vertex view to be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals("Failed modifications should leave the graph unchanged", Collections.singletonMap("b", 2), graph.targets("a"));
+    }
+
+    /**
+     * Asserts that the primitive visitors and weight lookup of a graph agree
+     * with targets() and sources(), and that they allocate nothing per edge
+     * once warmed up. The allocation check is skipped on JVMs without
+     * per-thread allocation counters.
+     *
+     * @param graph an empty graph
+     */
+    static void assertVisitorsDoNotAllocatePerEdge(TraversableGraph<String> graph) {
+        int degree = 1000;
+        for (int i = 0; i < degree; i++) {
+            graph.set("hub", "t" + i, i + 1);
+            graph.set("s" + i, "hub", i + 1);
+        }
+        Map<String, Integer> visited = new HashMap<>();
+        graph.forEachTarget("hub", visited::put);
+        assertEquals("Visited targets should match targets()", graph.targets("hub"), visited);
+        visited.clear();
+        graph.forEachSource("hub", visited::put);
+        assertEquals("Visited sources should match sources()", graph.sources("hub"), visited);
+        assertEquals("Weight should match the edge", 7, graph.weight("hub", "t6"));
+        assertEquals("Missing edge should weigh 0", 0, graph.weight("t6", "hub"));
+        graph.forEachTarget("missing", (other, weight) -> fail("Absent vertex has no edges"));
+
+        if (allocatedBytes() < 0) {
+            return; // allocation counters unavailable on this JVM
+        }
+        String[] keys = new String[degree];
+        for (int i = 0; i < degree; i++) {
+            keys[i] = "t" + i;
+        }
+        WeightSum sum = new WeightSum();
+        int rounds = 200;
+        for (int warmup = 0; warmup < rounds; warmup++) {
+            traverse(graph, keys, sum);
+        }
+        long before = allocatedBytes();
+        for (int round = 0; round < rounds; round++) {
+            traverse(graph, keys, sum);
+        }
+        long allocated = allocatedBytes() - before;
+        long edges = 3L * degree * rounds;
+        assertTrue("Expected no allocation per edge, got " + allocated + " bytes for " + edges + " edges",
+                allocated < edges / 8);
+        assertTrue("Visitor should have seen every edge", sum.total > 0);
+    }
+
+    // Returns the bytes allocated so far by the current thread, or -1 if the JVM does not count them.
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean counters = (com.sun.management.ThreadMXBean) threads;
+        if (!counters.isThreadAllocatedMemorySupported() || !counters.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return counters.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Visits hub's targets and sources, and looks up each of its outgoing edges
+    private static void traverse(TraversableGraph<String> graph, String[] keys, WeightSum sum) {
+        graph.forEachTarget("hub", sum);
+        graph.forEachSource("hub", sum);
+        for (String key : keys) {
+            sum.total += graph.weight("hub", key);
+        }
+    }
+
+    // Visitor that adds up the weights it sees, without allocating
+    private static final class WeightSum implements EdgeVisitor<String> {
+        long total = 0;
+
+        @Override
+        public void visit(String other, int weight) {
+            total += weight;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for GraphBuilder and WeightedEdge.
+ */
+public class GraphBuilderTest {
+
+    // Testing strategy
+    //   duplicates: REPLACE, SUM; none, several, last one of weight 0
+    //   weight-0 edges: between unknown vertices, between known vertices
+    //   result: build() small (compact) and large (hashed), freeze()
+    //   input: single edges, Iterable, Stream, isolated vertices
+    //   invalid input: null labels, negative weight, overflowing sum
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    @Test
+    public void testReplaceMatchesSequentialSet() {
+        GraphBuilder<String> builder = new GraphBuilder<>();
+        builder.addEdge("a", "b", 1).addEdge("a", "b", 5).addEdge("b", "a", 2)
+                .addEdge("x", "y", 0).addEdge("b", "a", 0).addVertex("lonely");
+        Graph<String> graph = builder.build();
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "lonely")), graph.vertices());
+        assertEquals("last weight wins", Collections.singletonMap("b", 5), graph.targets("a"));
+        assertEquals("weight 0 removes", Collections.emptyMap(), graph.targets("b"));
+        GraphAssert.assertSameGraph(graph, builder.freeze());
+    }
+
+    @Test
+    public void testSumMatchesSequentialIncrement() {
+        GraphBuilder<String> builder = new GraphBuilder<String>(4, 8).duplicates(GraphBuilder.Duplicates.SUM);
+        builder.addEdges(Arrays.asList(new WeightedEdge<>("the", "cat", 1), new WeightedEdge<>("the", "dog", 2),
+                new WeightedEdge<>("the", "cat", 3), new WeightedEdge<>("x", "y", 0)));
+        builder.addEdges(Arrays.asList(new WeightedEdge<>("dog", "the", 4)).stream());
+        CsrGraph<String> frozen = builder.freeze();
+
+        assertEquals("x and y never got an edge", new HashSet<>(Arrays.asList("the", "cat", "dog")), frozen.vertices());
+        assertEquals(Integer.valueOf(4), frozen.targets("the").get("cat"));
+        assertEquals(Integer.valueOf(2), frozen.targets("the").get("dog"));
+        assertEquals(Collections.singletonMap("the", 4), frozen.targets("dog"));
+    }
+
+    @Test
+    public void testLargeRandomGraph() {
+        Random random = new Random(7);
+        GraphBuilder<String> builder = new GraphBuilder<>(300, 5000);
+        ConcreteEdgesGraph expected = new ConcreteEdgesGraph();
+        for (int i = 0; i < 5000; i++) {
+            String source = "v" + random.nextInt(300);
+            String target = "v" + random.nextInt(300);
+            int weight = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(50);
+            builder.addEdge(source, target, weight);
+            expected.set(source, target, weight);
+        }
+        // ConcreteEdgesGraph adds vertices even for weight 0
+        for (String v : expected.vertices()) {
+            builder.addVertex(v);
+        }
+        Graph<String> built = builder.build();
+        assertTrue("large graphs use the hashed layout", ((AdaptiveGraph<String>) built).isHashed());
+        GraphAssert.assertSameGraph(expected, built);
+        GraphAssert.assertSameGraph(expected, builder.freeze());
+
+        built.set("new", "v1", 3);
+        assertEquals("built graph is mutable", Integer.valueOf(3), built.sources("v1").get("new"));
+    }
+
+    @Test
+    public void testSmallGraphIsCompact() {
+        Graph<String> graph = new GraphBuilder<String>().addEdge("a", "b", 1).addEdge("c", "a", 2).build();
+        assertFalse(((AdaptiveGraph<String>) graph).isHashed());
+        assertEquals(Collections.singletonMap("c", 2), graph.sources("a"));
+        graph.remove("a");
+        assertEquals(new HashSet<>(Arrays.asList("b", "c")), graph.vertices());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSumOverflow() {
+        new GraphBuilder<String>().duplicates(GraphBuilder.Duplicates.SUM)
+                .addEdge("a", "b", Integer.MAX_VALUE).addEdge("a", "b", 1).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeight() {
+        new GraphBuilder<String>().addEdge("a", "b", -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullEdgeLabel() {
+        new WeightedEdge<String>("a", null, 1);
+    }
+
+    @Test
+    public void testWeightedEdgeEquality() {
+        WeightedEdge<String> edge = new WeightedEdge<>("a", "b", 3);
+        assertEquals(new WeightedEdge<>("a", "b", 3), edge);
+        assertEquals(new WeightedEdge<>("a", "b", 3).hashCode(), edge.hashCode());
+        assertFalse(edge.equals(new WeightedEdge<>("a", "b", 4)));
+        assertEquals("a -> b (3)", edge.toString());
+    }
+}
@@ -0,0 +1,185 @@
+package graph;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Rough throughput comparison of thread-safe graphs under contention. Not a
+ * JUnit test; run it by hand:
+ *
+ * <pre>
+ * java -cp bin graph.GraphContentionBenchmark [threads] [seconds] [writes per million ops]
+ * </pre>
+ *
+ * The read-mostly round has each thread read the targets or sources of a
+ * random vertex, or (rarely) set the weight of a random edge. The skewed write
+ * round has each thread count word pairs in which a few stop words make up
+ * most of the occurrences, so writers keep colliding on the same edges. Each
+ * round reports total operations per second for each graph after a warm-up.
+ */
+public class GraphContentionBenchmark {
+
+    private static final int VERTICES = 1000;
+    private static final int EDGES_PER_VERTEX = 8;
+    private static final int HOT_VERTICES = 4;
+
+    /**
+     * One operation of a workload against a graph.
+     */
+    private interface Workload<G> {
+        /** @return any value, summed so that the work is not optimized away */
+        int step(G graph, ThreadLocalRandom random);
+    }
+
+    private static String label(int i) {
+        return "v" + i;
+    }
+
+    // Returns a vertex that is one of the few hot ones about 90% of the time.
+    private static String skewedLabel(ThreadLocalRandom random) {
+        return label(random.nextInt(10) == 0 ? random.nextInt(VERTICES) : random.nextInt(HOT_VERTICES));
+    }
+
+    private static <G extends Graph<String>> G fill(G graph) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < VERTICES; i++) {
+            for (int j = 0; j < EDGES_PER_VERTEX; j++) {
+                graph.set(label(i), label(random.nextInt(VERTICES)), 1 + random.nextInt(100));
+            }
+        }
+        return graph;
+    }
+
+    private static <G> double run(G graph, Workload<G> workload, int threads, long nanos)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long sink = 0;
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long deadline = System.nanoTime() + nanos;
+                while ((count & 0xFF) != 0 || System.nanoTime() < deadline) {
+                    sink += workload.step(graph, random);
+                    count++;
+                }
+                operations.add(count + (sink == -1 ? 1 : 0));
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() * 1e9 / (System.nanoTime() - begin);
+    }
+
+    private static <G extends Graph<String>> void measure(String name, Supplier<G> factory, Workload<G> workload,
+            int threads, long nanos) throws InterruptedException {
+        run(fill(factory.get()), workload, threads, nanos / 2);  // warm-up
+        double throughput = run(fill(factory.get()), workload, threads, nanos);
+        System.out.printf("  %-34s %,14.0f ops/s%n", name, throughput);
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args optional thread count, seconds per measurement, and writes per
+     *             million operations in the read-mostly round (default: available
+     *             processors, 2, 1000)
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long nanos = (long) ((args.length > 1 ? Double.parseDouble(args[1]) : 2) * 1e9);
+        int writesPerMillion = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        Workload<Graph<String>> readMostly = (graph, random) -> {
+            String vertex = label(random.nextInt(VERTICES));
+            int dice = random.nextInt(1000000);
+            if (dice < writesPerMillion) {
+                return graph.set(vertex, label(random.nextInt(VERTICES)), 1 + random.nextInt(100));
+            }
+            return (dice & 1) == 0 ? graph.targets(vertex).size() : graph.sources(vertex).size();
+        };
+        System.out.printf("read-mostly, %d threads, %d writes per million operations%n", threads, writesPerMillion);
+        measure("synchronizedGraph(vertices graph)",
+                () -> Graphs.synchronizedGraph(new ConcreteVerticesGraph()), readMostly, threads, nanos);
+        measure("optimisticGraph(vertices graph)",
+                () -> Graphs.optimisticGraph(new ConcreteVerticesGraph()), readMostly, threads, nanos);
+        measure("ConcurrentGraph", ConcurrentGraph::new, readMostly, threads, nanos);
+
+        Workload<CountingGraph<String>> skewedCounts =
+                (graph, random) -> graph.increment(skewedLabel(random), skewedLabel(random), 1);
+        System.out.printf("skewed increments, %d threads, %d hot vertices%n", threads, HOT_VERTICES);
+        measure("synchronized(edges graph)", () -> new LockedCountingGraph(new ConcreteEdgesGraph()),
+                skewedCounts, threads, nanos);
+        measure("ConcurrentGraph (striped locks)", ConcurrentGraph::new, skewedCounts, threads, nanos);
+        measure("CombiningGraph(edges graph)", () -> new CombiningGraph<>(new ConcreteEdgesGraph()),
+                skewedCounts, threads, nanos);
+        measure("CombiningGraph(vertices graph)", () -> new CombiningGraph<>(new ConcreteVerticesGraph()),
+                skewedCounts, threads, nanos);
+    }
+
+    /**
+     * Baseline: every operation holds the lock of this wrapper.
+     */
+    private static final class LockedCountingGraph implements CountingGraph<String> {
+        private final CountingGraph<String> graph;
+
+        LockedCountingGraph(CountingGraph<String> graph) {
+            this.graph = graph;
+        }
+
+        @Override
+        public synchronized int merge(String source, String target, int value,
+                IntBinaryOperator op) {
+            return graph.merge(source, target, value, op);
+        }
+
+        @Override
+        public synchronized boolean add(String vertex) {
+            return graph.add(vertex);
+        }
+
+        @Override
+        public synchronized int set(String source, String target, int weight) {
+            return graph.set(source, target, weight);
+        }
+
+        @Override
+        public synchronized boolean remove(String vertex) {
+            return graph.remove(vertex);
+        }
+
+        @Override
+        public synchronized Set<String> vertices() {
+            return new HashSet<>(graph.vertices());
+        }
+
+        @Override
+        public synchronized Map<String, Integer> sources(String target) {
+            return new HashMap<>(graph.sources(target));
+        }
+
+        @Override
+        public synchronized Map<String, Integer> targets(String source) {
+            return new HashMap<>(graph.targets(source));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests for writing graphs with GraphExport.
+ */
+public class GraphExportTest {
+
+    // Testing strategy
+    //   format: TSV, DOT, GraphML
+    //   output: Appendable, channel, sharded files
+    //   graph: TraversableGraph or not; empty, with self-loop, isolated vertex, labels needing
+    //     escapes in every format, more text than the buffer
+    //   round trip: TSV and DOT read back with GraphImport, GraphML parsed as XML
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static Graph<String> sample(Graph<String> graph) {
+        graph.set("a", "b", 3);
+        graph.set("b", "a", 1);
+        graph.set("b", "b", 2);
+        graph.set("tab\there", "#hash", 7);
+        graph.set("say \"hi\"", "back\\slash", 4);
+        graph.set("<&>", "multi\nline\r", 5);
+        graph.set("\u00e9t\u00e9", "a", Integer.MAX_VALUE);
+        graph.add("alone");
+        return graph;
+    }
+
+    private static Graph<String> large() {
+        Graph<String> graph = new ConcreteEdgesGraph();
+        for (int i = 0; i < 5000; i++) {
+            graph.set("vertex-" + i % 1000, "vertex-" + (i * 7 + i / 1000) % 1000, i + 1);
+        }
+        return graph;
+    }
+
+    private static Graph<String> roundTrip(Graph<String> graph, GraphExport.Format format,
+            GraphImport.Format readAs) throws IOException {
+        Path file = Files.createTempFile("export", "." + format.extension());
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                GraphExport.write(graph, format, channel);
+            }
+            Graph<String> read = new ConcreteEdgesGraph();
+            GraphImport.read(file, readAs, read);
+            return read;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testTsvRoundTrip() throws IOException {
+        GraphAssert.assertSameGraph(sample(new ConcreteEdgesGraph()),
+                roundTrip(sample(new ConcreteEdgesGraph()), GraphExport.Format.TSV, GraphImport.Format.TSV));
+        GraphAssert.assertSameGraph(large(), roundTrip(large(), GraphExport.Format.TSV, GraphImport.Format.TSV));
+    }
+
+    @Test
+    public void testDotRoundTrip() throws IOException {
+        Graph<String> graph = sample(new ConcurrentGraph<>());
+        GraphAssert.assertSameGraph(graph, roundTrip(graph, GraphExport.Format.DOT, GraphImport.Format.DOT));
+        Graph<String> empty = new ConcreteVerticesGraph();
+        GraphAssert.assertSameGraph(empty, roundTrip(empty, GraphExport.Format.DOT, GraphImport.Format.DOT));
+    }
+
+    private static void readGraphMl(Document document, Graph<String> graph) {
+        NodeList nodes = document.getElementsByTagName("node");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            graph.add(((Element) nodes.item(i)).getAttribute("id"));
+        }
+        NodeList edges = document.getElementsByTagName("edge");
+        for (int i = 0; i < edges.getLength(); i++) {
+            Element edge = (Element) edges.item(i);
+            graph.set(edge.getAttribute("source"), edge.getAttribute("target"),
+                    Integer.parseInt(edge.getTextContent()));
+        }
+    }
+
+    @Test
+    public void testGraphMlIsWellFormed() throws Exception {
+        Graph<String> graph = sample(new ConcreteVerticesGraph());
+        StringWriter out = new StringWriter();
+        GraphExport.write(graph, GraphExport.Format.GRAPHML, out);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new InputSource(new StringReader(out.toString())));
+        assertEquals("one node per vertex", graph.vertices().size(),
+                document.getElementsByTagName("node").getLength());
+        Graph<String> parsed = new ConcreteEdgesGraph();
+        readGraphMl(document, parsed);
+        GraphAssert.assertSameGraph(graph, parsed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGraphMlRejectsControlCharacters() throws IOException {
+        Graph<String> graph = new ConcreteEdgesGraph();
+        graph.add("bell\u0007");
+        GraphExport.write(graph, GraphExport.Format.GRAPHML, new StringBuilder());
+    }
+
+    @Test
+    public void testBoundedBuffering() throws IOException {
+        int[] largest = {0};
+        StringBuilder all = new StringBuilder();
+        Appendable out = new Appendable() {
+            @Override
+            public Appendable append(CharSequence text) {
+                largest[0] = Math.max(largest[0], text.length());
+                all.append(text);
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence text, int start, int end) {
+                return append(text.subSequence(start, end));
+            }
+
+            @Override
+            public Appendable append(char c) {
+                return append(String.valueOf(c));
+            }
+        };
+        GraphExport.write(large(), GraphExport.Format.DOT, out);
+        assertTrue("output should be passed on in pieces", all.length() > 2 * GraphExport.BUFFER_CHARS);
+        assertTrue("pieces should stay near the buffer size", largest[0] < GraphExport.BUFFER_CHARS + 100);
+    }
+
+    @Test
+    public void testShards() throws Exception {
+        Graph<String> graph = large();
+        graph.add("alone");
+        for (GraphExport.Format format : GraphExport.Format.values()) {
+            Path directory = Files.createTempDirectory("shards");
+            try {
+                List<Path> files = GraphExport.write(graph, format, directory, 4);
+                assertEquals("one file per shard", 4, files.size());
+                Graph<String> read = new ConcreteEdgesGraph();
+                for (Path file : files) {
+                    if (format == GraphExport.Format.GRAPHML) {
+                        readGraphMl(DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                                .parse(file.toFile()), read);
+                    } else {
+                        GraphImport.read(file, read);
+                    }
+                }
+                GraphAssert.assertSameGraph(graph, read);
+                for (Path file : files) {
+                    String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                    assertTrue("every shard should hold edges", text.contains("vertex-"));
+                }
+            } finally {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                    for (Path file : files) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(directory);
+            }
+        }
+    }
+}
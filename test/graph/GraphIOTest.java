@@ -0,0 +1,144 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for saving and loading graphs with GraphIO.
+ */
+public class GraphIOTest {
+
+    // Testing strategy
+    //   graph saved: empty, with self-loop, isolated vertex, multi-byte labels, large ids and weights
+    //   chunks: one of each kind, many of each kind
+    //   file: not a graph file, truncated, a flipped bit inside a chunk
+    //   loaded graph: same vertices in the same order, same edges, mutable
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static Graph<String> sample() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("the", "cat", 3);
+        graph.set("the", "dog", 1);
+        graph.set("cat", "the", 2);
+        graph.set("\u00e9t\u00e9", "\u00e9t\u00e9", 4);
+        graph.set("dog", "the", Integer.MAX_VALUE);
+        graph.add("alone");
+        return graph;
+    }
+
+    private static Graph<String> large() {
+        GraphBuilder<String> builder = new GraphBuilder<>();
+        int n = 3000;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < i % 11; j++) {
+                builder.addEdge("vertex-" + i, "vertex-" + (i * 7919 + j * 104729) % n, 1 + i * j);
+            }
+        }
+        return builder.build();
+    }
+
+    // GraphIO also keeps the order of the vertices
+    private static void assertSameGraphInOrder(Graph<String> expected, Graph<String> actual) {
+        assertEquals("vertices should be in the same order",
+                new ArrayList<>(expected.vertices()), new ArrayList<>(actual.vertices()));
+        GraphAssert.assertSameGraph(expected, actual);
+    }
+
+    private static Graph<String> roundTrip(Graph<String> graph, int chunkItems) throws IOException {
+        Path file = Files.createTempFile("graph", ".bin");
+        try {
+            GraphIO.save(graph, file, chunkItems);
+            return GraphIO.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Graph<String> graph = sample();
+        Path file = Files.createTempFile("graph", ".bin");
+        try {
+            GraphIO.save(graph, file);
+            Graph<String> loaded = GraphIO.load(file);
+            assertSameGraphInOrder(graph, loaded);
+            assertEquals("loaded graph should be mutable", 3, loaded.set("the", "cat", 5));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testManyChunks() throws IOException {
+        Graph<String> graph = large();
+        assertSameGraphInOrder(graph, roundTrip(graph, 64));
+        assertSameGraphInOrder(sample(), roundTrip(sample(), 1));
+    }
+
+    @Test
+    public void testEmptyGraph() throws IOException {
+        Graph<String> loaded = roundTrip(new ConcreteEdgesGraph(), GraphIO.CHUNK_ITEMS);
+        assertEquals("no vertices", Collections.emptySet(), loaded.vertices());
+    }
+
+    @Test
+    public void testChecksumDetectsCorruption() throws IOException {
+        Path file = Files.createTempFile("graph", ".bin");
+        try {
+            GraphIO.save(large(), file, 256);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long position = channel.size() - 100;
+                ByteBuffer b = ByteBuffer.allocate(1);
+                channel.read(b, position);
+                b.put(0, (byte) (b.get(0) ^ 0x10));
+                b.rewind();
+                channel.write(b, position);
+            }
+            GraphIO.load(file);
+            fail("Expected a checksum mismatch");
+        } catch (IOException e) {
+            assertTrue("should name the checksum: " + e.getMessage(), e.getMessage().contains("Checksum"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTruncatedFile() throws IOException {
+        Path file = Files.createTempFile("graph", ".bin");
+        try {
+            GraphIO.save(large(), file, 256);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() / 2);
+            }
+            GraphIO.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("graph", ".txt");
+        try {
+            Files.write(file, "a -> {b=1}\nnot a graph file at all\n".getBytes("UTF-8"));
+            GraphIO.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for reading edge lists and DOT files with GraphImport.
+ */
+public class GraphImportTest {
+
+    // Testing strategy
+    //   format: TSV, CSV, DOT; chosen by extension or given
+    //   records: edge with and without weight, lone vertex, comment, empty line, CRLF endings,
+    //     last line without a newline, records longer than the buffer
+    //   labels: plain, escaped or quoted, multi-byte UTF-8
+    //   target graph: BatchGraph (edges in batches), plain Graph
+    //   malformed: bad weight, too many fields, unterminated quote, undirected DOT
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static Path write(String suffix, String content) throws IOException {
+        Path file = Files.createTempFile("import", suffix);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static Graph<String> read(String suffix, String content, Graph<String> graph, int bufferBytes)
+            throws IOException {
+        Path file = write(suffix, content);
+        try {
+            GraphImport.read(file, GraphImport.Format.of(file), graph, bufferBytes);
+            return graph;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Map<String, Integer> edges(Object... targetsAndWeights) {
+        Map<String, Integer> edges = new HashMap<>();
+        for (int i = 0; i < targetsAndWeights.length; i += 2) {
+            edges.put((String) targetsAndWeights[i], (Integer) targetsAndWeights[i + 1]);
+        }
+        return edges;
+    }
+
+    @Test
+    public void testTsv() throws IOException {
+        String content = "# source\ttarget\tweight\n"
+                + "a\tb\t3\n"
+                + "\n"
+                + "a\tc\r\n"
+                + "tab\\there\t\\#hash\t7\n"
+                + "\u00e9t\u00e9\ta\t2\n"
+                + "alone\n"
+                + "b\ta\t12";
+        for (int bufferBytes : new int[] {GraphImport.BUFFER_BYTES, 4}) {
+            Graph<String> graph = read(".tsv", content, new ConcreteEdgesGraph(), bufferBytes);
+            assertEquals("vertices", new HashSet<>(Arrays.asList("a", "b", "c", "tab\there", "#hash",
+                    "\u00e9t\u00e9", "alone")), graph.vertices());
+            assertEquals("targets of a", edges("b", 3, "c", 1), graph.targets("a"));
+            assertEquals("escaped labels", edges("#hash", 7), graph.targets("tab\there"));
+            assertEquals("multi-byte label", edges("\u00e9t\u00e9", 2, "b", 12), graph.sources("a"));
+        }
+    }
+
+    @Test
+    public void testCsvIntoPlainGraph() throws IOException {
+        String content = "a,b,3\n"
+                + "\"x, \"\"y\"\"\",\"multi\nline\",\"4\"\n"
+                + "b,a\n";
+        Graph<String> graph = read(".csv", content, new ConcurrentGraph<>(), 8);
+        assertEquals("quoted labels", edges("multi\nline", 4), graph.targets("x, \"y\""));
+        assertEquals("unquoted labels", edges("a", 1), graph.targets("b"));
+        assertEquals("vertices", 4, graph.vertices().size());
+    }
+
+    @Test
+    public void testManyBatches() throws IOException {
+        StringBuilder content = new StringBuilder();
+        Graph<String> expected = new ConcreteVerticesGraph();
+        for (int i = 0; i < 3 * GraphImport.BATCH_SIZE; i++) {
+            String source = "s" + i % 101;
+            String target = "t" + i % 37;
+            content.append(source).append('\t').append(target).append('\t').append(i % 5 + 1).append('\n');
+            expected.set(source, target, i % 5 + 1);
+        }
+        Path file = write(".txt", content.toString());
+        try {
+            Graph<String> graph = new ConcreteVerticesGraph();
+            assertEquals("edges read", 3 * GraphImport.BATCH_SIZE, GraphImport.read(file, graph));
+            assertEquals("vertices", expected.vertices(), graph.vertices());
+            for (String v : expected.vertices()) {
+                assertEquals("targets of " + v, expected.targets(v), graph.targets(v));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testDot() throws IOException {
+        String content = "/* a comment */ strict digraph \"g\" {\n"
+                + "  rankdir = LR; // another\n"
+                + "  node [shape=box]\n"
+                + "  a -> b -> c [weight=4, color=red];\n"
+                + "  edge [weight=2]\n"
+                + "  \"\u00e9t\u00e9\" -> \"say \\\"hi\\\"\":port\n"
+                + "  lone\n"
+                + "  # a preprocessor line\n"
+                + "  x->-1.5\n"
+                + "}\n";
+        Graph<String> graph = read(".gv", content, new ConcreteEdgesGraph(), 16);
+        assertEquals("vertices", new HashSet<>(Arrays.asList("a", "b", "c", "\u00e9t\u00e9", "say \"hi\"",
+                "lone", "x", "-1.5")), graph.vertices());
+        assertEquals("edge chain", edges("b", 4), graph.targets("a"));
+        assertEquals("edge chain", edges("c", 4), graph.targets("b"));
+        assertEquals("default weight and quoted ids", edges("say \"hi\"", 2), graph.targets("\u00e9t\u00e9"));
+        assertEquals("ids without spaces", edges("-1.5", 2), graph.targets("x"));
+        assertEquals("lone vertex", Collections.emptyMap(), graph.targets("lone"));
+    }
+
+    private static void assertMalformed(String suffix, String content) {
+        try {
+            read(suffix, content, new ConcreteEdgesGraph(), GraphImport.BUFFER_BYTES);
+            fail("Expected malformed input to be rejected: " + content);
+        } catch (IOException e) {
+            assertTrue("should give the line: " + e.getMessage(), e.getMessage().contains(":"));
+        }
+    }
+
+    @Test
+    public void testRejectsMalformedInput() {
+        assertMalformed(".tsv", "a\tb\t-1\n");
+        assertMalformed(".tsv", "a\tb\t1\tx\n");
+        assertMalformed(".tsv", "a\tb\t99999999999\n");
+        assertMalformed(".tsv", "a\\");
+        assertMalformed(".csv", "\"a,b\n");
+        assertMalformed(".dot", "graph { a -- b }");
+        assertMalformed(".dot", "digraph { a -> b [weight=x] }");
+        assertMalformed(".dot", "digraph { subgraph s { a } }");
+        assertMalformed(".dot", "digraph { a -> b ");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownExtension() {
+        GraphImport.Format.of(Paths.get("graph.bin"));
+    }
+}
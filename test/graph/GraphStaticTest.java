@@ -21,6 +21,7 @@ public class GraphStaticTest {
     //   empty()
     //     no inputs, only output is empty graph
     //     observe with vertices()
+    //   label types: String, Integer
     
     @Test(expected=AssertionError.class)
     public void testAssertionsEnabled() {
@@ -32,12 +33,13 @@ public class GraphStaticTest {
         assertEquals("expected empty() graph to have no vertices",
                 Collections.emptySet(), Graph.empty().vertices());
     }
-
-
     
-
-
-    
-    // TODO test other vertex label types in Problem 3.2
+    @Test
+    public void testEmptyIntegerLabels() {
+        Graph<Integer> graph = Graph.empty();
+        assertEquals("expected no previous edge", 0, graph.set(1, 2, 5));
+        assertEquals("expected edge weight", Collections.singletonMap(2, 5), graph.targets(1));
+        assertEquals("expected edge source", Collections.singletonMap(1, 5), graph.sources(2));
+    }
     
 }
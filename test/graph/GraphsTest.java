@@ -0,0 +1,155 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * Tests for the edge traversal methods of Graphs.
+ */
+public class GraphsTest {
+
+    // Testing strategy
+    //   graph: ConcreteEdgesGraph, ConcreteVerticesGraph, CsrGraph snapshot, empty
+    //   traversal: tryAdvance, forEachRemaining, a mix of both, sequential and parallel stream
+    //   trySplit: repeated until no part splits; part sizes exact; CSR rows cut in two
+    //   modification during traversal: degree of an unvisited vertex changes
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static <G extends Graph<String>> G fill(G graph, int n) {
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i % 7; j++) {
+                graph.set("v" + i, "v" + (i * 31 + j) % n, i + j + 1);
+            }
+        }
+        graph.add("lonely");
+        return graph;
+    }
+
+    private static Set<WeightedEdge<String>> edgesOf(Graph<String> graph) {
+        Set<WeightedEdge<String>> edges = new HashSet<>();
+        for (String source : graph.vertices()) {
+            for (Map.Entry<String, Integer> edge : graph.targets(source).entrySet()) {
+                edges.add(new WeightedEdge<>(source, edge.getKey(), edge.getValue()));
+            }
+        }
+        return edges;
+    }
+
+    private static List<Graph<String>> graphs() {
+        List<Graph<String>> graphs = new ArrayList<>();
+        graphs.add(fill(new ConcreteEdgesGraph(InvariantChecker.off()), 200));
+        graphs.add(fill(new ConcreteVerticesGraph(InvariantChecker.off()), 200));
+        graphs.add(Graphs.freeze(fill(new ConcreteEdgesGraph(InvariantChecker.off()), 200)));
+        return graphs;
+    }
+
+    // Split every part until none splits, checking that sizes add up exactly
+    private static void splitAll(Spliterator<WeightedEdge<String>> part, List<Spliterator<WeightedEdge<String>>> parts) {
+        long size = part.estimateSize();
+        Spliterator<WeightedEdge<String>> prefix = part.trySplit();
+        if (prefix == null) {
+            parts.add(part);
+            return;
+        }
+        assertEquals("split parts should add up to the whole", size, prefix.estimateSize() + part.estimateSize());
+        splitAll(prefix, parts);
+        splitAll(part, parts);
+    }
+
+    @Test
+    public void testEdgesMatchTargets() {
+        for (Graph<String> graph : graphs()) {
+            Set<WeightedEdge<String>> expected = edgesOf(graph);
+            Spliterator<WeightedEdge<String>> edges = Graphs.edges(graph);
+            assertTrue("edges should be SIZED and SUBSIZED",
+                    edges.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+            assertEquals("size should be exact", expected.size(), edges.getExactSizeIfKnown());
+            List<WeightedEdge<String>> actual = Graphs.edgeStream(graph).collect(Collectors.toList());
+            assertEquals("no edge should be reported twice", actual.size(), new HashSet<>(actual).size());
+            assertEquals("stream should report every edge", expected, new HashSet<>(actual));
+        }
+    }
+
+    @Test
+    public void testSplitPartsAreExactAndCoverEveryEdge() {
+        for (Graph<String> graph : graphs()) {
+            Spliterator<WeightedEdge<String>> edges = Graphs.edges(graph);
+            List<Spliterator<WeightedEdge<String>>> parts = new ArrayList<>();
+            splitAll(edges, parts);
+            assertTrue("graph should split into many parts", parts.size() > 8);
+            Set<WeightedEdge<String>> seen = new HashSet<>();
+            for (Spliterator<WeightedEdge<String>> part : parts) {
+                long size = part.estimateSize();
+                long[] count = {0};
+                // mix tryAdvance and forEachRemaining, leaving a row half read
+                if (part.tryAdvance(edge -> seen.add(edge))) {
+                    count[0]++;
+                    assertEquals("size should drop with each edge", size - 1, part.estimateSize());
+                }
+                part.forEachRemaining(edge -> {
+                    count[0]++;
+                    assertTrue("no edge should be reported twice", seen.add(edge));
+                });
+                assertEquals("part should report as many edges as its size", size, count[0]);
+                assertEquals("exhausted part should be empty", 0, part.estimateSize());
+            }
+            assertEquals("parts should cover every edge", edgesOf(graph), seen);
+        }
+    }
+
+    @Test
+    public void testCsrSplitsHalveTheEdges() {
+        ConcreteEdgesGraph hub = new ConcreteEdgesGraph(InvariantChecker.off());
+        for (int i = 0; i < 100; i++) {
+            hub.set("hub", "t" + i, i + 1);
+        }
+        Spliterator<WeightedEdge<String>> edges = Graphs.edges(Graphs.freeze(hub));
+        Spliterator<WeightedEdge<String>> prefix = edges.trySplit();
+        assertNotNull("a single CSR row should still split", prefix);
+        assertEquals("CSR split should halve the edges", 50, prefix.estimateSize());
+        assertEquals("CSR split should halve the edges", 50, edges.estimateSize());
+        edges.tryAdvance(edge -> assertEquals("second half should keep the source", "hub", edge.getSource()));
+    }
+
+    @Test
+    public void testParallelSumMatchesSequential() {
+        for (Graph<String> graph : graphs()) {
+            long sequential = Graphs.edgeStream(graph).mapToLong(WeightedEdge::getWeight).sum();
+            long parallel = Graphs.edgeStream(graph).parallel().mapToLong(WeightedEdge::getWeight).sum();
+            assertEquals("parallel sum should match sequential sum", sequential, parallel);
+            assertEquals("parallel count should be exact", edgesOf(graph).size(), Graphs.edgeStream(graph).parallel().count());
+        }
+    }
+
+    @Test
+    public void testEmptyGraphHasNoEdges() {
+        assertEquals("empty graph should have no edges", 0, Graphs.edgeStream(new ConcreteEdgesGraph()).count());
+        assertEquals("empty snapshot should have no edges", 0,
+                Graphs.edges(Graphs.freeze(new ConcreteEdgesGraph())).getExactSizeIfKnown());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testModificationDuringTraversalDetected() {
+        ConcreteEdgesGraph graph = new ConcreteEdgesGraph();
+        graph.set("a", "b", 1);
+        graph.set("b", "a", 1);
+        Spliterator<WeightedEdge<String>> edges = Graphs.edges(graph);
+        graph.set("a", "c", 1);
+        graph.set("b", "c", 1);
+        edges.forEachRemaining(edge -> { });
+    }
+}
@@ -0,0 +1,130 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for IntGraphAdapter and the primitive IntGraph, VertexDictionary and
+ * LongIntHashMap beneath it.
+ */
+public class IntGraphAdapterTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   IntGraph: set/update/remove edge, self-loop, remove vertex, forEachTarget/forEachSource,
+    //     negative ids
+    //   VertexDictionary: intern new/existing label, remove and reuse id
+    //   LongIntHashMap: put/get/remove across resizes, removal inside probe runs
+    //   adapter: everything in GraphInstanceTest, views after remove, rejected set()
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new IntGraphAdapter<>();
+    }
+
+    @Test
+    public void testIntGraphEdges() {
+        IntGraph graph = new IntGraph();
+        assertEquals("new edge", 0, graph.set(0, 1, 3));
+        assertEquals("update edge", 3, graph.set(0, 1, 4));
+        graph.set(1, 1, 2);
+        graph.set(2, 1, 5);
+        assertEquals("edge weight", 4, graph.weight(0, 1));
+        assertEquals("in-degree of 1", 3, graph.inDegree(1));
+
+        final int[] sum = new int[1];
+        graph.forEachSource(1, (source, weight) -> sum[0] += weight);
+        assertEquals("sum of weights into 1", 11, sum[0]);
+
+        assertTrue("remove vertex with self-loop", graph.remove(1));
+        assertEquals("no edges left", 0, graph.edgeCount());
+        assertEquals("0 has no targets left", 0, graph.outDegree(0));
+        graph.forEachTarget(2, (target, weight) -> fail("2 should have no targets"));
+    }
+
+    @Test
+    public void testIntGraphRejectsNegativeIds() {
+        IntGraph graph = new IntGraph();
+        graph.set(0, 1, 3);
+        for (int weight : new int[] {0, 1}) {
+            try {
+                graph.set(-1, -1, weight);
+                fail("Expected a negative id to be rejected with weight " + weight);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals("edge count unchanged", 1, graph.edgeCount());
+        assertEquals("no edge between negative ids", 0, graph.weight(-1, -1));
+    }
+
+    @Test
+    public void testDictionaryReusesIds() {
+        VertexDictionary<String> dictionary = new VertexDictionary<>();
+        assertEquals("first id", 0, dictionary.intern("a"));
+        assertEquals("second id", 1, dictionary.intern("b"));
+        assertEquals("existing label", 0, dictionary.intern("a"));
+        assertEquals("released id", 0, dictionary.remove("a"));
+        assertNull("released id has no label", dictionary.labelOf(0));
+        assertEquals("released id is reused", 0, dictionary.intern("c"));
+        assertEquals("capacity is not grown", 2, dictionary.capacity());
+    }
+
+    @Test
+    public void testLongIntHashMap() {
+        LongIntHashMap map = new LongIntHashMap(0);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (long k = 0; k < 1000; k++) {
+            long key = k * 31 << 20;
+            map.put(key, (int) k + 1, 0);
+            expected.put(key, (int) k + 1);
+        }
+        for (long k = 0; k < 1000; k += 3) {
+            long key = k * 31 << 20;
+            assertEquals("removed value", (int) k + 1, map.remove(key, 0));
+            expected.remove(key);
+        }
+        assertEquals("size after removals", expected.size(), map.size());
+        for (long k = 0; k < 1000; k++) {
+            long key = k * 31 << 20;
+            assertEquals("value of " + key, (int) expected.getOrDefault(key, 0), map.get(key, 0));
+        }
+    }
+
+    @Test
+    public void testAdapterViewsAreLive() {
+        IntGraphAdapter<String> graph = new IntGraphAdapter<>();
+        graph.set("a", "b", 1);
+        Map<String, Integer> targets = graph.targets("a");
+        graph.set("a", "c", 2);
+        assertEquals("view should see the new edge", 2, targets.size());
+
+        graph.remove("b");
+        assertEquals("view should drop the removed vertex", Collections.singletonMap("c", 2), targets);
+        assertFalse("removed vertex is gone", graph.vertices().contains("b"));
+        assertEquals("unknown vertex has no sources", Collections.emptyMap(), graph.sources("b"));
+
+        graph.remove("a");
+        graph.set("z", "c", 7);
+        assertEquals("reused id should not show another vertex's edges", Collections.emptyMap(), targets);
+        graph.set("a", "z", 3);
+        assertEquals("view should follow its label back", Collections.singletonMap("z", 3), targets);
+    }
+
+    @Test
+    public void testRejectedSetAddsNoVertices() {
+        IntGraphAdapter<String> graph = new IntGraphAdapter<>();
+        try {
+            graph.set("a", "b", -1);
+            fail("Expected a negative weight to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("rejected set should add no vertices", Collections.emptySet(), graph.vertices());
+        assertTrue("a is still new", graph.add("a"));
+    }
+}
@@ -0,0 +1,187 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for LsmGraph memtables, segments and compaction.
+ */
+public class LsmGraphTest {
+
+    // Testing strategy
+    //   mutations: add, set (new edge, update, zero), remove, no-ops, rejected
+    //   edges: only in the memtable, only in segments, overridden or removed across segments
+    //   reopen: after close, after a flush with later unflushed updates, with leftover
+    //           segment files the manifest does not name
+    //   compaction: segment count bounded, tombstones dropped, state unchanged
+    //   lifecycle: mutation after close
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static void deleteAll(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testMutationsAndReopen() throws IOException {
+        Path directory = Files.createTempDirectory("lsm");
+        try {
+            try (LsmGraph graph = LsmGraph.open(directory)) {
+                assertTrue("new vertex", graph.add("a"));
+                assertFalse("existing vertex", graph.add("a"));
+                assertEquals("new edge", 0, graph.set("a", "b", 3));
+                assertEquals("updated edge", 3, graph.set("a", "b", 5));
+                graph.set("b", "c", 1);
+                graph.set("c", "\u00e9t\u00e9", 2);
+                assertEquals("removing a missing edge", 0, graph.set("c", "a", 0));
+                assertEquals("removed edge", 1, graph.set("b", "c", 0));
+                assertTrue("removed vertex", graph.remove("c"));
+                assertFalse("missing vertex", graph.remove("c"));
+                try {
+                    graph.set("a", "b", -1);
+                    fail("Expected a negative weight to be rejected");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+            try (LsmGraph graph = LsmGraph.open(directory)) {
+                assertEquals("vertices should be reopened",
+                        new HashSet<>(Arrays.asList("a", "b", "\u00e9t\u00e9")), graph.vertices());
+                assertEquals("edges should be reopened", Collections.singletonMap("b", 5), graph.targets("a"));
+                assertEquals("sources should be reopened", Collections.singletonMap("a", 5), graph.sources("b"));
+                assertEquals("removed vertex should take its edges", Collections.emptyMap(), graph.sources("\u00e9t\u00e9"));
+                assertEquals("removed edge should stay removed", Collections.emptyMap(), graph.targets("b"));
+                assertEquals("missing vertex has no targets", Collections.emptyMap(), graph.targets("c"));
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testUnflushedUpdatesLostOnReopen() throws IOException {
+        Path directory = Files.createTempDirectory("lsm");
+        try {
+            LsmGraph graph = LsmGraph.open(directory);
+            graph.set("a", "b", 1);
+            graph.flush();
+            graph.set("a", "c", 2);
+            graph.remove("b");
+            // no close: as if the process had died
+            try (LsmGraph reopened = LsmGraph.open(directory)) {
+                assertEquals("flushed state should be reopened",
+                        new HashSet<>(Arrays.asList("a", "b")), reopened.vertices());
+                assertEquals("flushed edge should be reopened", Collections.singletonMap("b", 1), reopened.targets("a"));
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testMatchesInMemoryGraph() throws Exception {
+        Path directory = Files.createTempDirectory("lsm");
+        try {
+            Graph<String> expected = new ConcreteEdgesGraph();
+            Random random = new Random(8);
+            try (LsmGraph graph = LsmGraph.open(directory, 16)) {
+                for (int i = 0; i < 2000; i++) {
+                    String source = "v" + random.nextInt(40);
+                    String target = "v" + random.nextInt(40);
+                    if (i % 97 == 0) {
+                        assertEquals("remove " + source, expected.remove(source), graph.remove(source));
+                    } else {
+                        int weight = random.nextInt(4);
+                        assertEquals("set " + source + " " + target,
+                                expected.set(source, target, weight), graph.set(source, target, weight));
+                    }
+                }
+                GraphAssert.assertSameGraph(expected, graph);
+                graph.flush();
+                graph.awaitCompaction();
+                assertTrue("compaction should bound the segments", graph.segmentCount() <= LsmGraph.MAX_SEGMENTS);
+                GraphAssert.assertSameGraph(expected, graph);
+            }
+            try (LsmGraph graph = LsmGraph.open(directory, 16)) {
+                GraphAssert.assertSameGraph(expected, graph);
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testCompactionDropsTombstones() throws Exception {
+        Path directory = Files.createTempDirectory("lsm");
+        try {
+            try (LsmGraph graph = LsmGraph.open(directory, 4)) {
+                // one segment per round and one of tombstones: a single compaction of all of them
+                for (int round = 0; round < LsmGraph.MAX_SEGMENTS; round++) {
+                    for (int i = 0; i < 4; i++) {
+                        graph.set("s", "t" + i, round + 1);
+                    }
+                }
+                for (int i = 0; i < 4; i++) {
+                    graph.set("s", "t" + i, 0);
+                }
+                graph.awaitCompaction();
+                assertEquals("tombstones should have been merged away", 0, graph.segmentCount());
+                assertEquals("all edges removed", Collections.emptyMap(), graph.targets("s"));
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.seg")) {
+                assertFalse("fully removed edges should leave no segments", files.iterator().hasNext());
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testReopenDeletesLeftoverSegments() throws IOException {
+        Path directory = Files.createTempDirectory("lsm");
+        try {
+            try (LsmGraph graph = LsmGraph.open(directory)) {
+                graph.set("a", "b", 1);
+            }
+            // as left by a compaction whose delete failed while the segment was still mapped
+            Path leftover = directory.resolve("segment-999.seg");
+            Files.write(leftover, new byte[] { 1, 2, 3 });
+            try (LsmGraph graph = LsmGraph.open(directory)) {
+                assertFalse("leftover segment should be deleted", Files.exists(leftover));
+                assertEquals("graph unchanged", Collections.singletonMap("b", 1), graph.targets("a"));
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedGraphRejectsMutations() throws IOException {
+        Path directory = Files.createTempDirectory("lsm");
+        try {
+            LsmGraph graph = LsmGraph.open(directory);
+            graph.close();
+            graph.add("a");
+        } finally {
+            deleteAll(directory);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for writing and opening MappedGraph files.
+ */
+public class MappedGraphTest {
+
+    // Testing strategy
+    //   graph written: empty, with self-loop, isolated vertex and multi-byte labels
+    //   lookups: known and unknown labels, non-neighbour keys
+    //   file: not a graph file
+    //   mutators: rejected
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    private static MappedGraph roundTrip(Graph<String> graph) throws IOException {
+        Path file = Files.createTempFile("graph", ".bin");
+        try {
+            MappedGraph.write(graph, file);
+            return MappedGraph.open(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("the", "cat", 3);
+        graph.set("the", "dog", 1);
+        graph.set("cat", "the", 2);
+        graph.set("\u00e9t\u00e9", "\u00e9t\u00e9", 4);
+        graph.add("alone");
+
+        MappedGraph mapped = roundTrip(graph);
+        assertEquals("vertices should match", graph.vertices(), mapped.vertices());
+        for (String v : graph.vertices()) {
+            assertEquals("targets of " + v, graph.targets(v), mapped.targets(v));
+            assertEquals("sources of " + v, graph.sources(v), mapped.sources(v));
+        }
+        assertNull("dog is not a target of cat", mapped.targets("cat").get("dog"));
+        assertFalse("unknown label", mapped.vertices().contains("bird"));
+        assertEquals("unknown label has no targets", Collections.emptyMap(), mapped.targets("bird"));
+    }
+
+    @Test
+    public void testEmptyGraph() throws IOException {
+        MappedGraph mapped = roundTrip(new ConcreteEdgesGraph());
+        assertEquals("expected no vertices", Collections.emptySet(), mapped.vertices());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("graph", ".txt");
+        try {
+            Files.write(file, new byte[200]);
+            MappedGraph.open(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMutatorsRejected() throws IOException {
+        roundTrip(new ConcreteEdgesGraph()).add("a");
+    }
+}
@@ -0,0 +1,140 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for OffHeapGraph, on top of the Graph tests in GraphInstanceTest.
+ */
+public class OffHeapGraphTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   labels: ASCII, multi-byte UTF-8, empty string, sharing a hash code
+    //   growth: past the initial label and edge index sizes, with recycled ids
+    //   remove(): vertex with self-loop, in- and out-edges; edge via set(.., 0)
+    //   set(): null label rejected before any vertex is added
+    //   views: kept across removal of their vertex and reuse of its id
+    //   close(): idempotent, later calls rejected
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new OffHeapGraph();
+    }
+
+    @Test
+    public void testLabelsRoundTrip() {
+        try (OffHeapGraph graph = new OffHeapGraph()) {
+            // "Aa" and "BB" share a String hash code
+            graph.set("Aa", "BB", 1);
+            graph.set("", "na\u00efve caf\u00e9", 2);
+            assertEquals("vertices should decode", new HashSet<>(Arrays.asList("Aa", "BB", "", "na\u00efve caf\u00e9")),
+                    graph.vertices());
+            assertEquals("colliding hash codes are distinct labels", Collections.singletonMap("Aa", 1), graph.sources("BB"));
+            assertEquals("UTF-8 label as target", (Integer) 2, graph.targets("").get("na\u00efve caf\u00e9"));
+            assertTrue("contains multi-byte label", graph.vertices().contains("na\u00efve caf\u00e9"));
+        }
+    }
+
+    @Test
+    public void testGrowthAndRecycling() {
+        try (OffHeapGraph graph = new OffHeapGraph()) {
+            Map<String, Map<String, Integer>> expected = new HashMap<>();
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < 300; i++) {
+                    String source = "v" + i;
+                    String target = "v" + (i * 7 % 300);
+                    graph.set(source, target, i + 1);
+                    expected.computeIfAbsent(source, k -> new HashMap<>()).put(target, i + 1);
+                }
+                for (int i = 0; i < 300; i += 5) {
+                    graph.remove("v" + i);
+                    expected.remove("v" + i);
+                    for (Map<String, Integer> row : expected.values()) {
+                        row.remove("v" + i);
+                    }
+                }
+            }
+            Set<String> vertices = new HashSet<>(graph.vertices());
+            assertEquals("vertex count", 240, vertices.size());
+            for (String v : vertices) {
+                assertEquals("targets of " + v, expected.getOrDefault(v, Collections.emptyMap()), graph.targets(v));
+            }
+            assertTrue("direct memory is in use", graph.offHeapBytes() > 0);
+        }
+    }
+
+    @Test
+    public void testRemoveSelfLoopAndEdges() {
+        try (OffHeapGraph graph = new OffHeapGraph()) {
+            graph.set("a", "a", 1);
+            graph.set("a", "b", 2);
+            graph.set("c", "a", 3);
+            assertEquals("remove edge returns weight", 2, graph.set("a", "b", 0));
+            assertEquals("a has only its self-loop", Collections.singletonMap("a", 1), graph.targets("a"));
+            assertTrue("remove a", graph.remove("a"));
+            assertEquals("c lost its edge", Collections.emptyMap(), graph.targets("c"));
+            assertEquals("a is gone", new HashSet<>(Arrays.asList("b", "c")), graph.vertices());
+        }
+    }
+
+    @Test
+    public void testViewsSurviveRecycledIds() {
+        try (OffHeapGraph graph = new OffHeapGraph()) {
+            graph.set("A", "B", 1);
+            graph.set("C", "B", 2);
+            Map<String, Integer> targets = graph.targets("C");
+            Map<String, Integer> sources = graph.sources("C");
+            graph.remove("A");
+            graph.remove("C");
+            assertEquals("removed vertex has no targets", Collections.emptyMap(), targets);
+            assertEquals("removed vertex has no sources", Collections.emptyMap(), sources);
+            graph.set("P", "Q", 9);
+            assertEquals("reused id should not show another vertex's edges", Collections.emptyMap(), targets);
+            assertEquals("size should follow the label", 0, targets.size());
+            graph.set("C", "B", 4);
+            assertEquals("view should follow its label back", Collections.singletonMap("B", 4), targets);
+        }
+    }
+
+    @Test
+    public void testRejectedSetLeavesGraphUnchanged() {
+        try (OffHeapGraph graph = new OffHeapGraph()) {
+            graph.set("a", "c", 1);
+            try {
+                graph.set("b", null, 5);
+                fail("expected a null target to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected exception
+            }
+            try {
+                graph.set(null, "b", 0);
+                fail("expected a null source to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected exception
+            }
+            assertEquals("rejected set should add no vertices", new HashSet<>(Arrays.asList("a", "c")), graph.vertices());
+        }
+    }
+
+    @Test
+    public void testClose() {
+        OffHeapGraph graph = new OffHeapGraph();
+        graph.add("a");
+        graph.close();
+        graph.close();
+        try {
+            graph.vertices();
+            fail("closed graph should reject calls");
+        } catch (IllegalStateException e) {
+            // expected exception
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for Graphs.optimisticGraph(), on top of the Graph tests in
+ * GraphInstanceTest.
+ */
+public class OptimisticGraphTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   wrapped graph: ConcreteVerticesGraph (live views), ConcreteEdgesGraph (copies)
+    //   read results: unmodifiable, unaffected by later writes
+    //   concurrency: readers racing a writer never see a half-applied write or an exception
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return Graphs.optimisticGraph(new ConcreteVerticesGraph());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullGraph() {
+        Graphs.optimisticGraph(null);
+    }
+
+    @Test
+    public void testReadsAreSnapshots() {
+        Graph<String> graph = Graphs.optimisticGraph(new ConcreteEdgesGraph());
+        graph.set("a", "b", 1);
+        Map<String, Integer> targets = graph.targets("a");
+        graph.set("a", "c", 2);
+        assertEquals("earlier result should not change", 1, targets.size());
+        try {
+            targets.put("d", 4);
+            fail("expected an unmodifiable result");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadersSeeConsistentState() throws InterruptedException {
+        Graph<String> graph = Graphs.optimisticGraph(new ConcreteVerticesGraph());
+        graph.set("a", "b", 1);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20000; i++) {
+                        Map<String, Integer> targets = graph.targets("a");
+                        Map<String, Integer> sources = graph.sources("a");
+                        if (targets.size() != 1 || targets.get("b") == null || targets.get("b") < 1) {
+                            failure.set("targets " + targets);
+                        }
+                        if (sources.size() > 1 || (sources.size() == 1 && !sources.containsKey("x"))) {
+                            failure.set("sources " + sources);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failure.set(e.toString());
+                }
+            });
+            readers[r].start();
+        }
+        for (int i = 1; i <= 3000; i++) {
+            graph.set("a", "b", i);
+            graph.set("x", "a", i);
+            graph.remove("x");
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get(), failure.get());
+    }
+}
@@ -0,0 +1,84 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for PersistentGraph and its snapshots, on top of the Graph tests in
+ * GraphInstanceTest.
+ */
+public class PersistentGraphTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   snapshots: taken before and after add/set/remove, unchanged by later mutations
+    //   no-op mutations: return the same snapshot
+    //   PersistentMap: many keys (several trie levels), hash collisions, removals
+    //   snapshot mutators: rejected
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new PersistentGraph<>();
+    }
+
+    @Test
+    public void testSnapshotsAreStable() {
+        PersistentGraph<String> graph = new PersistentGraph<>();
+        graph.set("a", "b", 1);
+        PersistentGraph.Snapshot<String> before = graph.snapshot();
+        graph.set("a", "b", 2);
+        graph.set("b", "a", 3);
+        graph.remove("a");
+
+        assertEquals("old snapshot keeps its vertices", new HashSet<>(Arrays.asList("a", "b")), before.vertices());
+        assertEquals("old snapshot keeps its weight", Collections.singletonMap("b", 1), before.targets("a"));
+        assertEquals("old snapshot keeps its sources", Collections.singletonMap("a", 1), before.sources("b"));
+        assertEquals("new state has only b", Collections.singleton("b"), graph.vertices());
+        assertEquals("new state lost b -> a", Collections.emptyMap(), graph.targets("b"));
+    }
+
+    @Test
+    public void testNoOpMutationsShareSnapshot() {
+        PersistentGraph<String> graph = new PersistentGraph<>();
+        graph.set("a", "b", 1);
+        PersistentGraph.Snapshot<String> before = graph.snapshot();
+        assertFalse("re-adding a vertex", graph.add("a"));
+        assertEquals("setting the same weight", 1, graph.set("a", "b", 1));
+        assertEquals("removing a missing edge", 0, graph.set("b", "a", 0));
+        assertFalse("removing a missing vertex", graph.remove("c"));
+        assertSame("no-ops should not create snapshots", before, graph.snapshot());
+    }
+
+    @Test
+    public void testPersistentMapAgainstHashMap() {
+        Random random = new Random(42);
+        PersistentMap<Object, Integer> map = PersistentMap.empty();
+        Map<Object, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            // "Aa" and "BB" collide, as do the other pairs below
+            Object key = i % 7 == 0 ? (i % 2 == 0 ? "Aa" : "BB") + (i % 5 == 0 ? "" : "x") : random.nextInt(3000);
+            if (random.nextInt(4) == 0) {
+                map = map.remove(key);
+                expected.remove(key);
+            } else {
+                map = map.put(key, i);
+                expected.put(key, i);
+            }
+            assertEquals("size after step " + i, expected.size(), map.size());
+        }
+        assertEquals("contents should match", expected, map.asMap());
+        assertEquals("keys should match", expected.keySet(), map.keySet());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotRejectsMutation() {
+        new PersistentGraph<String>().snapshot().add("a");
+    }
+}
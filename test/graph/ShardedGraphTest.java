@@ -0,0 +1,148 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Tests for ShardedIngester and the ShardedGraph it builds, on top of the
+ * Graph tests in GraphInstanceTest.
+ */
+public class ShardedGraphTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   shards: one, several
+    //   updates: add, set, increment; from one or many producer threads
+    //   edges: within a shard, across shards (sources merged from several shards)
+    //   failures: invalid update rejected on offer, failing increment reported by finish,
+    //             Error from a shard graph reported by flush and finish
+    //   ring: empty, full, wrapped around
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new ShardedIngester(3, 16).finish();
+    }
+
+    @Test
+    public void testConcurrentIngestionMatchesSequential() throws InterruptedException {
+        ShardedIngester ingester = new ShardedIngester(4, 64);
+        ConcreteEdgesGraph expected = new ConcreteEdgesGraph();
+        String[] words = "the cat sat on the mat and the dog sat on the log".split(" ");
+        final int producers = 3;
+        final int rounds = 200;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                for (int r = 0; r < rounds; r++) {
+                    for (int i = 0; i + 1 < words.length; i++) {
+                        ingester.increment(words[i], words[i + 1], 1);
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        for (int r = 0; r < producers * rounds; r++) {
+            for (int i = 0; i + 1 < words.length; i++) {
+                expected.increment(words[i], words[i + 1], 1);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ShardedGraph graph = ingester.finish();
+        assertEquals(4, graph.shardCount());
+        assertEquals("vertices", expected.vertices(), graph.vertices());
+        for (String vertex : expected.vertices()) {
+            assertEquals("targets of " + vertex, expected.targets(vertex), graph.targets(vertex));
+            assertEquals("sources of " + vertex, expected.sources(vertex), graph.sources(vertex));
+        }
+    }
+
+    @Test
+    public void testFlushAndOrdering() {
+        try (ShardedIngester ingester = new ShardedIngester(2, 4)) {
+            for (int i = 1; i <= 100; i++) {
+                ingester.set("a", "b", i);
+            }
+            ingester.add("lonely");
+            ingester.flush();
+            ShardedGraph graph = ingester.finish();
+            assertEquals("last write wins", Collections.singletonMap("b", 100), graph.targets("a"));
+            assertEquals(new HashSet<>(Arrays.asList("a", "b", "lonely")), graph.vertices());
+        }
+    }
+
+    @Test
+    public void testFailedIncrementReported() {
+        ShardedIngester ingester = new ShardedIngester(1, 8);
+        ingester.increment("a", "b", 1);
+        ingester.increment("a", "b", -5);
+        try {
+            ingester.finish();
+            fail("expected the failed increment to be reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testShardErrorReported() {
+        ShardedIngester ingester = new ShardedIngester(1, 8, () -> new ConcreteEdgesGraph() {
+            @Override
+            public int set(String source, String target, int weight) {
+                throw new AssertionError("broken shard");
+            }
+        });
+        ingester.set("a", "b", 1);
+        ingester.add("c");
+        try {
+            ingester.flush();
+            fail("expected the shard's Error to be reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        try {
+            ingester.finish();
+            fail("expected the shard's Error to be reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeightRejected() {
+        try (ShardedIngester ingester = new ShardedIngester(1, 8)) {
+            ingester.set("a", "b", -1);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedIngester() {
+        ShardedIngester ingester = new ShardedIngester(1, 8);
+        ingester.close();
+        ingester.add("a");
+    }
+
+    @Test
+    public void testRingFullAndWrap() {
+        UpdateRing ring = new UpdateRing(3);
+        assertEquals("rounded up to a power of two", 4, ring.capacity());
+        StringBuilder seen = new StringBuilder();
+        UpdateRing.Sink sink = (kind, source, target, value) -> seen.append(source).append(value);
+        assertEquals("empty", 0, ring.drain(sink, 10));
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue("room for " + i, ring.offer(UpdateRing.SET, "s", "t", i));
+            }
+            assertFalse("full", ring.offer(UpdateRing.SET, "s", "t", 9));
+            assertEquals(2, ring.drain(sink, 2));
+            assertEquals(2, ring.drain(sink, 10));
+        }
+        assertEquals("s0s1s2s3s0s1s2s3s0s1s2s3", seen.toString());
+        assertEquals(12, ring.offered());
+    }
+}
@@ -0,0 +1,13 @@
+package graph;
+
+/**
+ * Tests for Graphs.synchronizedGraph(), using the Graph tests in
+ * GraphInstanceTest.
+ */
+public class SynchronizedGraphTest extends GraphInstanceTest {
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return Graphs.synchronizedGraph(new ConcreteVerticesGraph());
+    }
+}
@@ -0,0 +1,135 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+/**
+ * Tests for VersionedGraph, on top of the Graph tests in GraphInstanceTest.
+ */
+public class VersionedGraphTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   batches: empty, several operations, aborted, committed twice
+    //   versions: pinned before and after commits, pinned by number, reclaimed
+    //   pins: one or several readers on a version, closed twice
+    //   concurrent readers: never see part of a batch
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new VersionedGraph<>();
+    }
+
+    @Test
+    public void testBatchCommitsOneVersion() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        assertEquals("starts at version 0", 0, graph.version());
+        long version = graph.begin().add("a").set("a", "b", 2).set("b", "c", 3).remove("c").commit();
+        assertEquals("one version per batch", 1, version);
+        assertEquals(version, graph.version());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), graph.vertices());
+        assertEquals(Collections.singletonMap("a", 2), graph.sources("b"));
+
+        assertEquals("empty batch keeps the version", 1, graph.begin().commit());
+        VersionedGraph<String>.Batch aborted = graph.begin().add("x");
+        aborted.abort();
+        assertFalse("aborted batch changes nothing", graph.vertices().contains("x"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBatchCommittedTwice() {
+        VersionedGraph<String>.Batch batch = new VersionedGraph<String>().begin().add("a");
+        batch.commit();
+        batch.commit();
+    }
+
+    @Test
+    public void testPinnedVersionIsStable() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        graph.set("a", "b", 1);
+        try (VersionedGraph.ReadView<String> view = graph.pin()) {
+            graph.begin().set("a", "b", 5).remove("a").commit();
+            assertEquals("pinned weight", Collections.singletonMap("b", 1), view.targets("a"));
+            assertEquals("pinned vertices", new HashSet<>(Arrays.asList("a", "b")), view.vertices());
+            assertEquals("latest has only b", Collections.singleton("b"), graph.vertices());
+        }
+    }
+
+    @Test
+    public void testVersionsReclaimedWhenUnpinned() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        long first = graph.begin().add("a").commit();
+        VersionedGraph.ReadView<String> view1 = graph.pin(first);
+        VersionedGraph.ReadView<String> view2 = graph.pin();
+        graph.add("b");
+        graph.add("c");
+        assertEquals("pinned and latest versions retained", 2, graph.retainedVersions());
+
+        view1.close();
+        assertEquals("still pinned by view2", 2, graph.retainedVersions());
+        assertEquals(Collections.singleton("a"), graph.pin(first).vertices());
+        view2.close();
+        view2.close();
+        // the pin(first) view above was never closed, so first is still retained
+        assertEquals(2, graph.retainedVersions());
+
+        VersionedGraph<String> other = new VersionedGraph<>();
+        long old = other.begin().add("x").commit();
+        other.pin(old).close();
+        other.add("y");
+        assertEquals("only the latest is retained", 1, other.retainedVersions());
+        try {
+            other.pin(old);
+            fail("expected reclaimed version to be unavailable");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadViewIsReadOnly() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        try (VersionedGraph.ReadView<String> view = graph.pin()) {
+            view.add("a");
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedViewRejectsReads() {
+        VersionedGraph.ReadView<String> view = new VersionedGraph<String>().pin();
+        view.close();
+        view.vertices();
+    }
+
+    @Test
+    public void testReadersNeverSeeHalfBatches() throws InterruptedException {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        final int batches = 200;
+        final boolean[] torn = new boolean[1];
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                try (VersionedGraph.ReadView<String> view = graph.pin()) {
+                    // every batch sets both edges to the same weight
+                    Integer forward = view.targets("a").get("b");
+                    Integer backward = view.targets("b").get("a");
+                    if (forward == null ? backward != null : !forward.equals(backward)) {
+                        torn[0] = true;
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 1; i <= batches; i++) {
+            graph.begin().set("a", "b", i).set("b", "a", i).commit();
+        }
+        reader.join();
+        assertFalse("reader saw a partially applied batch", torn[0]);
+        assertEquals(batches, graph.version());
+        assertEquals("only the latest version is retained", 1, graph.retainedVersions());
+    }
+}